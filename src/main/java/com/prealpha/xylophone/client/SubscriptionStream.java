@@ -0,0 +1,287 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.client;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.http.client.URL;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamFactory;
+import com.prealpha.xylophone.shared.OverflowResult;
+import com.prealpha.xylophone.shared.PublishingDispatcherAsync;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * Receives the results of a subscription as they are published, using a
+ * persistent connection to a
+ * {@link com.prealpha.xylophone.server.SubscriptionStreamServlet} where
+ * possible, and long polling with
+ * {@link PublishingDispatcherAsync#check(long, AsyncCallback)} otherwise.
+ * The connection uses the browser's {@code EventSource}; if the browser lacks
+ * it, or the connection cannot be established, the stream falls back to long
+ * polling without any action by the caller.
+ * <p>
+ * 
+ * Results are decoded using the dispatcher itself, which must therefore be
+ * the RPC proxy obtained from {@code GWT.create()}, rather than, for instance,
+ * a {@code FilterChain}, in order to stream. Any other dispatcher is always
+ * long polled.
+ * <p>
+ * 
+ * The callback receives each non-empty list of results, in the same form as
+ * {@code check} returns it. If the subscription can no longer be checked,
+ * because it was canceled, expired or terminated, the callback instead
+ * receives the resulting failure, and the stream is closed. A subscription
+ * terminated on overflow closes the stream after its final
+ * {@link OverflowResult} is delivered.
+ * 
+ * @author Meyer Kizner
+ * @see com.prealpha.xylophone.server.SubscriptionStreamServlet
+ * @since 0.4-beta
+ * 
+ */
+public final class SubscriptionStream {
+	/**
+	 * The dispatcher used for long polling.
+	 */
+	private final PublishingDispatcherAsync dispatcher;
+
+	/**
+	 * The factory used to decode streamed results, or {@code null} if the
+	 * dispatcher is not an RPC proxy.
+	 */
+	private final SerializationStreamFactory factory;
+
+	/**
+	 * The URL of the {@code SubscriptionStreamServlet}.
+	 */
+	private final String url;
+
+	/**
+	 * The subscription ID to receive results from.
+	 */
+	private final long subscriptionId;
+
+	/**
+	 * The callback to receive results.
+	 */
+	private final AsyncCallback<ImmutableList<Result>> callback;
+
+	/**
+	 * The {@code EventSource} for the connection, or {@code null} if the
+	 * stream is long polling or closed.
+	 */
+	private JavaScriptObject source;
+
+	/**
+	 * Whether this stream has been opened.
+	 */
+	private boolean opened;
+
+	/**
+	 * Whether this stream has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructs a new {@code SubscriptionStream}, which is not yet open.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher on which the subscription was created
+	 * @param url
+	 *            the URL at which the {@code SubscriptionStreamServlet} is
+	 *            served
+	 * @param subscriptionId
+	 *            the subscription ID to receive results from
+	 * @param callback
+	 *            the callback to receive results
+	 * @throws NullPointerException
+	 *             if {@code dispatcher}, {@code url} or {@code callback} is
+	 *             {@code null}
+	 */
+	public SubscriptionStream(PublishingDispatcherAsync dispatcher,
+			String url, long subscriptionId,
+			AsyncCallback<ImmutableList<Result>> callback) {
+		this.dispatcher = checkNotNull(dispatcher);
+		this.url = checkNotNull(url);
+		this.subscriptionId = subscriptionId;
+		this.callback = checkNotNull(callback);
+		if (dispatcher instanceof SerializationStreamFactory) {
+			factory = (SerializationStreamFactory) dispatcher;
+		} else {
+			factory = null;
+		}
+	}
+
+	/**
+	 * Starts receiving results, over a connection if possible and by long
+	 * polling otherwise.
+	 * 
+	 * @throws IllegalStateException
+	 *             if this stream has already been opened
+	 */
+	public void open() {
+		checkState(!opened);
+		opened = true;
+		if (factory != null && isSupported()) {
+			String query = "subscription=" + subscriptionId + "&module="
+					+ URL.encodeQueryString(GWT.getModuleBaseURL())
+					+ "&permutation="
+					+ URL.encodeQueryString(GWT.getPermutationStrongName());
+			source = connect(url + (url.contains("?") ? "&" : "?") + query);
+		} else {
+			poll();
+		}
+	}
+
+	/**
+	 * Stops receiving results. The subscription itself is not canceled.
+	 */
+	public void close() {
+		closed = true;
+		if (source != null) {
+			disconnect(source);
+			source = null;
+		}
+	}
+
+	/**
+	 * Delivers a list of results to the callback, closing this stream if the
+	 * subscription was terminated.
+	 * 
+	 * @param results
+	 *            the results to deliver
+	 */
+	private void deliver(ImmutableList<Result> results) {
+		if (!results.isEmpty()) {
+			callback.onSuccess(results);
+			Result first = results.get(0);
+			if (first instanceof OverflowResult
+					&& ((OverflowResult) first).isTerminated()) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Checks the subscription, and continues to do so until this stream is
+	 * closed or the check fails.
+	 */
+	private void poll() {
+		dispatcher.check(subscriptionId,
+				new AsyncCallback<ImmutableList<Result>>() {
+					@Override
+					public void onSuccess(ImmutableList<Result> results) {
+						if (!closed) {
+							deliver(results);
+						}
+						if (!closed) {
+							poll();
+						}
+					}
+
+					@Override
+					public void onFailure(Throwable caught) {
+						if (!closed) {
+							closed = true;
+							callback.onFailure(caught);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Called from the {@code EventSource} with the data of each event.
+	 * 
+	 * @param data
+	 *            an encoded list of results
+	 */
+	@SuppressWarnings("unused")
+	private void onMessage(String data) {
+		if (closed) {
+			return;
+		}
+		try {
+			@SuppressWarnings("unchecked")
+			ImmutableList<Result> results = (ImmutableList<Result>) factory
+					.createStreamReader(data).readObject();
+			deliver(results);
+		} catch (SerializationException sx) {
+			close();
+			callback.onFailure(sx);
+		}
+	}
+
+	/**
+	 * Called from the {@code EventSource} when the connection fails. The
+	 * browser reconnects by itself unless the server refused the connection,
+	 * as it does for an invalid subscription; in that case, the stream falls
+	 * back to long polling, which reports any failure to the callback.
+	 * 
+	 * @param refused
+	 *            whether the browser has given up on the connection
+	 */
+	@SuppressWarnings("unused")
+	private void onError(boolean refused) {
+		if (refused && !closed && source != null) {
+			disconnect(source);
+			source = null;
+			poll();
+		}
+	}
+
+	/**
+	 * @return {@code true} if the browser supports {@code EventSource};
+	 *         {@code false} otherwise
+	 */
+	private static native boolean isSupported() /*-{
+		return !!$wnd.EventSource;
+	}-*/;
+
+	/**
+	 * Opens an {@code EventSource} which reports to this stream.
+	 * 
+	 * @param url
+	 *            the URL to connect to
+	 * @return the {@code EventSource}
+	 */
+	private native JavaScriptObject connect(String url) /*-{
+		var stream = this;
+		var source = new $wnd.EventSource(url);
+		source.onmessage = $entry(function(event) {
+			stream.@com.prealpha.xylophone.client.SubscriptionStream::onMessage(Ljava/lang/String;)(event.data);
+		});
+		source.onerror = $entry(function() {
+			stream.@com.prealpha.xylophone.client.SubscriptionStream::onError(Z)(source.readyState == 2);
+		});
+		return source;
+	}-*/;
+
+	/**
+	 * Closes an {@code EventSource}.
+	 * 
+	 * @param source
+	 *            the {@code EventSource} to close
+	 */
+	private static native void disconnect(JavaScriptObject source) /*-{
+		source.close();
+	}-*/;
+}
@@ -23,6 +23,8 @@ import java.util.ListIterator;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.prealpha.xylophone.shared.Action;
 import com.prealpha.xylophone.shared.DispatcherAsync;
@@ -48,7 +50,9 @@ import com.prealpha.xylophone.shared.Result;
  * dispatcher, the implementations of
  * {@link PublishingDispatcherAsync#subscribe(Predicate, AsyncCallback)
  * subscribe}, {@link PublishingDispatcherAsync#check(long, AsyncCallback)
- * check}, and {@link PublishingDispatcherAsync#cancel(long, AsyncCallback)}
+ * check} (including the
+ * {@linkplain PublishingDispatcherAsync#check(ImmutableSet, AsyncCallback)
+ * multiplexed version}), and {@link PublishingDispatcherAsync#cancel(long, AsyncCallback)}
  * will delegate to the backing publishing dispatcher. Note, however, that
  * {@link ActionFilter} does not extend {@code PublishingDispatcherAsync}, so
  * the elements of the chain themselves will be unable to interact with these
@@ -159,7 +163,7 @@ public final class FilterChain implements ActionFilter,
 	 * @since 0.3.1-beta
 	 */
 	public void init(PublishingDispatcherAsync publisher) {
-		init(publisher);
+		init((DispatcherAsync) publisher);
 		this.publisher = publisher;
 	}
 
@@ -189,6 +193,20 @@ public final class FilterChain implements ActionFilter,
 		}
 	}
 
+	/**
+	 * @since 0.4-beta
+	 */
+	@Override
+	public void subscribe(Predicate<? super Action<?>> predicate,
+			boolean conflate, AsyncCallback<Long> callback) {
+		checkState(isInitialized());
+		if (publisher != null) {
+			publisher.subscribe(predicate, conflate, callback);
+		} else {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	/**
 	 * @since 0.3.1-beta
 	 */
@@ -203,6 +221,20 @@ public final class FilterChain implements ActionFilter,
 		}
 	}
 
+	/**
+	 * @since 0.4-beta
+	 */
+	@Override
+	public void check(ImmutableSet<Long> subscriptionIds,
+			AsyncCallback<ImmutableMap<Long, ImmutableList<Result>>> callback) {
+		checkState(isInitialized());
+		if (publisher != null) {
+			publisher.check(subscriptionIds, callback);
+		} else {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 	/**
 	 * @since 0.3.1-beta
 	 */
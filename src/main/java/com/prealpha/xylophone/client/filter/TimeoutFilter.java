@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.client.filter;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.DispatcherAsync;
+import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.TimedAction;
+
+/**
+ * An {@link ActionFilter} which attaches a fixed timeout to every action passed
+ * through it, by wrapping the action in a {@link TimedAction}. Actions which
+ * are already timed are passed through unchanged, so that a shorter or longer
+ * timeout can still be given for individual actions. This filter should
+ * generally be placed last in a {@link FilterChain}, so that each action
+ * actually sent to the server carries a timeout; a {@code BatchAction}, for
+ * instance, then has a single deadline shared by all of its actions.
+ * 
+ * @author Meyer Kizner
+ * @see TimedAction
+ * @since 0.4-beta
+ * 
+ */
+public final class TimeoutFilter implements ActionFilter {
+	/**
+	 * The timeout attached to each action, in milliseconds.
+	 */
+	private final long timeout;
+
+	/**
+	 * The backing dispatcher for this filter.
+	 */
+	private DispatcherAsync dispatcher;
+
+	/**
+	 * Constructs a new, uninitialized {@code TimeoutFilter} which attaches the
+	 * specified timeout to each action.
+	 * 
+	 * @param timeout
+	 *            the timeout for each action, in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is not positive
+	 */
+	public TimeoutFilter(long timeout) {
+		checkArgument(timeout > 0);
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void init(DispatcherAsync dispatcher) {
+		checkNotNull(dispatcher);
+		checkState(!isInitialized());
+		this.dispatcher = dispatcher;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return (dispatcher != null);
+	}
+
+	@Override
+	public <R extends Result> void execute(Action<R> action,
+			AsyncCallback<R> callback) {
+		checkNotNull(action);
+		checkNotNull(callback);
+		checkState(isInitialized());
+		if (action instanceof TimedAction) {
+			dispatcher.execute(action, callback);
+		} else {
+			dispatcher.execute(new TimedAction<R>(action, timeout), callback);
+		}
+	}
+}
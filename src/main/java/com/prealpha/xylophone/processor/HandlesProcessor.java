@@ -0,0 +1,428 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.prealpha.xylophone.server.ActionHandler;
+import com.prealpha.xylophone.server.ActionModule;
+import com.prealpha.xylophone.server.AsyncActionHandler;
+import com.prealpha.xylophone.server.Handles;
+import com.prealpha.xylophone.server.StreamingActionHandler;
+
+/**
+ * Generates an {@link ActionModule} which binds every handler annotated with
+ * {@link Handles}. The generated module is a concrete class whose
+ * {@code configureActions()} method calls the appropriate {@code bind} method
+ * of {@code ActionModule} for each handler; it may be subclassed to create
+ * bulkheads or otherwise configure the dispatcher, as long as the subclass
+ * calls the superclass method.
+ * <p>
+ * 
+ * By default, the module is named {@code GeneratedActionModule} and placed in
+ * the deepest package which contains every annotated handler. Another fully
+ * qualified name may be given with the {@code xylophone.module} processor
+ * option, for example {@code -Axylophone.module=com.example.ActionBindings}.
+ * <p>
+ * 
+ * The processor reports an error if an annotated class is not a concrete
+ * handler, if it does not handle the action class given, if it is not
+ * accessible from the generated module, or if two handlers are annotated for
+ * the same action class. The module is generated in the first round in which
+ * annotated handlers are found; handlers generated by other processors in
+ * later rounds are reported as errors.
+ * 
+ * @author Meyer Kizner
+ * @see Handles
+ * @since 0.4-beta
+ * 
+ */
+@SupportedAnnotationTypes("com.prealpha.xylophone.server.Handles")
+@SupportedOptions(HandlesProcessor.MODULE_OPTION)
+public final class HandlesProcessor extends AbstractProcessor {
+	/**
+	 * The name of the processor option giving the fully qualified name of the
+	 * generated module.
+	 */
+	static final String MODULE_OPTION = "xylophone.module";
+
+	/**
+	 * The simple name of the generated module, if no name is given as an
+	 * option.
+	 */
+	private static final String DEFAULT_MODULE_NAME = "GeneratedActionModule";
+
+	/**
+	 * Whether the module has already been generated.
+	 */
+	private boolean generated;
+
+	/**
+	 * Constructs a new {@code HandlesProcessor}.
+	 */
+	public HandlesProcessor() {
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		Set<? extends Element> elements = roundEnv
+				.getElementsAnnotatedWith(Handles.class);
+		if (elements.isEmpty()) {
+			return true;
+		} else if (generated) {
+			for (Element element : elements) {
+				error(element, "handler was found after the action module "
+						+ "was generated");
+			}
+			return true;
+		}
+		generated = true;
+
+		Map<String, HandlerBinding> bindings = Maps.newTreeMap();
+		boolean valid = true;
+		for (Element element : elements) {
+			HandlerBinding binding = getBinding((TypeElement) element);
+			if (binding == null) {
+				valid = false;
+			} else if (bindings.containsKey(binding.actionName)) {
+				error(element, "another handler is annotated for "
+						+ binding.actionName);
+				valid = false;
+			} else {
+				bindings.put(binding.actionName, binding);
+			}
+		}
+		if (valid) {
+			writeModule(bindings.values());
+		}
+		return true;
+	}
+
+	/**
+	 * Examines an annotated handler, determining how it must be bound.
+	 * Errors are reported for handlers which cannot be bound.
+	 * 
+	 * @param handler
+	 *            the annotated handler
+	 * @return the binding for the handler, or {@code null} if it cannot be
+	 *         bound
+	 */
+	private HandlerBinding getBinding(TypeElement handler) {
+		Elements elementUtils = processingEnv.getElementUtils();
+		Types typeUtils = processingEnv.getTypeUtils();
+		if (handler.getKind() != ElementKind.CLASS
+				|| handler.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(handler, "@Handles must annotate a concrete class");
+			return null;
+		} else if (handler.getNestingKind() != NestingKind.TOP_LEVEL
+				&& (handler.getNestingKind() != NestingKind.MEMBER || !handler
+						.getModifiers().contains(Modifier.STATIC))) {
+			error(handler, "@Handles must annotate a top-level or static "
+					+ "member class");
+			return null;
+		}
+
+		Handles annotation = handler.getAnnotation(Handles.class);
+		TypeElement action;
+		try {
+			action = elementUtils.getTypeElement(annotation.value()
+					.getCanonicalName());
+		} catch (MirroredTypeException mtx) {
+			action = (TypeElement) typeUtils.asElement(mtx.getTypeMirror());
+		}
+
+		String method = null;
+		DeclaredType supertype = null;
+		Class<?>[] interfaces = { ActionHandler.class,
+				StreamingActionHandler.class, AsyncActionHandler.class };
+		String[] methods = { "bindAction", "bindStreamingAction",
+				"bindAsyncAction" };
+		for (int i = 0; i < interfaces.length; i++) {
+			TypeElement handlerInterface = elementUtils
+					.getTypeElement(interfaces[i].getCanonicalName());
+			DeclaredType found = findSupertype(handler.asType(),
+					handlerInterface);
+			if (found != null) {
+				if (method != null) {
+					error(handler, "handler implements more than one handler "
+							+ "interface");
+					return null;
+				}
+				method = methods[i];
+				supertype = found;
+			}
+		}
+		if (method == null) {
+			error(handler, "@Handles must annotate an action handler");
+			return null;
+		}
+
+		List<? extends TypeMirror> arguments = supertype.getTypeArguments();
+		if (!arguments.isEmpty()
+				&& !typeUtils.isAssignable(typeUtils.erasure(action.asType()),
+						typeUtils.erasure(arguments.get(0)))) {
+			error(handler, "handler does not handle "
+					+ action.getQualifiedName() + ", but "
+					+ arguments.get(0));
+			return null;
+		}
+
+		String bulkhead = annotation.bulkhead();
+		if (!bulkhead.isEmpty() && method.equals("bindAsyncAction")) {
+			error(handler, "asynchronous handlers cannot be assigned to a "
+					+ "bulkhead");
+			return null;
+		}
+		return new HandlerBinding(handler, action.getQualifiedName()
+				.toString(), method, bulkhead);
+	}
+
+	/**
+	 * Finds the parameterization of a handler interface among the supertypes
+	 * of a type.
+	 * 
+	 * @param type
+	 *            the type to search
+	 * @param handlerInterface
+	 *            the handler interface to find
+	 * @return the supertype of {@code type} which is a parameterization of
+	 *         {@code handlerInterface}, or {@code null} if there is none
+	 */
+	private DeclaredType findSupertype(TypeMirror type,
+			TypeElement handlerInterface) {
+		Types typeUtils = processingEnv.getTypeUtils();
+		for (TypeMirror supertype : typeUtils.directSupertypes(type)) {
+			if (handlerInterface.equals(typeUtils.asElement(supertype))) {
+				return (DeclaredType) supertype;
+			}
+			DeclaredType found = findSupertype(supertype, handlerInterface);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the source of the generated module. Errors are reported for
+	 * handlers which are not accessible from the module's package.
+	 * 
+	 * @param bindings
+	 *            the bindings for the annotated handlers, in order of action
+	 *            class name
+	 */
+	private void writeModule(Iterable<HandlerBinding> bindings) {
+		Elements elementUtils = processingEnv.getElementUtils();
+		String moduleName = processingEnv.getOptions().get(MODULE_OPTION);
+		if (moduleName == null) {
+			String packageName = null;
+			for (HandlerBinding binding : bindings) {
+				String handlerPackage = elementUtils
+						.getPackageOf(binding.handler).getQualifiedName()
+						.toString();
+				packageName = (packageName == null ? handlerPackage
+						: getCommonPackage(packageName, handlerPackage));
+			}
+			moduleName = (packageName.isEmpty() ? DEFAULT_MODULE_NAME
+					: packageName + "." + DEFAULT_MODULE_NAME);
+		}
+		int lastDot = moduleName.lastIndexOf('.');
+		String packageName = (lastDot < 0 ? "" : moduleName.substring(0,
+				lastDot));
+		String simpleName = moduleName.substring(lastDot + 1);
+
+		List<Element> handlers = Lists.newArrayList();
+		boolean accessible = true;
+		for (HandlerBinding binding : bindings) {
+			handlers.add(binding.handler);
+			String handlerPackage = elementUtils.getPackageOf(binding.handler)
+					.getQualifiedName().toString();
+			if (!binding.handler.getModifiers().contains(Modifier.PUBLIC)
+					&& !handlerPackage.equals(packageName)) {
+				error(binding.handler, "handler must be public to be bound "
+						+ "by " + moduleName);
+				accessible = false;
+			}
+		}
+		if (!accessible) {
+			return;
+		}
+
+		PrintWriter writer;
+		try {
+			writer = new PrintWriter(processingEnv.getFiler().createSourceFile(
+					moduleName, handlers.toArray(new Element[0]))
+					.openWriter());
+		} catch (IOException iox) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"could not write " + moduleName + ": " + iox.getMessage());
+			return;
+		}
+		try {
+			if (!packageName.isEmpty()) {
+				writer.println("package " + packageName + ";");
+				writer.println();
+			}
+			writer.println("/**");
+			writer.println(" * Binds the action handlers annotated with "
+					+ "{@link " + Handles.class.getName() + "}.");
+			writer.println(" * Generated by {@link " + getClass().getName()
+					+ "}; do not edit.");
+			writer.println(" */");
+			writer.println("public class " + simpleName + " extends "
+					+ ActionModule.class.getName() + " {");
+			writer.println("\t@Override");
+			writer.println("\tprotected void configureActions() {");
+			for (HandlerBinding binding : bindings) {
+				writer.print("\t\t" + binding.method + "(" + binding.actionName
+						+ ".class");
+				if (!binding.bulkhead.isEmpty()) {
+					writer.print(", "
+							+ elementUtils
+									.getConstantExpression(binding.bulkhead));
+				}
+				writer.println(").to(" + binding.handler.getQualifiedName()
+						+ ".class);");
+			}
+			writer.println("\t}");
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Returns the deepest package which contains both of the specified
+	 * packages.
+	 * 
+	 * @param first
+	 *            the qualified name of a package
+	 * @param second
+	 *            the qualified name of another package
+	 * @return the qualified name of the deepest common package, which is
+	 *         empty if only the unnamed package is common
+	 */
+	private static String getCommonPackage(String first, String second) {
+		String[] firstParts = first.split("\\.");
+		String[] secondParts = second.split("\\.");
+		StringBuilder common = new StringBuilder();
+		for (int i = 0; i < Math.min(firstParts.length, secondParts.length); i++) {
+			if (!firstParts[i].equals(secondParts[i])) {
+				break;
+			}
+			if (i > 0) {
+				common.append('.');
+			}
+			common.append(firstParts[i]);
+		}
+		return common.toString();
+	}
+
+	/**
+	 * Reports an error for the specified element.
+	 * 
+	 * @param element
+	 *            the element in error
+	 * @param message
+	 *            the error message
+	 */
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+				message, element);
+	}
+
+	/**
+	 * The binding to be generated for an annotated handler.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private static final class HandlerBinding {
+		/**
+		 * The annotated handler.
+		 */
+		private final TypeElement handler;
+
+		/**
+		 * The qualified name of the action class handled.
+		 */
+		private final String actionName;
+
+		/**
+		 * The name of the {@link ActionModule} method with which the handler
+		 * is bound.
+		 */
+		private final String method;
+
+		/**
+		 * The name of the bulkhead to which the action class is assigned, or
+		 * an empty string if it is not assigned to one.
+		 */
+		private final String bulkhead;
+
+		/**
+		 * Constructs a new {@code HandlerBinding}.
+		 * 
+		 * @param handler
+		 *            the annotated handler
+		 * @param actionName
+		 *            the qualified name of the action class handled
+		 * @param method
+		 *            the name of the method with which the handler is bound
+		 * @param bulkhead
+		 *            the name of the action class's bulkhead, or an empty
+		 *            string
+		 */
+		private HandlerBinding(TypeElement handler, String actionName,
+				String method, String bulkhead) {
+			this.handler = handler;
+			this.actionName = actionName;
+			this.method = method;
+			this.bulkhead = bulkhead;
+		}
+	}
+}
@@ -33,6 +33,7 @@ import com.prealpha.xylophone.shared.Result;
  *            the result type for the action
  * @author Meyer Kizner
  * @see ActionModule
+ * @see StreamingActionHandler
  * 
  */
 public interface ActionHandler<A extends Action<R>, R extends Result> {
@@ -49,7 +50,9 @@ public interface ActionHandler<A extends Action<R>, R extends Result> {
 	 * must begin where the last method call left off, not at the beginning of
 	 * the overall action execution. Handlers must consider actions as separate
 	 * only if they are unequal, as determined by the
-	 * {@link Object#equals(Object)} method.
+	 * {@link Object#equals(Object)} method. Handlers which produce many partial
+	 * results may find it simpler to implement {@link StreamingActionHandler}
+	 * instead.
 	 * 
 	 * @param action
 	 *            an action to execute
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * The server-side counterpart to the client's {@code ActionFilter}. An
+ * interceptor surrounds the invocation of an action handler, and may examine
+ * or replace the result, translate exceptions, or decline to invoke the
+ * handler at all. Interceptors are bound in {@link ActionModule}, either for
+ * all action classes or for a single class, and form a chain in the order in
+ * which they are bound; the first interceptor bound is the outermost.
+ * <p>
+ * 
+ * Interceptors apply to handlers bound using
+ * {@link ActionModule#bindAction(Class)} and
+ * {@link ActionModule#bindStreamingAction(Class)}, and run on the same thread
+ * as the handler, which may be the thread of a bulkhead. They do not apply to
+ * asynchronous handlers. The chain for each action class is assembled once,
+ * when the dispatcher is created, so action classes to which no interceptors
+ * apply are executed exactly as if no interceptors were bound.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#interceptActions()
+ * @see ActionModule#interceptActions(Class)
+ * @since 0.4-beta
+ * 
+ */
+public interface ActionInterceptor {
+	/**
+	 * Intercepts the execution of an action. To continue the execution, the
+	 * interceptor calls {@link Chain#proceed()}, which invokes the next
+	 * interceptor in the chain or, at the end of the chain, the handler
+	 * itself. The interceptor must return a complete result, or throw an
+	 * exception.
+	 * 
+	 * @param action
+	 *            the action being executed
+	 * @param chain
+	 *            the remainder of the chain
+	 * @return the complete result of the action
+	 * @throws ActionException
+	 *             thrown to indicate a problem during dispatch or execution
+	 */
+	<R extends Result> R intercept(Action<R> action, Chain<R> chain)
+			throws ActionException;
+
+	/**
+	 * The remainder of an interceptor chain.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * @since 0.4-beta
+	 * 
+	 */
+	public interface Chain<R extends Result> {
+		/**
+		 * Continues the execution of the action, returning its complete
+		 * result.
+		 * 
+		 * @return the complete result of the action
+		 * @throws ActionException
+		 *             if a later interceptor or the handler throws an
+		 *             {@code ActionException}
+		 */
+		R proceed() throws ActionException;
+	}
+}
@@ -16,35 +16,59 @@
 
 package com.prealpha.xylophone.server;
 
+import static com.google.common.base.Preconditions.*;
+
 import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.http.HttpServletRequest;
 
+import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
+import com.google.inject.BindingAnnotation;
 import com.google.inject.Inject;
+import com.google.inject.Key;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.binder.LinkedBindingBuilder;
 import com.google.inject.internal.UniqueAnnotations;
+import com.google.inject.name.Names;
 import com.google.inject.servlet.RequestScoped;
 import com.google.inject.util.Providers;
 import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.BulkheadFullException;
+import com.prealpha.xylophone.shared.ConcurrencyLimitException;
 import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.LoadShedException;
+import com.prealpha.xylophone.shared.OverflowResult;
+import com.prealpha.xylophone.shared.PrioritizedAction;
+import com.prealpha.xylophone.shared.PrioritizedAction.Priority;
 import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.RateLimitExceededException;
+import com.prealpha.xylophone.shared.filter.CacheableAction;
 
 /**
  * Provides a {@link Dispatcher} and {@link PublishingDispatcher} implementation
  * which delegates action execution to a number of {@link ActionHandler}
  * implementations, one for each {@link Action} type. Handlers are designated
- * using the {@link #bindAction(Class)} method.
+ * using the {@link #bindAction(Class)} method, or for streaming and
+ * asynchronous handlers, the {@link #bindStreamingAction(Class)} and
+ * {@link #bindAsyncAction(Class)} methods.
  * <p>
  * 
  * To use this module, create a subclass and override the abstract
  * {@link #configureActions()} method, which is intended for use in binding
  * handlers to specific action classes. See {@link #bindAction(Class)} for
- * details.
+ * details. Alternatively, handlers may be annotated with {@link Handles}, in
+ * which case a subclass which binds them is generated at compile time.
  * <p>
  * 
  * Once this module is installed, {@code Dispatcher},
@@ -58,6 +82,43 @@ import com.prealpha.xylophone.shared.PublishingDispatcher;
  * 
  */
 public abstract class ActionModule extends AbstractModule {
+	/**
+	 * The sequence number of the next interceptor or rate limit bound, which
+	 * records the order in which they were bound.
+	 */
+	private int nextSequence;
+
+	/**
+	 * The name of the default bulkhead, on which actions not assigned to any
+	 * other bulkhead are run if {@link #bindVirtualThreads()},
+	 * {@link #bindVirtualThreads(int, int)} or
+	 * {@link #bindPriorityScheduling(int, int)} was called. This is the name
+	 * reported by a {@link BulkheadFullException} when that bulkhead is full.
+	 * 
+	 * @since 0.4-beta
+	 */
+	public static final String DEFAULT_BULKHEAD = "action";
+
+	/**
+	 * Binding annotation for the {@link Executor} on which action handlers may
+	 * execute work on behalf of the dispatcher, such as the individual actions
+	 * of a batch. Tasks run on this executor are treated as part of the action
+	 * which submitted them. If a default bulkhead was bound, by
+	 * {@link ActionModule#bindVirtualThreads()},
+	 * {@link ActionModule#bindVirtualThreads(int, int)} or
+	 * {@link ActionModule#bindPriorityScheduling(int, int)}, tasks run on that
+	 * bulkhead, except that a task submitted from one of a bounded bulkhead's
+	 * own threads runs directly on the submitting thread. Otherwise, tasks run
+	 * directly on the submitting thread.
+	 * 
+	 * @since 0.4-beta
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ ElementType.FIELD, ElementType.PARAMETER, ElementType.METHOD })
+	@BindingAnnotation
+	public static @interface ActionExecutor {
+	}
+
 	/**
 	 * Constructs a new {@code ActionModule}.
 	 */
@@ -67,16 +128,19 @@ public abstract class ActionModule extends AbstractModule {
 	/**
 	 * Configures the underlying {@link Binder} by binding the
 	 * {@link Dispatcher} and {@link PublishingDispatcher} interfaces to the
-	 * internal implementation. The {@link #configureActions()} method is then
-	 * called to allow for further configuration.
+	 * internal implementation, along with the registry it uses to locate
+	 * handlers and the metrics it records. The {@link #configureActions()}
+	 * method is then called to allow for further configuration.
 	 * 
 	 * @see AbstractModule#configure()
 	 */
 	@Override
 	protected final void configure() {
 		bind(Dispatcher.class).to(PublishingDispatcher.class);
-		bind(PublishingDispatcher.class).to(PublishingDispatcherImpl.class).in(
-				Singleton.class);
+		bind(PublishingDispatcher.class).to(PublishingDispatcherImpl.class);
+		bind(PublishingDispatcherImpl.class).in(Singleton.class);
+		bind(HandlerRegistry.class).in(Singleton.class);
+		bind(DispatcherMetrics.class).in(Singleton.class);
 		configureActions();
 	}
 
@@ -95,6 +159,37 @@ public abstract class ActionModule extends AbstractModule {
 		return request.startAsync();
 	}
 
+	/**
+	 * Provides the binding for the {@link ActionExecutor} {@link Executor},
+	 * which is implemented by {@link PublishingDispatcherImpl}.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher provided by this module
+	 * @return the executor for work performed on behalf of actions
+	 */
+	@Provides
+	@ActionExecutor
+	@Inject
+	Executor getActionExecutor(PublishingDispatcherImpl dispatcher) {
+		return dispatcher.getActionExecutor();
+	}
+
+	/**
+	 * Provides the binding for {@link CancellationToken}, which is the token
+	 * of the action being executed by the calling thread.
+	 * 
+	 * @param dispatcher
+	 *            the dispatcher executing the action
+	 * @return the current cancellation token
+	 * @throws IllegalStateException
+	 *             if the calling thread is not executing an action
+	 */
+	@Provides
+	@Inject
+	CancellationToken getCancellationToken(PublishingDispatcherImpl dispatcher) {
+		return dispatcher.getCancellationToken();
+	}
+
 	/**
 	 * Performs additional configuration by binding classes for dependency
 	 * injection. While it is intended that the primary use of this method is
@@ -116,7 +211,10 @@ public abstract class ActionModule extends AbstractModule {
 	 * 
 	 * If an action handler is stateful, it should be bound in the singleton
 	 * scope. Stateful action handlers are necessary when an action execution
-	 * requires the use of partial results.
+	 * requires the use of partial results. Alternatively, such actions may be
+	 * bound to a {@link StreamingActionHandler} using
+	 * {@link #bindStreamingAction(Class)}, which does not require any state to
+	 * be kept between invocations.
 	 * <p>
 	 * 
 	 * When this method is called, the passed class is considered by Guice to be
@@ -149,9 +247,681 @@ public abstract class ActionModule extends AbstractModule {
 	@SuppressWarnings("rawtypes")
 	protected final <A extends Action<?>> LinkedBindingBuilder<ActionHandler> bindAction(
 			Class<A> actionClass) {
+		Annotation annotation = bindActionClass(actionClass);
+		return bind(ActionHandler.class).annotatedWith(annotation);
+	}
+
+	/**
+	 * Binds the handling of an {@link Action} class to a particular
+	 * {@link ActionHandler}, exactly as {@link #bindAction(Class)}, and assigns
+	 * the action class to a bulkhead. The handler for the action class will be
+	 * executed only on the bulkhead's threads, and if the bulkhead is full when
+	 * the action is executed, the action will be rejected with a
+	 * {@link BulkheadFullException}. The bulkhead must be created using
+	 * {@link #bindBulkhead(String, int, int)}, in this module or another.
+	 * 
+	 * @param actionClass
+	 *            the action class to bind
+	 * @param bulkhead
+	 *            the name of the bulkhead to which the action class is assigned
+	 * @return a {@link LinkedBindingBuilder} with which an action handler can
+	 *         be bound to the action class
+	 * @see #bindAction(Class)
+	 * @since 0.4-beta
+	 */
+	/*
+	 * See the implementation comment for bindBulkheadAssignment().
+	 */
+	@SuppressWarnings("rawtypes")
+	protected final <A extends Action<?>> LinkedBindingBuilder<ActionHandler> bindAction(
+			Class<A> actionClass, String bulkhead) {
+		Annotation annotation = bindActionClass(actionClass);
+		bindBulkheadAssignment(annotation, bulkhead);
+		return bind(ActionHandler.class).annotatedWith(annotation);
+	}
+
+	/**
+	 * Binds the handling of an {@link Action} class to a particular
+	 * {@link StreamingActionHandler} for the purposes of the {@link Dispatcher}
+	 * provided by this module. This method behaves exactly like
+	 * {@link #bindAction(Class)}, except that the handler bound is invoked only
+	 * once per action, and pushes any partial results it produces rather than
+	 * returning them. An action class may be bound using only one of the
+	 * {@code bind} methods of this class.
+	 * 
+	 * @param actionClass
+	 *            the action class to bind
+	 * @return a {@link LinkedBindingBuilder} with which a streaming action
+	 *         handler can be bound to the action class
+	 * @see #bindAction(Class)
+	 * @since 0.4-beta
+	 */
+	/*
+	 * See the implementation comments for bindAction(Class).
+	 */
+	@SuppressWarnings("rawtypes")
+	protected final <A extends Action<?>> LinkedBindingBuilder<StreamingActionHandler> bindStreamingAction(
+			Class<A> actionClass) {
+		Annotation annotation = bindActionClass(actionClass);
+		return bind(StreamingActionHandler.class).annotatedWith(annotation);
+	}
+
+	/**
+	 * Binds the handling of an {@link Action} class to a particular
+	 * {@link StreamingActionHandler}, exactly as
+	 * {@link #bindStreamingAction(Class)}, and assigns the action class to a
+	 * bulkhead, exactly as {@link #bindAction(Class, String)}.
+	 * 
+	 * @param actionClass
+	 *            the action class to bind
+	 * @param bulkhead
+	 *            the name of the bulkhead to which the action class is assigned
+	 * @return a {@link LinkedBindingBuilder} with which a streaming action
+	 *         handler can be bound to the action class
+	 * @see #bindStreamingAction(Class)
+	 * @see #bindAction(Class, String)
+	 * @since 0.4-beta
+	 */
+	@SuppressWarnings("rawtypes")
+	protected final <A extends Action<?>> LinkedBindingBuilder<StreamingActionHandler> bindStreamingAction(
+			Class<A> actionClass, String bulkhead) {
+		Annotation annotation = bindActionClass(actionClass);
+		bindBulkheadAssignment(annotation, bulkhead);
+		return bind(StreamingActionHandler.class).annotatedWith(annotation);
+	}
+
+	/**
+	 * Creates a named bulkhead, to which action classes can be assigned using
+	 * {@link #bindAction(Class, String)}. A bulkhead executes at most
+	 * {@code maxConcurrency} actions at once, on its own threads, and allows at
+	 * most {@code maxQueued} further actions to wait for a thread. Additional
+	 * actions are rejected, so that a burst of actions of one class cannot
+	 * exhaust the threads available to others. Each bulkhead name may only be
+	 * bound once.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of actions which may execute at once
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait to execute
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 * @since 0.4-beta
+	 */
+	protected final void bindBulkhead(String name, int maxConcurrency,
+			int maxQueued) {
+		bind(Bulkhead.class).annotatedWith(Names.named(name)).toInstance(
+				new Bulkhead(name, maxConcurrency, maxQueued));
+	}
+
+	/**
+	 * Creates a named bulkhead with priority scheduling. The bulkhead behaves
+	 * exactly like one created by {@link #bindBulkhead(String, int, int)},
+	 * except that actions waiting for a thread are started in order of
+	 * {@linkplain PrioritizedAction priority} rather than strictly in the
+	 * order in which they arrived. Actions of equal priority are started in
+	 * the order in which they arrived.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of actions which may execute at once
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait to execute
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 * @since 0.4-beta
+	 */
+	protected final void bindPriorityBulkhead(String name, int maxConcurrency,
+			int maxQueued) {
+		bind(Bulkhead.class).annotatedWith(Names.named(name)).toInstance(
+				Bulkhead.prioritized(name, maxConcurrency, maxQueued));
+	}
+
+	/**
+	 * Configures the dispatcher to run each action which is not assigned to a
+	 * bulkhead on a shared pool of threads with priority scheduling, rather
+	 * than on the servlet container's request thread. The pool behaves like a
+	 * bulkhead created by {@link #bindPriorityBulkhead(String, int, int)}, so
+	 * that when the server is saturated, {@link Priority#INTERACTIVE} actions
+	 * are started ahead of {@link Priority#BACKGROUND} work. The request is
+	 * suspended while the action waits and executes, exactly as for
+	 * {@link #bindVirtualThreads()}; at most one of these two methods may be
+	 * used.
+	 * 
+	 * @param maxConcurrency
+	 *            the maximum number of actions which may execute at once
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait to execute
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 * @since 0.4-beta
+	 */
+	protected final void bindPriorityScheduling(int maxConcurrency,
+			int maxQueued) {
+		bind(Bulkhead.class).annotatedWith(ActionExecutor.class).toInstance(
+				Bulkhead.prioritized(DEFAULT_BULKHEAD, maxConcurrency,
+						maxQueued));
+	}
+
+	/**
+	 * Configures the dispatcher to run each action on a virtual thread of its
+	 * own, rather than on the servlet container's request thread. The request
+	 * is suspended using an {@link AsyncContext} while the action executes, in
+	 * the same manner as for an {@link AsyncActionHandler}. Likewise, each
+	 * task submitted to the {@link ActionExecutor}, including each action in a
+	 * batch, runs on a virtual thread of its own.
+	 * <p>
+	 * 
+	 * Handlers which block on I/O do not hold a platform thread while waiting,
+	 * which allows many more concurrent actions than a pool of platform
+	 * threads. Actions assigned to a bulkhead using
+	 * {@link #bindAction(Class, String)} continue to run on that bulkhead's
+	 * threads, and asynchronous handlers are unaffected. To support older
+	 * runtimes as well, use {@link #bindVirtualThreads(int, int)} instead.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the Java runtime does not support virtual threads
+	 * @since 0.4-beta
+	 */
+	protected final void bindVirtualThreads() {
+		bind(Bulkhead.class).annotatedWith(ActionExecutor.class).toInstance(
+				Bulkhead.threadPerAction(DEFAULT_BULKHEAD));
+	}
+
+	/**
+	 * Configures the dispatcher to run each action on a virtual thread of its
+	 * own, exactly as for {@link #bindVirtualThreads()}, if the Java runtime
+	 * supports them. On older runtimes, actions instead run on a shared pool of
+	 * platform threads with the specified bounds, which behaves like a
+	 * bulkhead created by {@link #bindBulkhead(String, int, int)}; actions
+	 * beyond those bounds fail with a {@link BulkheadFullException}.
+	 * 
+	 * @param maxConcurrency
+	 *            the maximum number of platform threads, if virtual threads
+	 *            are not supported
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait for a platform
+	 *            thread, if virtual threads are not supported
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 * @since 0.4-beta
+	 */
+	protected final void bindVirtualThreads(int maxConcurrency, int maxQueued) {
+		bind(Bulkhead.class).annotatedWith(ActionExecutor.class).toInstance(
+				Bulkhead.threadPerAction(DEFAULT_BULKHEAD, maxConcurrency,
+						maxQueued));
+	}
+
+	/**
+	 * Configures the dispatcher to cache the results of
+	 * {@link CacheableAction}s in server memory, sharing them among all
+	 * clients. Before a cacheable action is executed, the cache is checked for
+	 * an unexpired result of an equal action; if one is found, it is returned
+	 * without executing the action or publishing any results. Complete results
+	 * of cacheable actions are added to the cache until the expiry time given
+	 * by {@link CacheableAction#getCacheExpiry(com.prealpha.xylophone.shared.Result)}.
+	 * Once the cache holds {@code maximumSize} results, the least recently
+	 * used are evicted.
+	 * 
+	 * @param maximumSize
+	 *            the maximum number of results to cache
+	 * @throws IllegalArgumentException
+	 *             if {@code maximumSize} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void bindResultCache(long maximumSize) {
+		bind(ResultCache.class).toInstance(new ResultCache(maximumSize));
+	}
+
+	/**
+	 * Configures the dispatcher to shed load from bulkheads whose queues are
+	 * persistently backed up. The time each action spends waiting for a
+	 * bulkhead thread is measured when it leaves the queue. Once waiting times
+	 * have stayed above {@code targetMillis} for at least
+	 * {@code intervalMillis}, some waiting actions are failed immediately with
+	 * a {@link LoadShedException} rather than executed, increasingly often
+	 * until waiting times fall below the target again. This keeps the actions
+	 * which are executed fast, rather than letting every action wait until it
+	 * times out. Brief bursts which drain within the interval are not shed.
+	 * <p>
+	 * 
+	 * Each bulkhead, including the shared pool created by
+	 * {@link #bindPriorityScheduling(int, int)}, is shed independently. Actions
+	 * which run on the calling thread or on an unbounded bulkhead never wait,
+	 * and so are never shed. A target of a few milliseconds and an interval
+	 * of around 100 milliseconds are reasonable starting points.
+	 * 
+	 * @param targetMillis
+	 *            the acceptable time for actions to wait, in milliseconds
+	 * @param intervalMillis
+	 *            the time for which waiting times must stay above the target
+	 *            before actions are shed, in milliseconds
+	 * @throws IllegalArgumentException
+	 *             if either argument is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void bindLoadShedding(long targetMillis,
+			long intervalMillis) {
+		bind(LoadShedder.class).toInstance(
+				new LoadShedder(targetMillis, intervalMillis,
+						TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Configures the dispatcher to limit the number of actions it executes at
+	 * once, adjusting the limit automatically according to their latency.
+	 * While actions complete promptly and the limit is in use, it rises by one
+	 * for each action; when latency climbs well above the lowest recently
+	 * observed for the action's class, or an action is rejected or times out,
+	 * it falls by a tenth.
+	 * Actions executed while the limit is reached fail immediately with a
+	 * {@link ConcurrencyLimitException}. The current limit is reported by
+	 * {@link DispatcherMetrics#getConcurrencyLimit()}.
+	 * <p>
+	 * 
+	 * Only actions executed directly by clients count towards the limit;
+	 * nested actions, and actions whose results are found in the result
+	 * cache, do not. An action which suspends its request holds its place
+	 * until it finishes, even if the request is never dispatched again.
+	 * 
+	 * @param initialLimit
+	 *            the limit with which the dispatcher starts
+	 * @param maxLimit
+	 *            the highest value to which the limit may rise
+	 * @throws IllegalArgumentException
+	 *             if {@code initialLimit} is not positive, or if
+	 *             {@code maxLimit} is less than {@code initialLimit}
+	 * @since 0.4-beta
+	 */
+	protected final void bindConcurrencyLimit(int initialLimit, int maxLimit) {
+		bind(ConcurrencyLimiter.class).toInstance(
+				new ConcurrencyLimiter(initialLimit, maxLimit));
+	}
+
+	/**
+	 * Configures the dispatcher to deliver published results to subscribers
+	 * on dedicated publisher threads, rather than on the thread which executes
+	 * the action. The latency of an action then no longer depends on the
+	 * number of subscribers to its results. Results of equal actions are
+	 * always delivered by the same thread, in the order in which they were
+	 * published; results of other actions may be delivered in any order.
+	 * Because delivery is asynchronous, a client may receive the result of an
+	 * action it executed before subscribers have been given the same result.
+	 * <p>
+	 * 
+	 * The pipeline holds at most {@code capacity} results waiting to be
+	 * delivered, divided evenly among the publisher threads. When a thread's
+	 * share is full, further results are handled according to
+	 * {@code policy}.
+	 * 
+	 * @param capacity
+	 *            the number of results which may wait to be delivered
+	 * @param threads
+	 *            the number of publisher threads
+	 * @param policy
+	 *            the policy for results published while the pipeline is full
+	 * @throws NullPointerException
+	 *             if {@code policy} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} or {@code threads} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void bindPublishPipeline(int capacity, int threads,
+			PublishOverflowPolicy policy) {
+		bind(PublishPipeline.class).toInstance(
+				new PublishPipeline(capacity, threads, policy));
+	}
+
+	/**
+	 * Limits the number of results each subscription may hold between checks.
+	 * Without a limit, a client which subscribes and then stops checking
+	 * causes results to accumulate on the server until the subscription is
+	 * cancelled. When a result is published to a full backlog, it is handled
+	 * according to {@code policy}, and the overflow is reported to the client
+	 * by an {@link OverflowResult} at the start of its next check.
+	 * 
+	 * @param capacity
+	 *            the number of results a subscription may hold between checks
+	 * @param policy
+	 *            the policy for results published to a full backlog
+	 * @throws NullPointerException
+	 *             if {@code policy} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void bindSubscriptionCapacity(int capacity,
+			BacklogOverflowPolicy policy) {
+		bind(BacklogLimit.class).toInstance(new BacklogLimit(capacity, policy));
+	}
+
+	/**
+	 * Configures the dispatcher to expire subscriptions which are not checked
+	 * within the specified time, as if they had been cancelled. Without a
+	 * lease, a client which disappears without cancelling its subscriptions,
+	 * such as a closed browser tab, leaves them on the server indefinitely.
+	 * Checking an expired subscription fails with an
+	 * {@link IllegalArgumentException}, as for any invalid subscription ID.
+	 * <p>
+	 * 
+	 * The lease is renewed whenever a check begins, and for as long as a
+	 * request or stream is waiting for results, so a connected client is
+	 * never expired however long its subscription stays quiet. Once its
+	 * request times out or its stream closes, the client has the full lease in
+	 * which to reconnect. Expiry is scheduled on a hashed timing wheel, and
+	 * may occur slightly after the lease ends.
+	 * 
+	 * @param ttlMillis
+	 *            the time for which a subscription may go unchecked, in
+	 *            milliseconds
+	 * @throws IllegalArgumentException
+	 *             if {@code ttlMillis} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void bindSubscriptionLease(long ttlMillis) {
+		bind(SubscriptionLease.class).toInstance(
+				new SubscriptionLease(ttlMillis));
+	}
+
+	/**
+	 * Binds a {@link PublicationBus} which connects this node's dispatcher to
+	 * those of other nodes, so that a subscription receives the results of
+	 * matching actions executed on any node. Results published on this node
+	 * are delivered to its own subscriptions as usual, and are also queued and
+	 * sent to the other nodes in batches; results received from other nodes
+	 * are delivered only to this node's subscriptions. A batch is sent as soon
+	 * as it is full, or once the oldest result in it has waited for the
+	 * maximum delay.
+	 * <p>
+	 * 
+	 * Delivery across the bus is best-effort, and results from other nodes do
+	 * not count towards this node's metrics. The bus is started when the
+	 * injector is created.
+	 * 
+	 * @param maxBatchSize
+	 *            the largest number of results sent in one bus message
+	 * @param maxDelayMillis
+	 *            the longest time a result may wait to be sent, in
+	 *            milliseconds
+	 * @return a {@link LinkedBindingBuilder} with which the bus can be bound
+	 * @throws IllegalArgumentException
+	 *             if either argument is not positive
+	 * @see LoopbackPublicationBus
+	 * @see SocketPublicationBus
+	 * @since 0.4-beta
+	 */
+	protected final LinkedBindingBuilder<PublicationBus> bindPublicationBus(
+			int maxBatchSize, long maxDelayMillis) {
+		bind(PublicationBatcher.class).toInstance(
+				new PublicationBatcher(maxBatchSize, maxDelayMillis));
+		return bind(PublicationBus.class);
+	}
+
+	/**
+	 * Binds an {@link ActionInterceptor} which applies to all action classes
+	 * with synchronous or streaming handlers. Interceptors form a chain in the
+	 * order in which they are bound, whether they apply to all action classes
+	 * or only to one; the first interceptor bound is the outermost.
+	 * 
+	 * @return a {@link LinkedBindingBuilder} with which the interceptor can be
+	 *         bound
+	 * @see #interceptActions(Class)
+	 * @since 0.4-beta
+	 */
+	protected final LinkedBindingBuilder<ActionInterceptor> interceptActions() {
+		return bindActionInterceptor(null);
+	}
+
+	/**
+	 * Binds an {@link ActionInterceptor} which applies only to the specified
+	 * action class, exactly as {@link #interceptActions()}. The action class
+	 * must have a synchronous or streaming handler.
+	 * 
+	 * @param actionClass
+	 *            the action class to which the interceptor applies
+	 * @return a {@link LinkedBindingBuilder} with which the interceptor can be
+	 *         bound
+	 * @see #interceptActions()
+	 * @since 0.4-beta
+	 */
+	protected final LinkedBindingBuilder<ActionInterceptor> interceptActions(
+			Class<? extends Action<?>> actionClass) {
+		return bindActionInterceptor(checkNotNull(actionClass));
+	}
+
+	/**
+	 * Exports the {@link DispatcherMetrics} of the dispatcher provided by this
+	 * module over JMX. The metrics are registered with the platform MBean
+	 * server when the injector is created, under the object name
+	 * {@code com.prealpha.xylophone:type=Dispatcher,name=<name>}. Metrics
+	 * already registered under the same name are replaced, so that a web
+	 * application may be redeployed in the same JVM; the name should
+	 * otherwise be unique within the JVM. Metrics are recorded whether or not
+	 * they are exported.
+	 * 
+	 * @param name
+	 *            the name under which the metrics are registered
+	 * @see DispatcherMetricsMXBean
+	 * @since 0.4-beta
+	 */
+	protected final void exportMetrics(String name) {
+		bind(MetricsExporter.class).toInstance(
+				new MetricsExporter(checkNotNull(name)));
+	}
+
+	/**
+	 * Limits the rate at which actions of the specified class are executed by
+	 * all clients together. The limit is enforced with a token bucket holding
+	 * up to {@code burst} tokens and refilled at {@code permitsPerSecond}; an
+	 * action which finds the bucket empty fails with a
+	 * {@link RateLimitExceededException} before its handler is located or
+	 * instantiated. The limit applies to nested actions as well as to those
+	 * executed directly by clients. Several limits may apply to the same
+	 * action, in which case it must satisfy all of them.
+	 * 
+	 * @param actionClass
+	 *            the action class to limit
+	 * @param permitsPerSecond
+	 *            the sustained rate of actions permitted
+	 * @param burst
+	 *            the number of actions which may be executed at once after a
+	 *            period of inactivity
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} is not positive
+	 * @see #limitClientRate(Class, double, int)
+	 * @since 0.4-beta
+	 */
+	protected final void limitRate(Class<? extends Action<?>> actionClass,
+			double permitsPerSecond, int burst) {
+		bindRateLimit(checkNotNull(actionClass), false, permitsPerSecond,
+				burst);
+	}
+
+	/**
+	 * Limits the rate at which each client executes actions of any class,
+	 * exactly as {@link #limitRate(Class, double, int)}. Clients are
+	 * identified by their authenticated user name, or if there is none, by
+	 * their HTTP session or address; each client has a separate token bucket.
+	 * Only actions executed directly by clients count towards the limit, so
+	 * that a batch of actions counts only once.
+	 * 
+	 * @param permitsPerSecond
+	 *            the sustained rate of actions permitted for each client
+	 * @param burst
+	 *            the number of actions which each client may execute at once
+	 *            after a period of inactivity
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void limitClientRate(double permitsPerSecond, int burst) {
+		bindRateLimit(null, true, permitsPerSecond, burst);
+	}
+
+	/**
+	 * Limits the rate at which each client executes actions of the specified
+	 * class, exactly as {@link #limitClientRate(double, int)}.
+	 * 
+	 * @param actionClass
+	 *            the action class to limit
+	 * @param permitsPerSecond
+	 *            the sustained rate of actions permitted for each client
+	 * @param burst
+	 *            the number of actions which each client may execute at once
+	 *            after a period of inactivity
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} is not positive
+	 * @since 0.4-beta
+	 */
+	protected final void limitClientRate(
+			Class<? extends Action<?>> actionClass, double permitsPerSecond,
+			int burst) {
+		bindRateLimit(checkNotNull(actionClass), true, permitsPerSecond,
+				burst);
+	}
+
+	/**
+	 * Resolves and validates every bound handler when the injector is
+	 * created, rather than when each action class is first executed. Each
+	 * handler and interceptor is obtained from the injector, so that its class
+	 * is loaded and any singleton is instantiated, and each handler is checked
+	 * to ensure that it handles the action class to which it is bound. Any
+	 * problem prevents the injector from being created.
+	 * <p>
+	 * 
+	 * The specified warm-up actions are then executed in order, exactly as
+	 * they would be for a client, but outside of any request. They should be
+	 * inexpensive actions which exercise the code paths of frequently used
+	 * handlers. If a warm-up action fails, the injector is not created.
+	 * 
+	 * @param warmUpActions
+	 *            actions to execute once the handlers have been validated
+	 * @since 0.4-beta
+	 */
+	protected final void warmUpHandlers(Action<?>... warmUpActions) {
+		List<Action<?>> actions = Lists.newArrayList();
+		for (Action<?> action : warmUpActions) {
+			actions.add(checkNotNull(action));
+		}
+		bind(HandlerWarmer.class).toInstance(new HandlerWarmer(actions));
+	}
+
+	/**
+	 * Binds the handling of an {@link Action} class to a particular
+	 * {@link AsyncActionHandler} for the purposes of the {@link Dispatcher}
+	 * provided by this module. This method behaves exactly like
+	 * {@link #bindAction(Class)}, except that the handler bound need not return
+	 * its result before the dispatcher's thread is released. An action class
+	 * may be bound using only one of the {@code bind} methods of this class.
+	 * 
+	 * @param actionClass
+	 *            the action class to bind
+	 * @return a {@link LinkedBindingBuilder} with which an asynchronous action
+	 *         handler can be bound to the action class
+	 * @see #bindAction(Class)
+	 * @since 0.4-beta
+	 */
+	/*
+	 * See the implementation comments for bindAction(Class).
+	 */
+	@SuppressWarnings("rawtypes")
+	protected final <A extends Action<?>> LinkedBindingBuilder<AsyncActionHandler> bindAsyncAction(
+			Class<A> actionClass) {
+		Annotation annotation = bindActionClass(actionClass);
+		return bind(AsyncActionHandler.class).annotatedWith(annotation);
+	}
+
+	/**
+	 * Creates the bindings for an action class which are common to
+	 * {@link #bindAction(Class)} and {@link #bindAsyncAction(Class)}, returning
+	 * the unique annotation with which the action's handler must be bound.
+	 * 
+	 * @param actionClass
+	 *            the action class to bind
+	 * @return the annotation identifying the action class's bindings
+	 */
+	private <A extends Action<?>> Annotation bindActionClass(
+			Class<A> actionClass) {
 		Annotation annotation = UniqueAnnotations.create();
 		bind(Action.class).annotatedWith(annotation).to(actionClass);
 		bind(actionClass).toProvider(Providers.<A> of(null));
-		return bind(ActionHandler.class).annotatedWith(annotation);
+		return annotation;
+	}
+
+	/**
+	 * Binds a rate limit with a unique annotation, so that it can be found by
+	 * {@link HandlerRegistry}.
+	 * 
+	 * @param actionClass
+	 *            the action class to which the limit applies, or {@code null}
+	 *            if it applies to all action classes
+	 * @param perClient
+	 *            whether each client has a separate limit
+	 * @param permitsPerSecond
+	 *            the sustained rate of actions permitted
+	 * @param burst
+	 *            the number of actions which may be executed at once after a
+	 *            period of inactivity
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} is not positive
+	 */
+	private void bindRateLimit(Class<?> actionClass, boolean perClient,
+			double permitsPerSecond, int burst) {
+		bind(RateLimit.class).annotatedWith(UniqueAnnotations.create())
+				.toInstance(new RateLimit(nextSequence++, actionClass,
+						perClient, permitsPerSecond, burst));
+	}
+
+	/**
+	 * Creates the bindings for an interceptor, returning the builder with
+	 * which the interceptor itself must be bound.
+	 * 
+	 * @param actionClass
+	 *            the action class to which the interceptor applies, or
+	 *            {@code null} if it applies to all action classes
+	 * @return a {@link LinkedBindingBuilder} with which the interceptor can be
+	 *         bound
+	 */
+	/*
+	 * Each interceptor is bound with a unique annotation, and an
+	 * InterceptorBinding records that annotation's key along with the action
+	 * class and a sequence number. Guice does not specify the order in which
+	 * it reports bindings, so HandlerRegistry sorts the InterceptorBindings by
+	 * sequence number to recover the order in which they were bound.
+	 */
+	private LinkedBindingBuilder<ActionInterceptor> bindActionInterceptor(
+			Class<?> actionClass) {
+		Key<ActionInterceptor> key = Key.get(ActionInterceptor.class,
+				UniqueAnnotations.create());
+		bind(InterceptorBinding.class).annotatedWith(UniqueAnnotations.create())
+				.toInstance(new InterceptorBinding(nextSequence++, actionClass,
+						key));
+		return bind(key);
+	}
+
+	/**
+	 * Assigns the action class identified by the specified annotation to the
+	 * named bulkhead.
+	 * 
+	 * @param annotation
+	 *            the annotation identifying the action class's bindings
+	 * @param bulkhead
+	 *            the name of the bulkhead to which the action class is assigned
+	 */
+	/*
+	 * The action's unique annotation is used to link the action class to the
+	 * named bulkhead, so that the dispatcher can find the bulkhead in the same
+	 * way that it finds the handler. Guice reports an error if the named
+	 * bulkhead is never bound.
+	 */
+	private void bindBulkheadAssignment(Annotation annotation, String bulkhead) {
+		bind(Bulkhead.class).annotatedWith(annotation).to(
+				Key.get(Bulkhead.class, Names.named(bulkhead)));
 	}
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the metrics for a single action class. All methods are lock-free,
+ * so that recording does not contend with the actions being measured.
+ * 
+ * @author Meyer Kizner
+ * @see DispatcherMetrics
+ * 
+ */
+final class ActionRecorder {
+	/**
+	 * The number of executions which have finished, successfully or not.
+	 */
+	private final AtomicLong invocations;
+
+	/**
+	 * The number of executions which have failed.
+	 */
+	private final AtomicLong errors;
+
+	/**
+	 * The number of partial results which have been published.
+	 */
+	private final AtomicLong partialResults;
+
+	/**
+	 * The latencies of finished executions.
+	 */
+	private final LatencyHistogram latencies;
+
+	/**
+	 * Constructs a new {@code ActionRecorder} with all metrics at zero.
+	 */
+	ActionRecorder() {
+		invocations = new AtomicLong();
+		errors = new AtomicLong();
+		partialResults = new AtomicLong();
+		latencies = new LatencyHistogram();
+	}
+
+	/**
+	 * Records a finished execution.
+	 * 
+	 * @param startTime
+	 *            the time at which the execution started, as given by
+	 *            {@link System#nanoTime()}
+	 * @param failed
+	 *            whether the execution failed
+	 */
+	void recordExecution(long startTime, boolean failed) {
+		invocations.incrementAndGet();
+		if (failed) {
+			errors.incrementAndGet();
+		}
+		latencies.record((System.nanoTime() - startTime) / 1000);
+	}
+
+	/**
+	 * Records the publication of a partial result.
+	 */
+	void recordPartialResult() {
+		partialResults.incrementAndGet();
+	}
+
+	/**
+	 * Returns a snapshot of the metrics recorded so far.
+	 * 
+	 * @return a snapshot of the metrics
+	 */
+	ActionStats snapshot() {
+		long[] counts = latencies.getCounts();
+		long max = latencies.getMax();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		long mean = (total == 0 ? 0 : latencies.getSum() / total);
+		return new ActionStats(invocations.get(), errors.get(),
+				partialResults.get(), mean, LatencyHistogram.getPercentile(
+						counts, max, 50), LatencyHistogram.getPercentile(counts,
+						max, 90), LatencyHistogram.getPercentile(counts, max,
+						99), max);
+	}
+}
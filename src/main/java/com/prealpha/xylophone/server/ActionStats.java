@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable snapshot of the metrics recorded for a single action class by
+ * {@link DispatcherMetrics}. Latencies are measured from the time the
+ * dispatcher begins executing an action until its complete result or
+ * exception is available, including any time spent waiting in a bulkhead, and
+ * are given in microseconds. Percentiles are approximate, to within 12.5%.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class ActionStats {
+	/**
+	 * The number of executions which have finished, successfully or not.
+	 */
+	private final long invocations;
+
+	/**
+	 * The number of executions which have failed.
+	 */
+	private final long errors;
+
+	/**
+	 * The number of partial results which have been published.
+	 */
+	private final long partialResults;
+
+	/**
+	 * The mean latency, in microseconds.
+	 */
+	private final long meanLatency;
+
+	/**
+	 * The median latency, in microseconds.
+	 */
+	private final long medianLatency;
+
+	/**
+	 * The 90th percentile latency, in microseconds.
+	 */
+	private final long latency90;
+
+	/**
+	 * The 99th percentile latency, in microseconds.
+	 */
+	private final long latency99;
+
+	/**
+	 * The greatest latency, in microseconds.
+	 */
+	private final long maxLatency;
+
+	/**
+	 * Constructs a new {@code ActionStats}.
+	 * 
+	 * @param invocations
+	 *            the number of finished executions
+	 * @param errors
+	 *            the number of failed executions
+	 * @param partialResults
+	 *            the number of partial results published
+	 * @param meanLatency
+	 *            the mean latency
+	 * @param medianLatency
+	 *            the median latency
+	 * @param latency90
+	 *            the 90th percentile latency
+	 * @param latency99
+	 *            the 99th percentile latency
+	 * @param maxLatency
+	 *            the greatest latency
+	 */
+	@ConstructorProperties({ "invocations", "errors", "partialResults",
+			"meanLatency", "medianLatency", "latency90", "latency99",
+			"maxLatency" })
+	public ActionStats(long invocations, long errors, long partialResults,
+			long meanLatency, long medianLatency, long latency90,
+			long latency99, long maxLatency) {
+		this.invocations = invocations;
+		this.errors = errors;
+		this.partialResults = partialResults;
+		this.meanLatency = meanLatency;
+		this.medianLatency = medianLatency;
+		this.latency90 = latency90;
+		this.latency99 = latency99;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * @return the number of executions which have finished, successfully or
+	 *         not
+	 */
+	public long getInvocations() {
+		return invocations;
+	}
+
+	/**
+	 * @return the number of executions which have failed
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the number of partial results which have been published
+	 */
+	public long getPartialResults() {
+		return partialResults;
+	}
+
+	/**
+	 * @return the mean latency, in microseconds
+	 */
+	public long getMeanLatency() {
+		return meanLatency;
+	}
+
+	/**
+	 * @return the median latency, in microseconds
+	 */
+	public long getMedianLatency() {
+		return medianLatency;
+	}
+
+	/**
+	 * @return the 90th percentile latency, in microseconds
+	 */
+	public long getLatency90() {
+		return latency90;
+	}
+
+	/**
+	 * @return the 99th percentile latency, in microseconds
+	 */
+	public long getLatency99() {
+		return latency99;
+	}
+
+	/**
+	 * @return the greatest latency, in microseconds
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	@Override
+	public String toString() {
+		return "ActionStats[invocations=" + invocations + ", errors=" + errors
+				+ ", partialResults=" + partialResults + ", meanLatency="
+				+ meanLatency + ", medianLatency=" + medianLatency
+				+ ", latency90=" + latency90 + ", latency99=" + latency99
+				+ ", maxLatency=" + maxLatency + "]";
+	}
+}
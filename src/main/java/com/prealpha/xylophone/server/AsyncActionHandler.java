@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * The non-blocking counterpart to {@link ActionHandler}. Rather than returning
+ * a result, an asynchronous handler starts execution of an action and delivers
+ * the result to a callback at some later time, usually from a thread of its
+ * own. The implementation of {@link Dispatcher} provided by
+ * {@link ActionModule} suspends the servlet request while an asynchronous
+ * handler is executing, so that no container thread is held for the duration
+ * of the action. Asynchronous handlers are bound using
+ * {@link ActionModule#bindAsyncAction(Class)}.
+ * 
+ * @param <A>
+ *            the action type handled
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * @see ActionHandler
+ * @see ActionModule
+ * @since 0.4-beta
+ * 
+ */
+public interface AsyncActionHandler<A extends Action<R>, R extends Result> {
+	/**
+	 * Begins execution of an {@link Action} appropriate to this handler. When
+	 * the next partial or complete {@link Result} is available, it must be
+	 * passed to {@link AsyncCallback#onSuccess(Object)}. If the action cannot be
+	 * dispatched or executed for any reason, an {@link ActionException} should
+	 * instead be passed to {@link AsyncCallback#onFailure(Throwable)}. Exactly
+	 * one of these methods must be called for each invocation of this method.
+	 * <p>
+	 * 
+	 * Partial results are treated exactly as they are for
+	 * {@link ActionHandler#execute(Action)}: the dispatcher will publish the
+	 * result and invoke this method again, and the handler must resume
+	 * execution where it left off.
+	 * <p>
+	 * 
+	 * This method should return promptly, without waiting for execution to
+	 * complete. The callback may be invoked from any thread, including the
+	 * calling thread before this method returns.
+	 * 
+	 * @param action
+	 *            an action to execute
+	 * @param callback
+	 *            a callback to receive the next partial or complete result of
+	 *            the action
+	 */
+	void execute(A action, AsyncCallback<R> callback);
+}
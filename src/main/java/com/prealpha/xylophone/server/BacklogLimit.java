@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The capacity of each subscription's backlog, and the policy applied when it
+ * is exceeded.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindSubscriptionCapacity(int, BacklogOverflowPolicy)
+ * 
+ */
+final class BacklogLimit {
+	/**
+	 * The number of results a subscription may hold between checks.
+	 */
+	private final int capacity;
+
+	/**
+	 * The policy applied when a result is published to a full backlog.
+	 */
+	private final BacklogOverflowPolicy policy;
+
+	/**
+	 * Constructs a new {@code BacklogLimit}.
+	 * 
+	 * @param capacity
+	 *            the number of results a subscription may hold between checks
+	 * @param policy
+	 *            the policy applied when a result is published to a full
+	 *            backlog
+	 * @throws NullPointerException
+	 *             if {@code policy} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} is not positive
+	 */
+	BacklogLimit(int capacity, BacklogOverflowPolicy policy) {
+		checkArgument(capacity > 0);
+		this.capacity = capacity;
+		this.policy = checkNotNull(policy);
+	}
+
+	/**
+	 * @return the number of results a subscription may hold between checks
+	 */
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the policy applied when a result is published to a full backlog
+	 */
+	BacklogOverflowPolicy getPolicy() {
+		return policy;
+	}
+}
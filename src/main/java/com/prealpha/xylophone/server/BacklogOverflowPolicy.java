@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.prealpha.xylophone.shared.OverflowResult;
+
+/**
+ * Determines what happens when a result is published to a subscription whose
+ * backlog is full. In every case, the overflow is reported to the client by
+ * an {@link OverflowResult} at the start of the next check. See
+ * {@link ActionModule#bindSubscriptionCapacity(int, BacklogOverflowPolicy)}.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public enum BacklogOverflowPolicy {
+	/**
+	 * The oldest result in the backlog is discarded to make room for the new
+	 * result.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The new result is discarded, and the backlog is left unchanged.
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The latest result in the backlog from an action equal to that of the
+	 * new result, whether partial or complete, is discarded to make room for
+	 * the new result. If there is no such result, the oldest result in the
+	 * backlog is discarded instead.
+	 */
+	CONFLATE,
+
+	/**
+	 * The backlog is discarded, and the subscription receives no further
+	 * results. The next check reports the termination, after which the
+	 * subscription ID is no longer valid.
+	 */
+	TERMINATE;
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.BulkheadFullException;
+import com.prealpha.xylophone.shared.PrioritizedAction;
+import com.prealpha.xylophone.shared.PrioritizedAction.Priority;
+
+/**
+ * A named, bounded pool of threads on which the handlers for certain action
+ * classes are executed. Each bulkhead executes at most a fixed number of
+ * actions at once, and allows at most a fixed number of further actions to
+ * wait for a thread; any actions beyond that are rejected. Because each action
+ * class is assigned to at most one bulkhead, a slow or overloaded action class
+ * cannot consume the threads available to actions in other bulkheads.
+ * <p>
+ * 
+ * Bulkheads are created using {@link ActionModule#bindBulkhead(String, int, int)}
+ * and assigned to action classes using
+ * {@link ActionModule#bindAction(Class, String)}. Threads are created only as
+ * actions are executed, and idle threads are eventually discarded.
+ * <p>
+ * 
+ * A special, unbounded bulkhead is created by
+ * {@link ActionModule#bindVirtualThreads()}, which runs each action on a
+ * virtual thread of its own; it serves as the bulkhead for all actions which
+ * are not assigned to another.
+ * <p>
+ * 
+ * A bulkhead created with priority scheduling, using
+ * {@link ActionModule#bindPriorityBulkhead(String, int, int)} or
+ * {@link ActionModule#bindPriorityScheduling(int, int)}, hands its threads to
+ * waiting actions in order of {@linkplain PrioritizedAction priority}, rather
+ * than strictly in the order in which they arrived.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule
+ * 
+ */
+final class Bulkhead implements Executor {
+	/**
+	 * The time, in seconds, after which idle threads are discarded.
+	 */
+	private static final long KEEP_ALIVE = 60;
+
+	/**
+	 * The bulkhead whose task the current thread is running, if any.
+	 */
+	private static final ThreadLocal<Bulkhead> CURRENT =
+			new ThreadLocal<Bulkhead>();
+
+	/**
+	 * The name of this bulkhead.
+	 */
+	private final String name;
+
+	/**
+	 * The executor on which actions assigned to this bulkhead are run.
+	 */
+	private final Executor executor;
+
+	/**
+	 * The permits for tasks which are executing or waiting to execute, or
+	 * {@code null} if the executor enforces the bounds of this bulkhead
+	 * itself. Only bulkheads with priority scheduling use permits, since a
+	 * {@link PriorityBlockingQueue} cannot be bounded.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Whether this bulkhead limits the number of actions it executes. Only a
+	 * thread-per-action bulkhead is unbounded.
+	 */
+	private final boolean bounded;
+
+	/**
+	 * The sequence number of the next task submitted, used to order tasks of
+	 * equal priority.
+	 */
+	private final AtomicLong sequence;
+
+	/**
+	 * Constructs a new {@code Bulkhead} with the specified name and bounds.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of actions which may execute at once
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait to execute
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 */
+	Bulkhead(String name, int maxConcurrency, int maxQueued) {
+		checkNotNull(name);
+		checkArgument(maxConcurrency > 0);
+		checkArgument(maxQueued >= 0);
+		this.name = name;
+		BlockingQueue<Runnable> queue;
+		if (maxQueued == 0) {
+			queue = new SynchronousQueue<Runnable>();
+		} else {
+			queue = new ArrayBlockingQueue<Runnable>(maxQueued);
+		}
+		executor = newThreadPool(name, maxConcurrency, queue);
+		permits = null;
+		sequence = null;
+		bounded = true;
+	}
+
+	/**
+	 * Constructs a new {@code Bulkhead} with the specified name, which runs
+	 * actions on the specified executor.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param executor
+	 *            the executor on which to run actions
+	 * @param permits
+	 *            the permits for tasks which are executing or waiting to
+	 *            execute, or {@code null} if the executor enforces its own
+	 *            bounds
+	 */
+	private Bulkhead(String name, Executor executor, Semaphore permits) {
+		this.name = name;
+		this.executor = executor;
+		this.permits = permits;
+		sequence = (permits == null ? null : new AtomicLong());
+		bounded = (permits != null);
+	}
+
+	/**
+	 * Creates a bounded bulkhead with priority scheduling. The bounds are the
+	 * same as those of an ordinary bulkhead, but waiting actions are started
+	 * in order of priority, and then in the order in which they arrived.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of actions which may execute at once
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait to execute
+	 * @return a new bulkhead with priority scheduling
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 */
+	static Bulkhead prioritized(String name, int maxConcurrency, int maxQueued) {
+		checkNotNull(name);
+		checkArgument(maxConcurrency > 0);
+		checkArgument(maxQueued >= 0);
+		Executor executor = newThreadPool(name, maxConcurrency,
+				new PriorityBlockingQueue<Runnable>());
+		return new Bulkhead(name, executor, new Semaphore(maxConcurrency
+				+ maxQueued));
+	}
+
+	/**
+	 * Creates an unbounded bulkhead which runs each action on a new virtual
+	 * thread, so that actions which block on I/O do not consume a platform
+	 * thread while waiting. The bulkhead never rejects an action.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @return a new thread-per-action bulkhead
+	 * @throws UnsupportedOperationException
+	 *             if the Java runtime does not support virtual threads
+	 */
+	static Bulkhead threadPerAction(String name) {
+		checkNotNull(name);
+		Bulkhead bulkhead = newVirtualBulkhead(name);
+		if (bulkhead == null) {
+			throw new UnsupportedOperationException(
+					"virtual threads are not supported by this Java runtime");
+		}
+		return bulkhead;
+	}
+
+	/**
+	 * Creates a bulkhead which runs each action on a new virtual thread if the
+	 * Java runtime supports them, exactly as for
+	 * {@link #threadPerAction(String)}. Otherwise, the bulkhead is an ordinary
+	 * bounded bulkhead of platform threads with the specified bounds, since an
+	 * unbounded pool of platform threads would create a thread for every
+	 * concurrent request.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of platform threads, if virtual threads
+	 *            are not supported
+	 * @param maxQueued
+	 *            the maximum number of actions which may wait for a platform
+	 *            thread, if virtual threads are not supported
+	 * @return a new thread-per-action bulkhead, or a bounded bulkhead
+	 * @throws NullPointerException
+	 *             if {@code name} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code maxConcurrency} is not positive or
+	 *             {@code maxQueued} is negative
+	 */
+	static Bulkhead threadPerAction(String name, int maxConcurrency,
+			int maxQueued) {
+		checkNotNull(name);
+		checkArgument(maxConcurrency > 0);
+		checkArgument(maxQueued >= 0);
+		Bulkhead bulkhead = newVirtualBulkhead(name);
+		if (bulkhead == null) {
+			bulkhead = new Bulkhead(name, maxConcurrency, maxQueued);
+		}
+		return bulkhead;
+	}
+
+	/**
+	 * Creates an unbounded bulkhead which runs each action on a new virtual
+	 * thread, if the Java runtime supports them.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @return a new thread-per-action bulkhead, or {@code null} if virtual
+	 *         threads are not supported
+	 */
+	private static Bulkhead newVirtualBulkhead(String name) {
+		final ThreadFactory virtualFactory = newVirtualThreadFactory(name);
+		if (virtualFactory == null) {
+			return null;
+		}
+		return new Bulkhead(name, new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				virtualFactory.newThread(task).start();
+			}
+		}, null);
+	}
+
+	/**
+	 * Creates a pool of threads for a bounded bulkhead, with a fixed maximum
+	 * size. Idle threads are discarded after {@link #KEEP_ALIVE} seconds.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @param maxConcurrency
+	 *            the maximum number of threads in the pool
+	 * @param queue
+	 *            the queue in which tasks wait for a thread
+	 * @return a new thread pool
+	 */
+	private static Executor newThreadPool(String name, int maxConcurrency,
+			BlockingQueue<Runnable> queue) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency,
+				maxConcurrency, KEEP_ALIVE, TimeUnit.SECONDS, queue,
+				newThreadFactory(name));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Creates a factory for the daemon platform threads used by a bulkhead.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @return a factory for the bulkhead's threads
+	 */
+	private static ThreadFactory newThreadFactory(String name) {
+		return new ThreadFactoryBuilder()
+				.setNameFormat("xylophone-" + name + "-%d").setDaemon(true)
+				.build();
+	}
+
+	/**
+	 * Creates a factory for virtual threads, if the Java runtime supports
+	 * them. The factory is obtained reflectively, since this library must
+	 * still run on older runtimes.
+	 * 
+	 * @param name
+	 *            the name of the bulkhead
+	 * @return a factory for virtual threads, or {@code null} if they are not
+	 *         supported
+	 */
+	private static ThreadFactory newVirtualThreadFactory(String name) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method nameMethod = builderClass.getMethod("name", String.class,
+					long.class);
+			builder = nameMethod.invoke(builder, "xylophone-" + name + "-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(
+					builder);
+		} catch (Exception ex) {
+			// not supported, or a preview feature which is not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * @return the name of this bulkhead
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return {@code true} if this bulkhead limits the number of actions it
+	 *         executes at once
+	 */
+	boolean isBounded() {
+		return bounded;
+	}
+
+	/**
+	 * Returns whether the calling thread is running a task submitted to this
+	 * bulkhead. A task which waits for another task submitted to the same
+	 * bounded bulkhead may wait forever, since the bulkhead may have no
+	 * thread left to run the other.
+	 * 
+	 * @return {@code true} if the calling thread belongs to this bulkhead
+	 */
+	boolean isCurrent() {
+		return (CURRENT.get() == this);
+	}
+
+	/**
+	 * Submits a task to run on one of this bulkhead's threads, on behalf of the
+	 * specified action. If this bulkhead has priority scheduling, the task is
+	 * scheduled with the priority of the action. If the bulkhead is full, the
+	 * task is not run.
+	 * 
+	 * @param action
+	 *            the action on whose behalf the task is run
+	 * @param task
+	 *            the task to run
+	 * @throws BulkheadFullException
+	 *             if the bulkhead has no thread or queue space available
+	 */
+	void execute(Action<?> action, Runnable task) throws BulkheadFullException {
+		Priority priority;
+		if (action instanceof PrioritizedAction) {
+			priority = checkNotNull(((PrioritizedAction<?>) action)
+					.getPriority());
+		} else {
+			priority = Priority.NORMAL;
+		}
+		try {
+			execute(priority, task);
+		} catch (RejectedExecutionException rex) {
+			throw new BulkheadFullException(action, name);
+		}
+	}
+
+	/**
+	 * Submits a task to run on one of this bulkhead's threads. If this
+	 * bulkhead has priority scheduling, the task is scheduled with
+	 * {@link Priority#NORMAL} priority. If the bulkhead is full, the task is
+	 * not run.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @throws RejectedExecutionException
+	 *             if the bulkhead has no thread or queue space available
+	 */
+	@Override
+	public void execute(Runnable task) {
+		execute(Priority.NORMAL, task);
+	}
+
+	/**
+	 * Submits a task to run on one of this bulkhead's threads, with the
+	 * specified priority. The priority is ignored unless this bulkhead has
+	 * priority scheduling.
+	 * 
+	 * @param priority
+	 *            the priority of the task
+	 * @param task
+	 *            the task to run
+	 * @throws RejectedExecutionException
+	 *             if the bulkhead has no thread or queue space available
+	 */
+	private void execute(Priority priority, final Runnable task) {
+		checkNotNull(task);
+		Runnable marked = new Runnable() {
+			@Override
+			public void run() {
+				Bulkhead previous = CURRENT.get();
+				CURRENT.set(Bulkhead.this);
+				try {
+					task.run();
+				} finally {
+					if (previous != null) {
+						CURRENT.set(previous);
+					} else {
+						CURRENT.remove();
+					}
+				}
+			}
+		};
+		if (permits == null) {
+			executor.execute(marked);
+		} else if (permits.tryAcquire()) {
+			try {
+				executor.execute(new PrioritizedTask(priority, sequence
+						.getAndIncrement(), marked));
+			} catch (RejectedExecutionException rex) {
+				permits.release();
+				throw rex;
+			}
+		} else {
+			throw new RejectedExecutionException();
+		}
+	}
+
+	/**
+	 * A task submitted to a bulkhead with priority scheduling. Tasks are
+	 * ordered first by priority and then by sequence number, and each task
+	 * releases its permit when it finishes.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class PrioritizedTask implements Runnable,
+			Comparable<PrioritizedTask> {
+		/**
+		 * The priority of this task.
+		 */
+		private final Priority priority;
+
+		/**
+		 * The sequence number of this task.
+		 */
+		private final long sequenceNumber;
+
+		/**
+		 * The task to run.
+		 */
+		private final Runnable task;
+
+		/**
+		 * Constructs a new {@code PrioritizedTask}.
+		 * 
+		 * @param priority
+		 *            the priority of the task
+		 * @param sequenceNumber
+		 *            the sequence number of the task
+		 * @param task
+		 *            the task to run
+		 */
+		private PrioritizedTask(Priority priority, long sequenceNumber,
+				Runnable task) {
+			this.priority = priority;
+			this.sequenceNumber = sequenceNumber;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask other) {
+			int result = priority.compareTo(other.priority);
+			if (result == 0) {
+				result = (sequenceNumber < other.sequenceNumber ? -1
+						: (sequenceNumber == other.sequenceNumber ? 0 : 1));
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.inject.Provider;
+import com.prealpha.xylophone.shared.TimedAction;
+
+/**
+ * Signals to an action handler that the execution of its action should be
+ * abandoned. A token is cancelled once the deadline of the
+ * {@link TimedAction} being executed passes, or once the dispatcher gives up
+ * on the execution for some other reason, such as the expiry of a suspended
+ * request. Handlers which run for a long time should poll
+ * {@link #isCancelled()} and stop promptly, usually by throwing a
+ * {@code DeadlineExceededException}; the dispatcher also stops re-invoking
+ * handlers for partial results once their token is cancelled.
+ * <p>
+ * 
+ * The token for the current action execution can be injected into handlers
+ * bound in {@link ActionModule}. Handlers bound in the singleton scope must
+ * inject a {@link Provider} for the token and obtain it during each
+ * execution. Actions executed from within another action share or narrow the
+ * outer action's token, so cancelling an action also cancels its nested
+ * actions.
+ * 
+ * @author Meyer Kizner
+ * @see TimedAction
+ * @since 0.4-beta
+ * 
+ */
+public final class CancellationToken {
+	/**
+	 * The token of the enclosing action execution, or {@code null} if there is
+	 * none.
+	 */
+	private final CancellationToken parent;
+
+	/**
+	 * The deadline for the execution, as given by {@link System#nanoTime()},
+	 * or {@code null} if there is no deadline.
+	 */
+	private final Long deadline;
+
+	/**
+	 * Set to {@code true} once the token is explicitly cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructs a new {@code CancellationToken}.
+	 * 
+	 * @param parent
+	 *            the token of the enclosing action execution, or {@code null}
+	 * @param deadline
+	 *            the deadline for the execution, or {@code null}
+	 */
+	private CancellationToken(CancellationToken parent, Long deadline) {
+		this.parent = parent;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Creates a token for a top-level action execution without a deadline.
+	 * 
+	 * @return a new token
+	 */
+	static CancellationToken create() {
+		return new CancellationToken(null, null);
+	}
+
+	/**
+	 * Creates a token for an action executed with the specified timeout. The
+	 * deadline of the new token is the earlier of the parent's deadline, if
+	 * any, and the timeout from the current time.
+	 * 
+	 * @param parent
+	 *            the token of the enclosing action execution, or {@code null}
+	 *            if the action is not nested
+	 * @param timeout
+	 *            the timeout for the action, in milliseconds
+	 * @return a new token
+	 */
+	static CancellationToken create(CancellationToken parent, long timeout) {
+		checkArgument(timeout > 0);
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeout);
+		if (parent != null && parent.deadline != null
+				&& parent.deadline - deadline < 0) {
+			deadline = parent.deadline;
+		}
+		return new CancellationToken(parent, deadline);
+	}
+
+	/**
+	 * Indicates whether the action execution should be abandoned, either
+	 * because its deadline has passed or because it or an enclosing execution
+	 * was cancelled.
+	 * 
+	 * @return {@code true} if the execution should be abandoned
+	 */
+	public boolean isCancelled() {
+		if (cancelled) {
+			return true;
+		} else if (deadline != null && System.nanoTime() - deadline >= 0) {
+			cancelled = true;
+			return true;
+		} else {
+			return (parent != null && parent.isCancelled());
+		}
+	}
+
+	/**
+	 * Indicates whether the action execution has a deadline.
+	 * 
+	 * @return {@code true} if there is a deadline, {@code false} otherwise
+	 */
+	public boolean hasDeadline() {
+		return (deadline != null);
+	}
+
+	/**
+	 * Returns the time remaining before the deadline, which may be zero or
+	 * negative if the deadline has passed. If there is no deadline, the result
+	 * is {@link Long#MAX_VALUE}.
+	 * 
+	 * @param unit
+	 *            the unit of the result
+	 * @return the time remaining, in the specified unit
+	 */
+	public long getRemaining(TimeUnit unit) {
+		checkNotNull(unit);
+		if (deadline == null) {
+			return Long.MAX_VALUE;
+		} else {
+			return unit.convert(deadline - System.nanoTime(),
+					TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Cancels the execution, regardless of its deadline.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+}
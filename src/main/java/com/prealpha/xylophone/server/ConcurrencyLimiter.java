@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Limits the number of actions executed at once to a level which adapts to
+ * their observed latency, using additive increase and multiplicative decrease
+ * (AIMD). The limiter tracks the lowest latency recently observed for each
+ * action class, which approximates the latency of that class on an unloaded
+ * server. While actions complete within a fixed multiple of the minimum for
+ * their class and the limit is actually being used, the limit grows by one
+ * for each action; when an action takes longer, or is rejected or times out
+ * downstream, the limit shrinks by a fixed fraction. The limit therefore
+ * settles near the highest concurrency the server can sustain before latency
+ * begins to climb. Because each action is compared only with others of its
+ * class, a mix of fast and slow action classes does not by itself lower the
+ * limit.
+ * <p>
+ * 
+ * Acquiring a permit is lock-free. Updating the limit after each action
+ * requires a lock, but the work done while holding it is trivial.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindConcurrencyLimit(int, int)
+ * 
+ */
+final class ConcurrencyLimiter {
+	/**
+	 * The factor by which the limit is multiplied when latency is too high.
+	 */
+	private static final double BACKOFF = 0.9;
+
+	/**
+	 * The multiple of the minimum latency above which latency is considered
+	 * too high.
+	 */
+	private static final double TOLERANCE = 2.0;
+
+	/**
+	 * The number of actions of a class after which its minimum latency is
+	 * forgotten, so that the limiter adapts when the unloaded latency of the
+	 * server rises.
+	 */
+	private static final int MIN_LATENCY_WINDOW = 1000;
+
+	/**
+	 * The maximum value of the limit.
+	 */
+	private final int maxLimit;
+
+	/**
+	 * The number of actions currently executing.
+	 */
+	private final AtomicInteger inFlight;
+
+	/**
+	 * The current limit, rounded down from {@link #estimate}.
+	 */
+	private volatile int limit;
+
+	/**
+	 * The current limit, before rounding.
+	 */
+	private double estimate;
+
+	/**
+	 * The minimum latency of each action class which has been observed. Only
+	 * accessed while holding the lock on this limiter.
+	 */
+	private final Map<Class<?>, MinLatency> minLatencies;
+
+	/**
+	 * Constructs a new {@code ConcurrencyLimiter}.
+	 * 
+	 * @param initialLimit
+	 *            the initial limit
+	 * @param maxLimit
+	 *            the maximum limit
+	 * @throws IllegalArgumentException
+	 *             if {@code initialLimit} is not positive, or if
+	 *             {@code maxLimit} is less than {@code initialLimit}
+	 */
+	ConcurrencyLimiter(int initialLimit, int maxLimit) {
+		checkArgument(initialLimit > 0);
+		checkArgument(maxLimit >= initialLimit);
+		this.maxLimit = maxLimit;
+		inFlight = new AtomicInteger();
+		limit = initialLimit;
+		estimate = initialLimit;
+		minLatencies = Maps.newHashMap();
+	}
+
+	/**
+	 * Takes a permit to execute an action, if the limit has not been
+	 * reached. Each permit taken must be returned using
+	 * {@link #release(Class, long, boolean)}.
+	 * 
+	 * @return {@code true} if a permit was taken, {@code false} if the limit
+	 *         has been reached
+	 */
+	boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			} else if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns a permit, adjusting the limit according to the outcome of the
+	 * action for which it was taken.
+	 * 
+	 * @param actionClass
+	 *            the class of the action, whose latency is compared with the
+	 *            minimum for that class
+	 * @param latency
+	 *            the latency of the action, in nanoseconds
+	 * @param overloaded
+	 *            whether the action failed because of overload, rather than
+	 *            completing normally
+	 */
+	void release(Class<?> actionClass, long latency, boolean overloaded) {
+		int current = inFlight.getAndDecrement();
+		synchronized (this) {
+			MinLatency minLatency = minLatencies.get(actionClass);
+			if (minLatency == null) {
+				minLatency = new MinLatency();
+				minLatencies.put(actionClass, minLatency);
+			}
+			if (++minLatency.samples > MIN_LATENCY_WINDOW) {
+				minLatency.samples = 1;
+				minLatency.value = Long.MAX_VALUE;
+			}
+			if (!overloaded) {
+				minLatency.value = Math.min(minLatency.value, latency);
+			}
+			if (overloaded || latency > minLatency.value * TOLERANCE) {
+				estimate = Math.max(1.0, estimate * BACKOFF);
+			} else if (current * 2 >= limit) {
+				estimate = Math.min(maxLimit, estimate + 1.0);
+			}
+			limit = (int) estimate;
+		}
+	}
+
+	/**
+	 * @return the current limit
+	 */
+	int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the number of actions currently executing
+	 */
+	int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * The lowest latency recently observed for an action class. Only accessed
+	 * while holding the lock on the limiter.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private static final class MinLatency {
+		/**
+		 * The lowest latency observed in the current window, in nanoseconds.
+		 */
+		private long value = Long.MAX_VALUE;
+
+		/**
+		 * The number of actions observed in the current window.
+		 */
+		private int samples;
+	}
+}
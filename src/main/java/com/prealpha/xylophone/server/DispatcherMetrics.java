@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+/**
+ * Provides metrics for the {@link Dispatcher} bound by {@link ActionModule}.
+ * For each action class, the dispatcher counts the executions which finish
+ * and fail, and the partial results published, and keeps a histogram of
+ * execution latencies. It also reports its active subscriptions, the total
+ * and largest number of results waiting in them, its adaptive concurrency
+ * limit if one is configured, and the results it could not send to other
+ * nodes if a publication bus is bound. Metrics are always recorded; recording
+ * is lock-free and inexpensive enough to leave on in production.
+ * <p>
+ * 
+ * Metrics may be obtained programmatically by injecting this class, which is
+ * bound in the singleton scope, or over JMX using
+ * {@link ActionModule#exportMetrics(String)}. All values returned are
+ * snapshots, and are not updated afterwards.
+ * 
+ * @author Meyer Kizner
+ * @see ActionStats
+ * @since 0.4-beta
+ * 
+ */
+public final class DispatcherMetrics implements DispatcherMetricsMXBean {
+	/**
+	 * The provider for the dispatcher whose subscriptions are reported. A
+	 * provider is necessary because the dispatcher also depends on this
+	 * class.
+	 */
+	private final Provider<PublishingDispatcherImpl> dispatcherProvider;
+
+	/**
+	 * The registry holding the dispatcher's concurrency limiter and
+	 * publication batcher, if any.
+	 */
+	private final HandlerRegistry registry;
+
+	/**
+	 * A map of action classes to their recorders. A recorder is created the
+	 * first time an action of its class is executed.
+	 */
+	private final ConcurrentMap<Class<?>, ActionRecorder> recorders;
+
+	/**
+	 * Constructs a new {@code DispatcherMetrics}, with no metrics recorded.
+	 * 
+	 * @param dispatcherProvider
+	 *            the provider for the dispatcher whose subscriptions are
+	 *            reported
+	 * @param registry
+	 *            the registry holding the dispatcher's concurrency limiter and
+	 *            publication batcher
+	 */
+	@Inject
+	private DispatcherMetrics(
+			Provider<PublishingDispatcherImpl> dispatcherProvider,
+			HandlerRegistry registry) {
+		this.dispatcherProvider = dispatcherProvider;
+		this.registry = registry;
+		recorders = new MapMaker().makeMap();
+	}
+
+	/**
+	 * Returns the recorder for the specified action's class, creating it if
+	 * necessary.
+	 * 
+	 * @param action
+	 *            an action being executed
+	 * @return the recorder for the action's class
+	 */
+	ActionRecorder getRecorder(Action<?> action) {
+		Class<?> actionClass = action.getClass();
+		ActionRecorder recorder = recorders.get(actionClass);
+		if (recorder == null) {
+			recorder = new ActionRecorder();
+			ActionRecorder existing = recorders.putIfAbsent(actionClass,
+					recorder);
+			if (existing != null) {
+				recorder = existing;
+			}
+		}
+		return recorder;
+	}
+
+	/**
+	 * Returns the metrics for the specified action class.
+	 * 
+	 * @param actionClass
+	 *            the action class
+	 * @return the metrics for the action class, or {@code null} if no action
+	 *         of that class has been executed
+	 */
+	public ActionStats getActionStats(Class<? extends Action<?>> actionClass) {
+		ActionRecorder recorder = recorders.get(actionClass);
+		return (recorder == null ? null : recorder.snapshot());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 
+	 * Class names are used as keys so that the map can be represented in JMX.
+	 */
+	@Override
+	public ImmutableMap<String, ActionStats> getActionStats() {
+		ImmutableMap.Builder<String, ActionStats> builder = ImmutableMap
+				.builder();
+		for (Map.Entry<Class<?>, ActionRecorder> entry : recorders.entrySet()) {
+			builder.put(entry.getKey().getName(), entry.getValue().snapshot());
+		}
+		return builder.build();
+	}
+
+	@Override
+	public int getSubscriptionCount() {
+		return dispatcherProvider.get().getSubscriptionCount();
+	}
+
+	@Override
+	public long getTotalBacklogSize() {
+		return dispatcherProvider.get().getTotalBacklogSize();
+	}
+
+	@Override
+	public int getMaxBacklogSize() {
+		return dispatcherProvider.get().getMaxBacklogSize();
+	}
+
+	/**
+	 * Returns the current limit on the number of actions executed at once, as
+	 * configured by {@link ActionModule#bindConcurrencyLimit(int, int)}.
+	 * 
+	 * @return the current concurrency limit, or {@code -1} if concurrency is
+	 *         not limited
+	 */
+	@Override
+	public int getConcurrencyLimit() {
+		ConcurrencyLimiter limiter = registry.getConcurrencyLimiter();
+		return (limiter == null ? -1 : limiter.getLimit());
+	}
+
+	/**
+	 * Returns the number of actions currently counting towards the
+	 * concurrency limit.
+	 * 
+	 * @return the number of actions executing, or {@code -1} if concurrency
+	 *         is not limited
+	 */
+	@Override
+	public int getConcurrency() {
+		ConcurrencyLimiter limiter = registry.getConcurrencyLimiter();
+		return (limiter == null ? -1 : limiter.getInFlight());
+	}
+
+	/**
+	 * Returns the number of results published on this node which were
+	 * dropped instead of being sent to other nodes, because the queue of
+	 * results waiting to be sent was full. Results which the bus itself fails
+	 * to deliver are not counted.
+	 * 
+	 * @return the number of results dropped, or {@code -1} if no publication
+	 *         bus is bound
+	 * @see ActionModule#bindPublicationBus(int, long)
+	 */
+	@Override
+	public long getDroppedPublicationCount() {
+		PublicationBatcher batcher = registry.getPublicationBatcher();
+		return (batcher == null ? -1 : batcher.getDroppedCount());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.Map;
+
+/**
+ * The management interface through which {@link DispatcherMetrics} are
+ * exposed over JMX. See {@link ActionModule#exportMetrics(String)}.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public interface DispatcherMetricsMXBean {
+	/**
+	 * @return the metrics for each action class which has been executed,
+	 *         keyed by class name
+	 * @see DispatcherMetrics#getActionStats()
+	 */
+	Map<String, ActionStats> getActionStats();
+
+	/**
+	 * @return the number of active subscriptions
+	 * @see DispatcherMetrics#getSubscriptionCount()
+	 */
+	int getSubscriptionCount();
+
+	/**
+	 * @return the total number of results waiting to be checked in all active
+	 *         subscriptions
+	 * @see DispatcherMetrics#getTotalBacklogSize()
+	 */
+	long getTotalBacklogSize();
+
+	/**
+	 * @return the largest number of results waiting to be checked in any
+	 *         active subscription
+	 * @see DispatcherMetrics#getMaxBacklogSize()
+	 */
+	int getMaxBacklogSize();
+
+	/**
+	 * @return the current adaptive concurrency limit, or {@code -1} if
+	 *         concurrency is not limited
+	 * @see DispatcherMetrics#getConcurrencyLimit()
+	 */
+	int getConcurrencyLimit();
+
+	/**
+	 * @return the number of actions counting towards the concurrency limit,
+	 *         or {@code -1} if concurrency is not limited
+	 * @see DispatcherMetrics#getConcurrency()
+	 */
+	int getConcurrency();
+
+	/**
+	 * @return the number of results which were not sent to other nodes
+	 *         because too many were waiting, or {@code -1} if no publication
+	 *         bus is bound
+	 * @see DispatcherMetrics#getDroppedPublicationCount()
+	 */
+	long getDroppedPublicationCount();
+}
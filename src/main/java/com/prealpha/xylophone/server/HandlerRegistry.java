@@ -0,0 +1,613 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.spi.Message;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * Maps action classes to the providers for their {@link ActionHandler}s,
+ * {@link StreamingActionHandler}s, or {@link AsyncActionHandler}s. The mapping
+ * is computed once, when the registry is constructed, by examining the
+ * bindings created by the {@code bind} methods of {@link ActionModule}.
+ * Afterwards, locating the handler for an action requires only a single hash
+ * lookup on the action's class, regardless of how many actions are bound.
+ * <p>
+ * 
+ * Handler providers are obtained from the injector, so handlers are still
+ * instantiated lazily and in whatever scope they were bound. Like
+ * {@link PublishingDispatcherImpl}, this class is essentially an
+ * implementation detail of {@code ActionModule}.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class HandlerRegistry {
+	/**
+	 * An immutable map of action classes to the providers for their
+	 * synchronous handlers. Ordinary {@link ActionHandler}s are adapted to the
+	 * {@link StreamingActionHandler} interface by the providers in this map.
+	 * Only exact action classes are present as keys; superclasses and
+	 * interfaces of bound actions are not.
+	 */
+	@SuppressWarnings("rawtypes")
+	private final ImmutableMap<Class<?>, Provider<StreamingActionHandler>> handlers;
+
+	/**
+	 * An immutable map of action classes to the providers for their
+	 * asynchronous handlers. An action class is present as a key in at most
+	 * one of this map and {@link #handlers}.
+	 */
+	@SuppressWarnings("rawtypes")
+	private final ImmutableMap<Class<?>, Provider<AsyncActionHandler>> asyncHandlers;
+
+	/**
+	 * An immutable map of action classes to the bulkheads to which they are
+	 * assigned. Action classes which are not assigned to a bulkhead are not
+	 * present as keys.
+	 */
+	private final ImmutableMap<Class<?>, Bulkhead> bulkheads;
+
+	/**
+	 * The bulkhead for actions which are not assigned to another, or
+	 * {@code null} if such actions run on the calling thread.
+	 */
+	private final Bulkhead defaultBulkhead;
+
+	/**
+	 * The cache for the results of cacheable actions, or {@code null} if
+	 * results are not cached.
+	 */
+	private final ResultCache resultCache;
+
+	/**
+	 * The adaptive limiter for the number of actions executed at once, or
+	 * {@code null} if concurrency is not limited.
+	 */
+	private final ConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * The pipeline on which results are delivered to subscribers, or
+	 * {@code null} if results are delivered on the publishing thread.
+	 */
+	private final PublishPipeline publishPipeline;
+
+	/**
+	 * The limit on each subscription's backlog, or {@code null} if backlogs
+	 * are unbounded.
+	 */
+	private final BacklogLimit backlogLimit;
+
+	/**
+	 * The lease under which subscriptions are held, or {@code null} if
+	 * subscriptions last until they are cancelled.
+	 */
+	private final SubscriptionLease subscriptionLease;
+
+	/**
+	 * The batcher through which results are sent to other nodes, or
+	 * {@code null} if no publication bus is bound.
+	 */
+	private final PublicationBatcher publicationBatcher;
+
+	/**
+	 * An immutable map of bulkheads to the load shedders for their queues.
+	 * Bulkheads are not present as keys if load shedding is not configured.
+	 */
+	private final ImmutableMap<Bulkhead, LoadShedder> loadShedders;
+
+	/**
+	 * The limiter for the rates at which actions are executed, or {@code null}
+	 * if no rate limits are configured.
+	 */
+	private final RateLimiter rateLimiter;
+
+	/**
+	 * An immutable map of action classes to the keys to which their handlers
+	 * are bound, before any adaptation or interception. The raw type of each
+	 * key is the handler interface implemented by the handler.
+	 */
+	private final ImmutableMap<Class<?>, Key<?>> handlerKeys;
+
+	/**
+	 * The keys to which interceptors are bound, in the order in which they
+	 * were bound.
+	 */
+	private final ImmutableList<Key<ActionInterceptor>> interceptorKeys;
+
+	/**
+	 * The injector from which handlers are obtained.
+	 */
+	private final Injector injector;
+
+	/**
+	 * Constructs a new {@code HandlerRegistry}, scanning the specified
+	 * {@link Injector} for the bindings created by {@link ActionModule}.
+	 * 
+	 * @param injector
+	 *            the injector to scan for action handlers
+	 */
+	/*
+	 * See the implementation comment for ActionModule.bindAction(Class). Each
+	 * unique binding of Action is linked to an action class, and the handler
+	 * for that class is bound to one of ActionHandler, StreamingActionHandler,
+	 * or AsyncActionHandler with the same annotation. Interceptors are found
+	 * through their InterceptorBinding instances, and rate limits through
+	 * their RateLimit instances. Guice does not specify the order in which it
+	 * reports bindings, so both are sorted by the sequence numbers assigned by
+	 * ActionModule.
+	 */
+	@Inject
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private HandlerRegistry(Injector injector) {
+		Map<Class<?>, Provider<StreamingActionHandler>> handlers = Maps
+				.newHashMap();
+		Map<Class<?>, Provider<AsyncActionHandler>> asyncHandlers = Maps
+				.newHashMap();
+		Map<Class<?>, Bulkhead> bulkheads = Maps.newHashMap();
+		Map<Class<?>, Key<?>> handlerKeys = Maps.newHashMap();
+		List<InterceptorBinding> interceptors = Lists.newArrayList();
+		for (Binding<InterceptorBinding> binding : injector
+				.findBindingsByType(TypeLiteral.get(InterceptorBinding.class))) {
+			interceptors.add(binding.getProvider().get());
+		}
+		interceptors = InterceptorBinding.BINDING_ORDER.sortedCopy(interceptors);
+		List<Key<ActionInterceptor>> interceptorKeys = Lists.newArrayList();
+		for (InterceptorBinding interceptor : interceptors) {
+			interceptorKeys.add(interceptor.getKey());
+		}
+		List<Binding<Action>> bindings = injector.findBindingsByType(TypeLiteral
+				.get(Action.class));
+		for (Binding<Action> binding : bindings) {
+			if (binding instanceof LinkedKeyBinding) {
+				LinkedKeyBinding<Action> linkedBinding = (LinkedKeyBinding<Action>) binding;
+				Annotation annotation = linkedBinding.getKey().getAnnotation();
+				if (annotation != null) {
+					Class<?> actionClass = linkedBinding.getLinkedKey()
+							.getTypeLiteral().getRawType();
+					Key<ActionHandler> key = Key.get(ActionHandler.class,
+							annotation);
+					Key<StreamingActionHandler> streamingKey = Key.get(
+							StreamingActionHandler.class, annotation);
+					Key<AsyncActionHandler> asyncKey = Key.get(
+							AsyncActionHandler.class, annotation);
+					Provider<StreamingActionHandler> provider = null;
+					if (injector.getExistingBinding(key) != null) {
+						provider = new RepeatingProvider(injector.getProvider(key));
+						handlerKeys.put(actionClass, key);
+					} else if (injector.getExistingBinding(streamingKey) != null) {
+						provider = injector.getProvider(streamingKey);
+						handlerKeys.put(actionClass, streamingKey);
+					}
+					if (provider != null) {
+						List<Provider<ActionInterceptor>> applicable = Lists
+								.newArrayList();
+						for (InterceptorBinding interceptor : interceptors) {
+							if (interceptor.appliesTo(actionClass)) {
+								applicable.add(injector.getProvider(interceptor
+										.getKey()));
+							}
+						}
+						if (!applicable.isEmpty()) {
+							provider = new InterceptingProvider(provider,
+									applicable);
+						}
+						handlers.put(actionClass, provider);
+					} else if (injector.getExistingBinding(asyncKey) != null) {
+						asyncHandlers.put(actionClass,
+								injector.getProvider(asyncKey));
+						handlerKeys.put(actionClass, asyncKey);
+					}
+
+					Key<Bulkhead> bulkheadKey = Key.get(Bulkhead.class,
+							annotation);
+					if (injector.getExistingBinding(bulkheadKey) != null) {
+						bulkheads.put(actionClass,
+								injector.getInstance(bulkheadKey));
+					}
+				}
+			}
+		}
+		this.handlers = ImmutableMap.copyOf(handlers);
+		this.asyncHandlers = ImmutableMap.copyOf(asyncHandlers);
+		this.bulkheads = ImmutableMap.copyOf(bulkheads);
+		this.handlerKeys = ImmutableMap.copyOf(handlerKeys);
+		this.interceptorKeys = ImmutableList.copyOf(interceptorKeys);
+		this.injector = injector;
+
+		Key<Bulkhead> defaultKey = Key.get(Bulkhead.class,
+				ActionModule.ActionExecutor.class);
+		if (injector.getExistingBinding(defaultKey) != null) {
+			defaultBulkhead = injector.getInstance(defaultKey);
+		} else {
+			defaultBulkhead = null;
+		}
+
+		Key<ResultCache> cacheKey = Key.get(ResultCache.class);
+		if (injector.getExistingBinding(cacheKey) != null) {
+			resultCache = injector.getInstance(cacheKey);
+		} else {
+			resultCache = null;
+		}
+
+		Key<ConcurrencyLimiter> limiterKey = Key.get(ConcurrencyLimiter.class);
+		if (injector.getExistingBinding(limiterKey) != null) {
+			concurrencyLimiter = injector.getInstance(limiterKey);
+		} else {
+			concurrencyLimiter = null;
+		}
+
+		Key<PublishPipeline> pipelineKey = Key.get(PublishPipeline.class);
+		if (injector.getExistingBinding(pipelineKey) != null) {
+			publishPipeline = injector.getInstance(pipelineKey);
+		} else {
+			publishPipeline = null;
+		}
+
+		Key<BacklogLimit> backlogKey = Key.get(BacklogLimit.class);
+		if (injector.getExistingBinding(backlogKey) != null) {
+			backlogLimit = injector.getInstance(backlogKey);
+		} else {
+			backlogLimit = null;
+		}
+
+		Key<SubscriptionLease> leaseKey = Key.get(SubscriptionLease.class);
+		if (injector.getExistingBinding(leaseKey) != null) {
+			subscriptionLease = injector.getInstance(leaseKey);
+		} else {
+			subscriptionLease = null;
+		}
+
+		Key<PublicationBatcher> batcherKey = Key.get(PublicationBatcher.class);
+		if (injector.getExistingBinding(batcherKey) != null) {
+			publicationBatcher = injector.getInstance(batcherKey);
+		} else {
+			publicationBatcher = null;
+		}
+
+		Map<Bulkhead, LoadShedder> loadShedders = Maps.newHashMap();
+		Key<LoadShedder> shedderKey = Key.get(LoadShedder.class);
+		if (injector.getExistingBinding(shedderKey) != null) {
+			LoadShedder template = injector.getInstance(shedderKey);
+			for (Bulkhead bulkhead : bulkheads.values()) {
+				if (!loadShedders.containsKey(bulkhead)) {
+					loadShedders.put(bulkhead, template.copy());
+				}
+			}
+			if (defaultBulkhead != null) {
+				loadShedders.put(defaultBulkhead, template.copy());
+			}
+		}
+		this.loadShedders = ImmutableMap.copyOf(loadShedders);
+
+		List<RateLimit> rateLimits = Lists.newArrayList();
+		for (Binding<RateLimit> binding : injector.findBindingsByType(TypeLiteral
+				.get(RateLimit.class))) {
+			rateLimits.add(binding.getProvider().get());
+		}
+		rateLimiter = (rateLimits.isEmpty() ? null : new RateLimiter(
+				RateLimit.BINDING_ORDER.sortedCopy(rateLimits)));
+	}
+
+	/**
+	 * Locates the synchronous handler required to execute the specified
+	 * action. If an {@link ActionHandler} was bound for the action's class, it
+	 * is adapted to the {@link StreamingActionHandler} interface. If no handler
+	 * was bound for the action's class, or if the handler bound is
+	 * asynchronous, the result is {@code null}.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @return a {@code StreamingActionHandler} bound to execute the action, or
+	 *         {@code null} if none could be located
+	 */
+	/*
+	 * Warnings are suppressed because generics are essentially ignored by
+	 * Guice's classes. The implementation of ActionModule.bindAction(Class)
+	 * ensures that the handler provided for an action class is always suitable
+	 * for actions of that class.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	<A extends Action<R>, R extends Result> StreamingActionHandler<A, R> getHandler(
+			A action) {
+		Provider<StreamingActionHandler> provider = handlers.get(action
+				.getClass());
+		return (provider == null ? null : provider.get());
+	}
+
+	/**
+	 * Locates the asynchronous handler required to execute the specified
+	 * action. If no asynchronous handler was bound for the action's class, the
+	 * result is {@code null}.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @return an {@code AsyncActionHandler} bound to execute the action, or
+	 *         {@code null} if none could be located
+	 * @see #getHandler(Action)
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	<A extends Action<R>, R extends Result> AsyncActionHandler<A, R> getAsyncHandler(
+			A action) {
+		Provider<AsyncActionHandler> provider = asyncHandlers.get(action
+				.getClass());
+		return (provider == null ? null : provider.get());
+	}
+
+	/**
+	 * Returns the bulkhead to which the specified action's class is assigned.
+	 * If the action's class is not assigned to a bulkhead, the result is
+	 * {@code null}.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @return the bulkhead in which the action must be executed, or
+	 *         {@code null} if there is none
+	 */
+	Bulkhead getBulkhead(Action<?> action) {
+		return bulkheads.get(action.getClass());
+	}
+
+	/**
+	 * Returns the bulkhead for actions which are not assigned to another, as
+	 * created by {@link ActionModule#bindVirtualThreads()}.
+	 * 
+	 * @return the default bulkhead, or {@code null} if actions not assigned to
+	 *         a bulkhead should run on the calling thread
+	 */
+	Bulkhead getDefaultBulkhead() {
+		return defaultBulkhead;
+	}
+
+	/**
+	 * Returns the cache for the results of cacheable actions, as created by
+	 * {@link ActionModule#bindResultCache(long)}.
+	 * 
+	 * @return the result cache, or {@code null} if results are not cached
+	 */
+	ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Returns the adaptive limiter for the number of actions executed at
+	 * once, as created by {@link ActionModule#bindConcurrencyLimit(int, int)}.
+	 * 
+	 * @return the concurrency limiter, or {@code null} if concurrency is not
+	 *         limited
+	 */
+	ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Returns the pipeline on which results are delivered to subscribers, as
+	 * created by
+	 * {@link ActionModule#bindPublishPipeline(int, int, PublishOverflowPolicy)}.
+	 * 
+	 * @return the publish pipeline, or {@code null} if results are delivered
+	 *         on the publishing thread
+	 */
+	PublishPipeline getPublishPipeline() {
+		return publishPipeline;
+	}
+
+	/**
+	 * Returns the limit on each subscription's backlog, as created by
+	 * {@link ActionModule#bindSubscriptionCapacity(int, BacklogOverflowPolicy)}.
+	 * 
+	 * @return the backlog limit, or {@code null} if backlogs are unbounded
+	 */
+	BacklogLimit getBacklogLimit() {
+		return backlogLimit;
+	}
+
+	/**
+	 * Returns the lease under which subscriptions are held, as created by
+	 * {@link ActionModule#bindSubscriptionLease(long)}.
+	 * 
+	 * @return the subscription lease, or {@code null} if subscriptions last
+	 *         until they are cancelled
+	 */
+	SubscriptionLease getSubscriptionLease() {
+		return subscriptionLease;
+	}
+
+	/**
+	 * Returns the batcher through which results are sent to other nodes, as
+	 * created by {@link ActionModule#bindPublicationBus(int, long)}.
+	 * 
+	 * @return the publication batcher, or {@code null} if no publication bus
+	 *         is bound
+	 */
+	PublicationBatcher getPublicationBatcher() {
+		return publicationBatcher;
+	}
+
+	/**
+	 * Returns the load shedder for the queue of the specified bulkhead, as
+	 * configured by {@link ActionModule#bindLoadShedding(long, long)}.
+	 * 
+	 * @param bulkhead
+	 *            a bulkhead returned by this registry
+	 * @return the bulkhead's load shedder, or {@code null} if load shedding is
+	 *         not configured
+	 */
+	LoadShedder getLoadShedder(Bulkhead bulkhead) {
+		return loadShedders.get(bulkhead);
+	}
+
+	/**
+	 * Returns the limiter for the rates at which actions are executed, as
+	 * configured by {@link ActionModule#limitRate(Class, double, int)} and
+	 * related methods.
+	 * 
+	 * @return the rate limiter, or {@code null} if no rate limits are
+	 *         configured
+	 */
+	RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Resolves the handler for every bound action class, and every bound
+	 * interceptor, so that their classes are loaded and any singletons are
+	 * instantiated. Each handler is checked to ensure that the action type
+	 * it declares is compatible with the action class to which it is bound;
+	 * handlers which implement a raw handler interface cannot be checked.
+	 * 
+	 * @throws ProvisionException
+	 *             if any handler or interceptor cannot be provided, or if any
+	 *             handler is bound to an incompatible action class
+	 * @see ActionModule#warmUpHandlers(Action...)
+	 */
+	void validateHandlers() {
+		List<Message> errors = Lists.newArrayList();
+		for (Map.Entry<Class<?>, Key<?>> entry : handlerKeys.entrySet()) {
+			Class<?> actionClass = entry.getKey();
+			Key<?> key = entry.getValue();
+			Object handler;
+			try {
+				handler = injector.getInstance(key);
+			} catch (ProvisionException px) {
+				errors.addAll(px.getErrorMessages());
+				continue;
+			}
+			if (handler == null) {
+				errors.add(new Message("null handler bound for "
+						+ actionClass.getName()));
+				continue;
+			}
+			Class<?> handlerInterface = key.getTypeLiteral().getRawType();
+			Type supertype = TypeLiteral.get(handler.getClass())
+					.getSupertype(handlerInterface).getType();
+			if (supertype instanceof ParameterizedType) {
+				Type actionType = ((ParameterizedType) supertype)
+						.getActualTypeArguments()[0];
+				Class<?> handledClass = TypeLiteral.get(actionType)
+						.getRawType();
+				if (!handledClass.isAssignableFrom(actionClass)) {
+					errors.add(new Message(handler.getClass().getName()
+							+ " handles " + handledClass.getName()
+							+ ", but is bound for " + actionClass.getName()));
+				}
+			}
+		}
+		for (Key<ActionInterceptor> key : interceptorKeys) {
+			try {
+				injector.getInstance(key);
+			} catch (ProvisionException px) {
+				errors.addAll(px.getErrorMessages());
+			}
+		}
+		if (!errors.isEmpty()) {
+			throw new ProvisionException(errors);
+		}
+	}
+
+	/**
+	 * A provider which adapts each {@link ActionHandler} obtained from another
+	 * provider using {@link RepeatingActionHandler}.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class RepeatingProvider implements
+			Provider<StreamingActionHandler> {
+		/**
+		 * The provider of the handlers to adapt.
+		 */
+		private final Provider<ActionHandler> provider;
+
+		/**
+		 * Constructs a new {@code RepeatingProvider}.
+		 * 
+		 * @param provider
+		 *            the provider of the handlers to adapt
+		 */
+		private RepeatingProvider(Provider<ActionHandler> provider) {
+			this.provider = provider;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public StreamingActionHandler get() {
+			return new RepeatingActionHandler(provider.get());
+		}
+	}
+
+	/**
+	 * A provider which wraps each handler obtained from another provider in a
+	 * chain of interceptors, using {@link InterceptedActionHandler}.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final class InterceptingProvider implements
+			Provider<StreamingActionHandler> {
+		/**
+		 * The provider of the handlers to wrap.
+		 */
+		private final Provider<StreamingActionHandler> provider;
+
+		/**
+		 * The providers for the interceptors, outermost first.
+		 */
+		private final ImmutableList<Provider<ActionInterceptor>> interceptors;
+
+		/**
+		 * Constructs a new {@code InterceptingProvider}.
+		 * 
+		 * @param provider
+		 *            the provider of the handlers to wrap
+		 * @param interceptors
+		 *            the providers for the interceptors, outermost first
+		 */
+		private InterceptingProvider(Provider<StreamingActionHandler> provider,
+				List<Provider<ActionInterceptor>> interceptors) {
+			this.provider = provider;
+			this.interceptors = ImmutableList.copyOf(interceptors);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public StreamingActionHandler get() {
+			return new InterceptedActionHandler(provider.get(), interceptors);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+/**
+ * Validates and warms up the handlers bound in {@link ActionModule}. An
+ * instance is bound by {@link ActionModule#warmUpHandlers(Action...)}, and
+ * Guice performs the warm-up when the injector is created, so that
+ * misbindings are reported before the application serves any requests.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class HandlerWarmer {
+	/**
+	 * The actions to execute once the handlers have been validated.
+	 */
+	private final ImmutableList<Action<?>> actions;
+
+	/**
+	 * Constructs a new {@code HandlerWarmer}.
+	 * 
+	 * @param actions
+	 *            the actions to execute once the handlers have been validated
+	 */
+	HandlerWarmer(List<Action<?>> actions) {
+		this.actions = ImmutableList.copyOf(actions);
+	}
+
+	/**
+	 * Validates every bound handler, then executes each warm-up action in
+	 * turn.
+	 * 
+	 * @param registry
+	 *            the registry of handlers to validate
+	 * @param dispatcher
+	 *            the dispatcher with which to execute the warm-up actions
+	 * @throws ProvisionException
+	 *             if a handler is misbound, or if a warm-up action fails
+	 */
+	@Inject
+	void warmUp(HandlerRegistry registry, Dispatcher dispatcher) {
+		registry.validateHandlers();
+		for (Action<?> action : actions) {
+			try {
+				dispatcher.execute(action);
+			} catch (ActionException ax) {
+				throw new ProvisionException("warm-up action failed: "
+						+ action.getClass().getName(), ax);
+			}
+		}
+	}
+}
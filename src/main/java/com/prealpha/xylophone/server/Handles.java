@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.prealpha.xylophone.processor.HandlesProcessor;
+import com.prealpha.xylophone.shared.Action;
+
+/**
+ * Declares the {@link Action} class handled by an {@link ActionHandler},
+ * {@link StreamingActionHandler}, or {@link AsyncActionHandler}. At compile
+ * time, {@link HandlesProcessor} collects every annotated handler and
+ * generates a subclass of {@link ActionModule} which binds each handler to
+ * its action class, so that bindings need not be written by hand. The
+ * processor also checks that each handler actually handles the action class
+ * given, reporting any misbinding as a compilation error.
+ * <p>
+ * 
+ * The annotation is placed on the handler, rather than the action, because
+ * action classes are shared with GWT client code and cannot refer to server
+ * classes. Annotated handlers must be concrete, and if they are not
+ * {@code public}, must be in the package of the generated module.
+ * 
+ * @author Meyer Kizner
+ * @see HandlesProcessor
+ * @since 0.4-beta
+ * 
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Handles {
+	/**
+	 * @return the action class handled by the annotated handler
+	 */
+	Class<? extends Action<?>> value();
+
+	/**
+	 * Returns the name of the bulkhead to which the action class is assigned,
+	 * as for {@link ActionModule#bindAction(Class, String)}. The bulkhead
+	 * must still be created in the generated module's subclass or in another
+	 * module. Asynchronous handlers cannot be assigned to a bulkhead.
+	 * 
+	 * @return the name of the action class's bulkhead, or an empty string if
+	 *         it is not assigned to one
+	 */
+	String bulkhead() default "";
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Provider;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * Runs a chain of {@link ActionInterceptor}s around a
+ * {@link StreamingActionHandler}. {@link HandlerRegistry} wraps handlers in
+ * this class only for action classes to which at least one interceptor
+ * applies.
+ * 
+ * @param <A>
+ *            the action type handled
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * 
+ */
+final class InterceptedActionHandler<A extends Action<R>, R extends Result>
+		implements StreamingActionHandler<A, R> {
+	/**
+	 * The handler at the end of the chain.
+	 */
+	private final StreamingActionHandler<A, R> handler;
+
+	/**
+	 * The providers for the interceptors, outermost first.
+	 */
+	private final ImmutableList<Provider<ActionInterceptor>> interceptors;
+
+	/**
+	 * Constructs a new {@code InterceptedActionHandler}.
+	 * 
+	 * @param handler
+	 *            the handler at the end of the chain
+	 * @param interceptors
+	 *            the providers for the interceptors, outermost first
+	 */
+	InterceptedActionHandler(StreamingActionHandler<A, R> handler,
+			List<Provider<ActionInterceptor>> interceptors) {
+		this.handler = handler;
+		this.interceptors = ImmutableList.copyOf(interceptors);
+	}
+
+	@Override
+	public R execute(A action, ResultSink<R> sink) throws ActionException {
+		return new Link(action, sink, 0).proceed();
+	}
+
+	/**
+	 * The remainder of the chain, starting at a particular interceptor.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class Link implements ActionInterceptor.Chain<R> {
+		/**
+		 * The action being executed.
+		 */
+		private final A action;
+
+		/**
+		 * The sink for the action's partial results.
+		 */
+		private final ResultSink<R> sink;
+
+		/**
+		 * The index of the next interceptor to invoke.
+		 */
+		private final int index;
+
+		/**
+		 * Constructs a new {@code Link}.
+		 * 
+		 * @param action
+		 *            the action being executed
+		 * @param sink
+		 *            the sink for the action's partial results
+		 * @param index
+		 *            the index of the next interceptor to invoke
+		 */
+		private Link(A action, ResultSink<R> sink, int index) {
+			this.action = action;
+			this.sink = sink;
+			this.index = index;
+		}
+
+		@Override
+		public R proceed() throws ActionException {
+			if (index < interceptors.size()) {
+				ActionInterceptor interceptor = interceptors.get(index).get();
+				return interceptor.intercept(action, new Link(action, sink,
+						index + 1));
+			} else {
+				return handler.execute(action, sink);
+			}
+		}
+	}
+}
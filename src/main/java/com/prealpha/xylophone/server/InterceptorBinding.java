@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.google.inject.Key;
+
+/**
+ * Records an interceptor bound in {@link ActionModule}, along with the action
+ * class to which it applies. One instance is bound, with a unique annotation,
+ * for each interceptor; {@link HandlerRegistry} then finds all instances and
+ * sorts them by sequence number, into the order in which they were bound.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class InterceptorBinding {
+	/**
+	 * Orders interceptor bindings by sequence number.
+	 */
+	static final Ordering<InterceptorBinding> BINDING_ORDER = new Ordering<InterceptorBinding>() {
+		@Override
+		public int compare(InterceptorBinding left, InterceptorBinding right) {
+			return Ints.compare(left.sequence, right.sequence);
+		}
+	};
+
+	/**
+	 * The position of the interceptor in the order in which interceptors were
+	 * bound.
+	 */
+	private final int sequence;
+
+	/**
+	 * The action class to which the interceptor applies, or {@code null} if it
+	 * applies to all action classes.
+	 */
+	private final Class<?> actionClass;
+
+	/**
+	 * The key to which the interceptor itself is bound.
+	 */
+	private final Key<ActionInterceptor> key;
+
+	/**
+	 * Constructs a new {@code InterceptorBinding}.
+	 * 
+	 * @param sequence
+	 *            the position of the interceptor in the order in which
+	 *            interceptors were bound
+	 * @param actionClass
+	 *            the action class to which the interceptor applies, or
+	 *            {@code null} if it applies to all action classes
+	 * @param key
+	 *            the key to which the interceptor is bound
+	 */
+	InterceptorBinding(int sequence, Class<?> actionClass,
+			Key<ActionInterceptor> key) {
+		this.sequence = sequence;
+		this.actionClass = actionClass;
+		this.key = key;
+	}
+
+	/**
+	 * Indicates whether the interceptor applies to the specified action class.
+	 * 
+	 * @param actionClass
+	 *            an action class
+	 * @return {@code true} if the interceptor applies, {@code false} otherwise
+	 */
+	boolean appliesTo(Class<?> actionClass) {
+		return (this.actionClass == null || this.actionClass == actionClass);
+	}
+
+	/**
+	 * @return the key to which the interceptor is bound
+	 */
+	Key<ActionInterceptor> getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in microseconds. Each power of two is
+ * divided into eight buckets, so that percentiles computed from the histogram
+ * are accurate to within 12.5%, regardless of magnitude. Recording a latency
+ * requires only a few atomic increments, and never blocks, so a histogram may
+ * be updated by any number of threads at once.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class LatencyHistogram {
+	/**
+	 * The number of bits of precision retained for each latency.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The number of buckets into which each power of two is divided.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The total number of buckets, which is sufficient for any non-negative
+	 * {@code long}.
+	 */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	/**
+	 * The number of latencies recorded in each bucket.
+	 */
+	private final AtomicLongArray counts;
+
+	/**
+	 * The sum of all latencies recorded.
+	 */
+	private final AtomicLong sum;
+
+	/**
+	 * The greatest latency recorded.
+	 */
+	private final AtomicLong max;
+
+	/**
+	 * Constructs a new, empty {@code LatencyHistogram}.
+	 */
+	LatencyHistogram() {
+		counts = new AtomicLongArray(BUCKETS);
+		sum = new AtomicLong();
+		max = new AtomicLong();
+	}
+
+	/**
+	 * Records a latency. Negative latencies are recorded as zero.
+	 * 
+	 * @param micros
+	 *            the latency, in microseconds
+	 */
+	void record(long micros) {
+		long value = Math.max(0L, micros);
+		counts.incrementAndGet(indexOf(value));
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Returns a copy of the bucket counts. The copy is not atomic, so latencies
+	 * recorded concurrently may or may not be included.
+	 * 
+	 * @return the number of latencies recorded in each bucket
+	 */
+	long[] getCounts() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the sum of all latencies recorded, in microseconds
+	 */
+	long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return the greatest latency recorded, in microseconds
+	 */
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Computes a percentile from a copy of the bucket counts. The result is
+	 * the upper bound of the bucket containing the percentile, but no greater
+	 * than {@code max}.
+	 * 
+	 * @param counts
+	 *            the bucket counts, as returned by {@link #getCounts()}
+	 * @param max
+	 *            the greatest latency recorded
+	 * @param percentile
+	 *            the percentile to compute, between 0 and 100
+	 * @return the latency at the percentile, in microseconds, or zero if no
+	 *         latencies were recorded
+	 */
+	static long getPercentile(long[] counts, long max, double percentile) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, upperBoundOf(i));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the index of the bucket for the specified latency.
+	 * 
+	 * @param value
+	 *            a non-negative latency
+	 * @return the index of the bucket
+	 */
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the greatest latency which belongs in the specified bucket.
+	 * 
+	 * @param index
+	 *            the index of a bucket
+	 * @return the upper bound of the bucket
+	 */
+	private static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which actions to shed from a queue of waiting actions, using the
+ * CoDel (controlled delay) algorithm. The time each action spent waiting, or
+ * its sojourn time, is measured as it leaves the queue. While sojourn times
+ * stay below a target, nothing is shed. Once they have stayed above the target
+ * for a full interval, the queue is persistently backed up rather than merely
+ * absorbing a burst, and the shedder begins shedding actions, more frequently
+ * the longer the delay persists: the time between successive sheds is the
+ * interval divided by the square root of the number shed so far. Shedding
+ * stops as soon as an action leaves the queue below the target.
+ * <p>
+ * 
+ * Because the decision is based on how long actions actually waited, rather
+ * than on how many are waiting, it adapts automatically to handlers of any
+ * speed. Each bulkhead has a shedder of its own.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindLoadShedding(long, long)
+ * 
+ */
+final class LoadShedder {
+	/**
+	 * The target sojourn time, in nanoseconds.
+	 */
+	private final long target;
+
+	/**
+	 * The time, in nanoseconds, for which sojourn times must stay above the
+	 * target before actions are shed.
+	 */
+	private final long interval;
+
+	/**
+	 * The time at which sojourn times will have been above the target for a
+	 * full interval, or zero if the last sojourn time was below the target.
+	 */
+	private long firstAboveTime;
+
+	/**
+	 * Whether actions are currently being shed.
+	 */
+	private boolean dropping;
+
+	/**
+	 * The time at which the next action will be shed, if actions are
+	 * currently being shed.
+	 */
+	private long dropNext;
+
+	/**
+	 * The number of actions shed since shedding last began.
+	 */
+	private int count;
+
+	/**
+	 * The value of {@link #count} when shedding last began.
+	 */
+	private int lastCount;
+
+	/**
+	 * Constructs a new {@code LoadShedder}.
+	 * 
+	 * @param target
+	 *            the target sojourn time
+	 * @param interval
+	 *            the time for which sojourn times must stay above the target
+	 *            before actions are shed
+	 * @param unit
+	 *            the unit of {@code target} and {@code interval}
+	 * @throws IllegalArgumentException
+	 *             if {@code target} or {@code interval} is not positive
+	 */
+	LoadShedder(long target, long interval, TimeUnit unit) {
+		checkArgument(target > 0);
+		checkArgument(interval > 0);
+		this.target = unit.toNanos(target);
+		this.interval = unit.toNanos(interval);
+	}
+
+	/**
+	 * Creates a new shedder with the same target and interval as this one, for
+	 * use with another queue.
+	 * 
+	 * @return a new {@code LoadShedder}
+	 */
+	LoadShedder copy() {
+		return new LoadShedder(target, interval, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Records the sojourn time of an action which is leaving the queue, and
+	 * decides whether it should be shed.
+	 * 
+	 * @param sojournTime
+	 *            the time the action spent waiting, in nanoseconds
+	 * @return {@code true} if the action should be shed, {@code false} if it
+	 *         should be executed
+	 */
+	synchronized boolean shouldShed(long sojournTime) {
+		long now = System.nanoTime();
+		boolean aboveTarget = false;
+		if (sojournTime < target) {
+			firstAboveTime = 0;
+		} else if (firstAboveTime == 0) {
+			firstAboveTime = now + interval;
+		} else if (now - firstAboveTime >= 0) {
+			aboveTarget = true;
+		}
+
+		if (dropping) {
+			if (!aboveTarget) {
+				dropping = false;
+				return false;
+			} else if (now - dropNext >= 0) {
+				count++;
+				dropNext = controlLaw(dropNext);
+				return true;
+			} else {
+				return false;
+			}
+		} else if (aboveTarget) {
+			dropping = true;
+			/*
+			 * If shedding stopped only recently, resume at nearly the rate at
+			 * which it stopped, rather than starting over.
+			 */
+			int delta = count - lastCount;
+			if (delta > 1 && now - dropNext < 16 * interval) {
+				count = delta;
+			} else {
+				count = 1;
+			}
+			lastCount = count;
+			dropNext = controlLaw(now);
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Computes the time at which the next action should be shed.
+	 * 
+	 * @param time
+	 *            the time at which the last action was shed
+	 * @return the time at which to shed the next action
+	 */
+	private long controlLaw(long time) {
+		return time + (long) (interval / Math.sqrt(count));
+	}
+}
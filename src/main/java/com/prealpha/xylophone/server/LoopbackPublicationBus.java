@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * A {@link PublicationBus} which connects dispatchers within a single JVM,
+ * passing publications between them by reference. Each bus belongs to a group,
+ * and sends publications to every other bus in its group. This is mainly
+ * useful for testing clustered publishing without a network.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class LoopbackPublicationBus implements PublicationBus {
+	/**
+	 * The buses in this bus's group, including this one.
+	 */
+	private final Set<LoopbackPublicationBus> group;
+
+	/**
+	 * The receiver for publications from other buses, or {@code null} if the
+	 * bus has not been started.
+	 */
+	private volatile Receiver receiver;
+
+	/**
+	 * Constructs a new {@code LoopbackPublicationBus} in a group of its own.
+	 */
+	public LoopbackPublicationBus() {
+		group = new CopyOnWriteArraySet<LoopbackPublicationBus>();
+		group.add(this);
+	}
+
+	/**
+	 * Constructs a new {@code LoopbackPublicationBus} in the same group as
+	 * another bus.
+	 * 
+	 * @param member
+	 *            a bus in the group to join
+	 * @throws NullPointerException
+	 *             if {@code member} is {@code null}
+	 */
+	public LoopbackPublicationBus(LoopbackPublicationBus member) {
+		group = member.group;
+		group.add(this);
+	}
+
+	@Override
+	public void start(Receiver receiver) {
+		this.receiver = checkNotNull(receiver);
+	}
+
+	@Override
+	public void send(List<Publication> publications) {
+		for (LoopbackPublicationBus bus : group) {
+			Receiver receiver = bus.receiver;
+			if (bus != this && receiver != null) {
+				receiver.receive(publications);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.inject.Inject;
+import com.google.inject.ProvisionException;
+
+/**
+ * Registers {@link DispatcherMetrics} with the platform MBean server. An
+ * instance is bound by {@link ActionModule#exportMetrics(String)}, and Guice
+ * performs the registration when the injector is created, replacing any
+ * earlier registration under the same name.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class MetricsExporter {
+	/**
+	 * The name under which the metrics are registered.
+	 */
+	private final String name;
+
+	/**
+	 * Constructs a new {@code MetricsExporter}.
+	 * 
+	 * @param name
+	 *            the name under which the metrics are registered, which
+	 *            distinguishes them from those of other dispatchers
+	 */
+	MetricsExporter(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, under the object
+	 * name {@code com.prealpha.xylophone:type=Dispatcher,name=<name>}. Any
+	 * metrics already registered under that name, such as those of a web
+	 * application which has since been redeployed in the same JVM, are
+	 * unregistered first, so that they and their class loader are no longer
+	 * referenced by the server.
+	 * 
+	 * @param metrics
+	 *            the metrics to register
+	 */
+	@Inject
+	void export(DispatcherMetrics metrics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(
+					"com.prealpha.xylophone:type=Dispatcher,name="
+							+ ObjectName.quote(name));
+			try {
+				server.unregisterMBean(objectName);
+			} catch (InstanceNotFoundException infx) {
+				// nothing was registered under this name
+			}
+			server.registerMBean(metrics, objectName);
+		} catch (JMException jmx) {
+			throw new ProvisionException("could not export metrics", jmx);
+		}
+	}
+}
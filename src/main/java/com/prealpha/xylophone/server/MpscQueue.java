@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * A lock-free, unbounded queue for many producers and a single consumer, which
+ * removes elements only in batches. Producers push elements onto a linked
+ * stack with a single compare-and-set; the consumer takes the entire stack
+ * with a single atomic swap and reverses it, so that elements are returned in
+ * the order in which they were offered. Neither operation ever blocks, and
+ * producers contend only on the head of the stack.
+ * <p>
+ * 
+ * Although {@link #drain()} is itself atomic, successive batches are only
+ * returned in order if drains are not concurrent; callers with more than one
+ * consumer thread must serialize their drains.
+ * 
+ * @param <E>
+ *            the type of element held
+ * @author Meyer Kizner
+ * 
+ */
+final class MpscQueue<E> {
+	/**
+	 * The most recently offered element, or {@code null} if the queue is
+	 * empty.
+	 */
+	private final AtomicReference<Node<E>> head;
+
+	MpscQueue() {
+		head = new AtomicReference<Node<E>>();
+	}
+
+	/**
+	 * Adds an element to the queue.
+	 * 
+	 * @param element
+	 *            the element to add
+	 * @return the number of elements in the queue, including this one
+	 * @throws NullPointerException
+	 *             if {@code element} is {@code null}
+	 */
+	int offer(E element) {
+		Node<E> node = new Node<E>(checkNotNull(element));
+		Node<E> current;
+		do {
+			current = head.get();
+			node.next = current;
+			node.size = (current == null ? 1 : current.size + 1);
+		} while (!head.compareAndSet(current, node));
+		return node.size;
+	}
+
+	/**
+	 * Removes and returns all elements in the queue, in the order in which
+	 * they were offered.
+	 * 
+	 * @return the elements which were in the queue
+	 */
+	List<E> drain() {
+		Node<E> node = head.getAndSet(null);
+		if (node == null) {
+			return ImmutableList.of();
+		}
+		List<E> elements = Lists.newArrayListWithCapacity(node.size);
+		for (; node != null; node = node.next) {
+			elements.add(node.element);
+		}
+		return Lists.reverse(elements);
+	}
+
+	/**
+	 * @return {@code true} if the queue is empty; {@code false} otherwise
+	 */
+	boolean isEmpty() {
+		return (head.get() == null);
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	int size() {
+		Node<E> node = head.get();
+		return (node == null ? 0 : node.size);
+	}
+
+	/**
+	 * A node in the stack. The mutable fields of a node are written
+	 * only before the node is published by a compare-and-set, and are
+	 * therefore visible to any thread which later reads the head.
+	 * 
+	 * @param <E>
+	 *            the type of element held
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private static final class Node<E> {
+		private final E element;
+
+		private Node<E> next;
+
+		private int size;
+
+		private Node(E element) {
+			this.element = element;
+		}
+	}
+}
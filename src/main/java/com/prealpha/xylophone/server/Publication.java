@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Serializable;
+
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * A result published by a dispatcher, together with the action from which it
+ * resulted, as carried between nodes by a {@link PublicationBus}. A
+ * publication is serializable if both its action and its result are.
+ * 
+ * @author Meyer Kizner
+ * @see PublicationBus
+ * @since 0.4-beta
+ * 
+ */
+public final class Publication implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The action whose execution resulted in {@link #result}.
+	 */
+	private final Action<?> action;
+
+	/**
+	 * The result which was published.
+	 */
+	private final Result result;
+
+	/**
+	 * Constructs a new {@code Publication}.
+	 * 
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result which was published
+	 * @throws NullPointerException
+	 *             if either argument is {@code null}
+	 */
+	public Publication(Action<?> action, Result result) {
+		this.action = checkNotNull(action);
+		this.result = checkNotNull(result);
+	}
+
+	/**
+	 * @return the action whose execution resulted in the result
+	 */
+	public Action<?> getAction() {
+		return action;
+	}
+
+	/**
+	 * @return the result which was published
+	 */
+	public Result getResult() {
+		return result;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Collects the results published on this node into batches, and sends each
+ * batch to the other nodes through a {@link PublicationBus}. Publishing a
+ * result only adds it to a lock-free queue; a single thread drains the queue
+ * whenever it holds a full batch, or after a delay otherwise, so that the cost
+ * of a bus message is shared by many results. The queue holds at most a fixed
+ * number of batches; if the bus falls that far behind, further publications
+ * are dropped and counted. An instance is bound by
+ * {@link ActionModule#bindPublicationBus(int, long)}, and Guice starts the bus
+ * when the injector is created.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class PublicationBatcher {
+	/**
+	 * The number of full batches which may wait to be sent.
+	 */
+	private static final int MAX_QUEUED_BATCHES = 64;
+
+	/**
+	 * The largest number of publications sent in one batch.
+	 */
+	private final int maxBatchSize;
+
+	/**
+	 * The longest time a publication may wait for a batch, in nanoseconds.
+	 */
+	private final long maxDelay;
+
+	/**
+	 * The publications waiting to be sent.
+	 */
+	private final MpscQueue<Publication> queue;
+
+	/**
+	 * The number of publications dropped because the queue was full.
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * The bus on which batches are sent, or {@code null} if the bus has not
+	 * been started.
+	 */
+	private volatile PublicationBus bus;
+
+	/**
+	 * The thread which sends batches, or {@code null} if the bus has not been
+	 * started.
+	 */
+	private volatile Thread thread;
+
+	/**
+	 * Constructs a new {@code PublicationBatcher}.
+	 * 
+	 * @param maxBatchSize
+	 *            the largest number of publications sent in one batch
+	 * @param maxDelayMillis
+	 *            the longest time a publication may wait for a batch, in
+	 *            milliseconds
+	 * @throws IllegalArgumentException
+	 *             if either argument is not positive
+	 */
+	PublicationBatcher(int maxBatchSize, long maxDelayMillis) {
+		checkArgument(maxBatchSize > 0);
+		checkArgument(maxDelayMillis > 0);
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		queue = new MpscQueue<Publication>();
+		dropped = new AtomicLong();
+	}
+
+	/**
+	 * Starts the bus, delivering publications from other nodes to the local
+	 * subscriptions of the dispatcher, and starts the thread which sends
+	 * batches.
+	 * 
+	 * @param bus
+	 *            the bus on which to send and receive publications
+	 * @param dispatcher
+	 *            the dispatcher to which received publications are delivered
+	 */
+	@Inject
+	void start(PublicationBus bus, final PublishingDispatcherImpl dispatcher) {
+		this.bus = bus;
+		bus.start(new PublicationBus.Receiver() {
+			@Override
+			public void receive(List<Publication> publications) {
+				dispatcher.receive(publications);
+			}
+		});
+		Thread thread = new ThreadFactoryBuilder()
+				.setNameFormat("xylophone-batcher-%d").setDaemon(true).build()
+				.newThread(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+		this.thread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Queues a publication to be sent to the other nodes. If the queue then
+	 * holds a full batch, the sending thread is woken. If the queue is full,
+	 * the publication is dropped instead. The limit is checked without
+	 * locking, so concurrent publishers may exceed it slightly.
+	 * 
+	 * @param publication
+	 *            the publication to send
+	 */
+	void add(Publication publication) {
+		if (queue.size() >= maxBatchSize * MAX_QUEUED_BATCHES) {
+			dropped.incrementAndGet();
+			return;
+		}
+		if (queue.offer(publication) >= maxBatchSize) {
+			Thread thread = this.thread;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of publications dropped because the queue was full
+	 * @see DispatcherMetrics#getDroppedPublicationCount()
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Sends the queued publications in batches, waiting between batches until
+	 * the queue is full or the maximum delay has passed. A batch which the bus
+	 * fails to send is dropped.
+	 */
+	private void flush() {
+		while (!Thread.currentThread().isInterrupted()) {
+			if (queue.size() < maxBatchSize) {
+				LockSupport.parkNanos(this, maxDelay);
+			}
+			List<Publication> publications = queue.drain();
+			for (List<Publication> batch : Lists.partition(publications,
+					maxBatchSize)) {
+				try {
+					bus.send(ImmutableList.copyOf(batch));
+				} catch (RuntimeException rx) {
+					// delivery across the bus is best-effort
+				}
+			}
+		}
+	}
+}
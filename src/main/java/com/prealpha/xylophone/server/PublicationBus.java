@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.List;
+
+/**
+ * Carries published results between the dispatchers of several nodes, so
+ * that a subscription on one node receives the results of actions executed on
+ * any of them. Each node has its own bus, bound with
+ * {@link ActionModule#bindPublicationBus(int, long)}. Results published on a
+ * node are delivered to its own subscriptions directly, and are also sent in
+ * batches to the other nodes through {@link #send(List)}; batches received
+ * from other nodes are passed to the {@link Receiver} given to
+ * {@link #start(Receiver)}, and delivered only to local subscriptions.
+ * <p>
+ * 
+ * Two implementations are provided: {@link LoopbackPublicationBus}, which
+ * connects dispatchers within a single JVM, and {@link SocketPublicationBus},
+ * which connects nodes over TCP. Delivery is best-effort in both; a bus may
+ * drop publications which it is unable to send, as a subscription with a
+ * bounded backlog may.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindPublicationBus(int, long)
+ * @since 0.4-beta
+ * 
+ */
+public interface PublicationBus {
+	/**
+	 * Starts receiving publications from other nodes. This method is called
+	 * once, when the injector is created.
+	 * 
+	 * @param receiver
+	 *            the receiver for publications from other nodes
+	 */
+	void start(Receiver receiver);
+
+	/**
+	 * Sends a batch of publications from this node to every other node. This
+	 * method is called from a single thread, and should not block for long,
+	 * since further publications wait while it runs. It should not throw an
+	 * exception if a node is unreachable.
+	 * 
+	 * @param publications
+	 *            the publications to send, in the order in which they were
+	 *            published
+	 */
+	void send(List<Publication> publications);
+
+	/**
+	 * Receives batches of publications from other nodes.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	interface Receiver {
+		/**
+		 * Delivers a batch of publications from another node to the local
+		 * subscriptions which match them.
+		 * 
+		 * @param publications
+		 *            the publications received, in the order in which they
+		 *            were published
+		 */
+		void receive(List<Publication> publications);
+	}
+}
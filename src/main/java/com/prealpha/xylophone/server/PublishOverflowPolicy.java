@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+/**
+ * Determines what happens to a result which is published while the
+ * asynchronous publish pipeline is full. See
+ * {@link ActionModule#bindPublishPipeline(int, int, PublishOverflowPolicy)}.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public enum PublishOverflowPolicy {
+	/**
+	 * The publishing thread waits until there is room in the pipeline. No
+	 * results are lost, but action latency again depends on subscribers once
+	 * the pipeline is full.
+	 */
+	BLOCK,
+
+	/**
+	 * The publishing thread delivers the result to subscribers itself, as if
+	 * there were no pipeline. No results are lost, but a result delivered in
+	 * this way may overtake earlier results of the same action which are still
+	 * in the pipeline.
+	 */
+	CALLER_RUNS,
+
+	/**
+	 * The result is discarded without being delivered to any subscriber. The
+	 * action itself is unaffected, and its complete result is still returned
+	 * to the client which executed it.
+	 */
+	DISCARD;
+}
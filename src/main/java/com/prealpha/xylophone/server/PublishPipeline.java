@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Delivers published results to subscribers on dedicated threads, so that the
+ * latency of an action does not depend on the number of subscribers. The
+ * pipeline consists of a number of shards, each a bounded ring buffer drained
+ * by a single publisher thread. Deliveries are assigned to shards by action,
+ * so that the results of equal actions are delivered by the same thread, in
+ * the order in which they were published.
+ * <p>
+ * 
+ * Publisher threads are daemon threads, started when the first result is
+ * published. When a shard is full, the pipeline's
+ * {@link PublishOverflowPolicy} determines what happens to further results.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindPublishPipeline(int, int, PublishOverflowPolicy)
+ * 
+ */
+final class PublishPipeline {
+	private static final Logger LOGGER = Logger
+			.getLogger(PublishPipeline.class.getName());
+
+	/**
+	 * The ring buffers for each shard, each drained by a single thread.
+	 */
+	private final ImmutableList<BlockingQueue<Runnable>> shards;
+
+	/**
+	 * The policy applied when a shard is full.
+	 */
+	private final PublishOverflowPolicy policy;
+
+	/**
+	 * Set once the publisher threads have been started.
+	 */
+	private final AtomicBoolean started;
+
+	/**
+	 * Constructs a new {@code PublishPipeline}. The capacity is divided evenly
+	 * among the shards, each of which holds at least one result.
+	 * 
+	 * @param capacity
+	 *            the total number of results which may wait to be delivered
+	 * @param threads
+	 *            the number of shards, and therefore of publisher threads
+	 * @param policy
+	 *            the policy applied when a shard is full
+	 * @throws NullPointerException
+	 *             if {@code policy} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code capacity} or {@code threads} is not positive
+	 */
+	PublishPipeline(int capacity, int threads, PublishOverflowPolicy policy) {
+		checkArgument(capacity > 0);
+		checkArgument(threads > 0);
+		checkNotNull(policy);
+		List<BlockingQueue<Runnable>> shards = Lists.newArrayList();
+		for (int i = 0; i < threads; i++) {
+			shards.add(new ArrayBlockingQueue<Runnable>(Math.max(1, capacity
+					/ threads)));
+		}
+		this.shards = ImmutableList.copyOf(shards);
+		this.policy = policy;
+		started = new AtomicBoolean();
+	}
+
+	/**
+	 * Submits a delivery to the pipeline, in the shard for the specified
+	 * action. If the shard is full, the pipeline's overflow policy is applied.
+	 * 
+	 * @param action
+	 *            the action whose result is delivered
+	 * @param delivery
+	 *            the task which delivers the result to subscribers
+	 */
+	void publish(Object action, Runnable delivery) {
+		if (!started.get() && started.compareAndSet(false, true)) {
+			start();
+		}
+		BlockingQueue<Runnable> shard = shards
+				.get((action.hashCode() & Integer.MAX_VALUE) % shards.size());
+		switch (policy) {
+		case BLOCK:
+			try {
+				shard.put(delivery);
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				delivery.run();
+			}
+			break;
+		case CALLER_RUNS:
+			if (!shard.offer(delivery)) {
+				delivery.run();
+			}
+			break;
+		case DISCARD:
+			shard.offer(delivery);
+			break;
+		default:
+			throw new AssertionError();
+		}
+	}
+
+	/**
+	 * Starts a publisher thread for each shard.
+	 */
+	private void start() {
+		ThreadFactory factory = new ThreadFactoryBuilder()
+				.setNameFormat("xylophone-publisher-%d").setDaemon(true)
+				.build();
+		for (final BlockingQueue<Runnable> shard : shards) {
+			factory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						Runnable delivery;
+						try {
+							delivery = shard.take();
+						} catch (InterruptedException ix) {
+							return;
+						}
+						/*
+						 * Deliveries already isolate failing subscriptions
+						 * from each other; anything else must not stop the
+						 * thread, or its shard would never be drained again.
+						 */
+						try {
+							delivery.run();
+						} catch (RuntimeException rx) {
+							LOGGER.log(Level.WARNING, "delivery failed", rx);
+						} catch (Error e) {
+							LOGGER.log(Level.WARNING, "delivery failed", e);
+						}
+					}
+				}
+			}).start();
+		}
+	}
+}
@@ -18,30 +18,59 @@ package com.prealpha.xylophone.server;
 
 import static com.google.common.base.Preconditions.*;
 
-import java.lang.annotation.Annotation;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
-import com.google.inject.Binding;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
-import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
 import com.google.inject.Provider;
-import com.google.inject.TypeLiteral;
-import com.google.inject.spi.LinkedKeyBinding;
+import com.google.inject.ProvisionException;
 import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionClassPredicate;
 import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.ActionRejectedException;
+import com.prealpha.xylophone.shared.BulkheadFullException;
+import com.prealpha.xylophone.shared.ConcurrencyLimitException;
+import com.prealpha.xylophone.shared.ConflatableAction;
+import com.prealpha.xylophone.shared.DeadlineExceededException;
+import com.prealpha.xylophone.shared.EqualActionPredicate;
 import com.prealpha.xylophone.shared.Dispatcher;
 import com.prealpha.xylophone.shared.HandlerNotFoundException;
+import com.prealpha.xylophone.shared.LoadShedException;
+import com.prealpha.xylophone.shared.OverflowResult;
 import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.RateLimitExceededException;
 import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.TimedAction;
+import com.prealpha.xylophone.shared.filter.CacheableAction;
+import com.prealpha.xylophone.shared.filter.MergeableAction;
 
 /**
  * An implementation of {@link Dispatcher} and {@link PublishingDispatcher}
@@ -49,7 +78,30 @@ import com.prealpha.xylophone.shared.Result;
  * subclasses always bind the {@code Dispatcher} and
  * {@code PublishingDispatcher} interfaces to this class. Actions are handled
  * using the {@link ActionHandler} implementations bound using
- * {@link ActionModule#bindAction(Class)}.
+ * {@link ActionModule#bindAction(Class)}, the {@link StreamingActionHandler}
+ * implementations bound using {@link ActionModule#bindStreamingAction(Class)},
+ * or the {@link AsyncActionHandler} implementations bound using
+ * {@link ActionModule#bindAsyncAction(Class)}.
+ * Actions assigned to a {@link Bulkhead} have their handlers executed on the
+ * bulkhead's threads, with the request suspended in the same manner as for an
+ * asynchronous handler. If {@link ActionModule#bindVirtualThreads()} was used,
+ * the same applies to all other actions executed directly by a request.
+ * <p>
+ * 
+ * Each action execution is given a {@link CancellationToken}. Actions wrapped
+ * in a {@link TimedAction} are unwrapped, and their token is cancelled once
+ * the timeout elapses; the dispatcher then fails the execution with a
+ * {@link DeadlineExceededException} and stops publishing its partial results.
+ * <p>
+ * 
+ * Every execution is recorded to the {@link DispatcherMetrics} bound by
+ * {@code ActionModule}.
+ * <p>
+ * 
+ * If {@link ActionModule#bindResultCache(long)} was used, the results of
+ * {@link CacheableAction}s are cached and shared among all clients. Equal
+ * {@link MergeableAction}s executed concurrently, by any number of clients,
+ * share a single execution and its result.
  * <p>
  * 
  * This dispatcher's mechanism for locating handlers is highly specific to the
@@ -63,9 +115,23 @@ import com.prealpha.xylophone.shared.Result;
  */
 final class PublishingDispatcherImpl implements PublishingDispatcher {
 	/**
-	 * The injector we use to obtain action handlers.
+	 * The number of results which may accumulate in a subscription's inbox
+	 * before a publishing thread drains them into its backlog. Draining
+	 * applies conflation and the backlog limit, so that a subscription which
+	 * is not checked does not hold superseded results indefinitely.
+	 */
+	private static final int DRAIN_THRESHOLD = 64;
+
+	/**
+	 * The logger to which failed deliveries are reported.
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(PublishingDispatcherImpl.class.getName());
+
+	/**
+	 * The registry we use to obtain action handlers.
 	 */
-	private final Injector injector;
+	private final HandlerRegistry registry;
 
 	/**
 	 * The provider we use to obtain active {@code AsyncContext} instances. Note
@@ -76,6 +142,28 @@ final class PublishingDispatcherImpl implements PublishingDispatcher {
 	 */
 	private final Provider<AsyncContext> contextProvider;
 
+	/**
+	 * The provider we use to obtain the current request, in which the state of
+	 * asynchronous action executions is stored while the request is suspended.
+	 */
+	private final Provider<HttpServletRequest> requestProvider;
+
+	/**
+	 * Holds the cancellation token of the action which a thread is currently
+	 * executing through this dispatcher, or {@code null} if the thread is not
+	 * executing an action. Actions executed from within another action, such
+	 * as those in a {@code BatchAction}, must produce their results directly;
+	 * the request cannot be suspended on their behalf. They also inherit the
+	 * deadline of the outer action.
+	 */
+	private final ThreadLocal<CancellationToken> dispatching;
+
+	/**
+	 * The executor on which handlers may run work on behalf of an action. See
+	 * {@link #getActionExecutor()}.
+	 */
+	private final Executor actionExecutor;
+
 	/**
 	 * A map of subscription IDs to active subscription objects. Canceled
 	 * subscriptions are removed from the map so that they can be garbage
@@ -84,29 +172,75 @@ final class PublishingDispatcherImpl implements PublishingDispatcher {
 	 */
 	private final ConcurrentMap<Long, Subscription> subscriptions;
 
+	/**
+	 * Subscriptions created with an {@link ActionClassPredicate}, indexed by
+	 * the name of the class they match. Each set is immutable, and is replaced
+	 * whenever a subscription is added or removed, so that publishing never
+	 * needs a lock to read it.
+	 */
+	private final ConcurrentMap<String, ImmutableSet<Subscription>> classIndex;
+
+	/**
+	 * Subscriptions created with an {@link EqualActionPredicate}, indexed by
+	 * the action they match, in the same manner as {@link #classIndex}.
+	 */
+	private final ConcurrentMap<Action<?>, ImmutableSet<Subscription>> actionIndex;
+
+	/**
+	 * Subscriptions created with any other predicate, keyed by subscription
+	 * ID. Every published result must be tested against each of these.
+	 */
+	private final ConcurrentMap<Long, Subscription> unindexed;
+
 	/**
 	 * The next unique subscription ID which should be assigned.
 	 */
 	private final AtomicLong nextSubscriptionId;
 
+	/**
+	 * A map of mergeable actions which are currently executing to their
+	 * executions. Equal actions executed concurrently follow the execution in
+	 * this map rather than executing again. Executions are removed from the
+	 * map as soon as they finish.
+	 */
+	private final ConcurrentMap<MergeableAction<?>, MergedExecution<?>> merged;
+
+	/**
+	 * The metrics to which executions and published results are recorded.
+	 */
+	private final DispatcherMetrics metrics;
+
 	/**
 	 * Constructs a new {@code DispatcherImpl}, using the specified
-	 * {@link Injector} to obtain action handlers and the specified provider to
-	 * obtain {@code AsyncContext} instances.
+	 * {@link HandlerRegistry} to obtain action handlers and the specified
+	 * providers to obtain {@code AsyncContext} and request instances.
 	 * 
-	 * @param injector
-	 *            the injector to use to obtain action handlers
+	 * @param registry
+	 *            the registry to use to obtain action handlers
+	 * @param metrics
+	 *            the metrics to which executions are recorded
 	 * @param contextProvider
 	 *            the provider to use to obtain active {@code AsyncContext}
 	 *            instances
+	 * @param requestProvider
+	 *            the provider to use to obtain the current request
 	 */
 	@Inject
-	private PublishingDispatcherImpl(Injector injector,
-			Provider<AsyncContext> contextProvider) {
-		this.injector = injector;
+	private PublishingDispatcherImpl(HandlerRegistry registry,
+			DispatcherMetrics metrics, Provider<AsyncContext> contextProvider,
+			Provider<HttpServletRequest> requestProvider) {
+		this.registry = registry;
+		this.metrics = metrics;
 		this.contextProvider = contextProvider;
+		this.requestProvider = requestProvider;
+		dispatching = new ThreadLocal<CancellationToken>();
+		actionExecutor = new ActionExecutor();
 		subscriptions = new MapMaker().makeMap();
+		classIndex = new MapMaker().makeMap();
+		actionIndex = new MapMaker().makeMap();
+		unindexed = new MapMaker().makeMap();
 		nextSubscriptionId = new AtomicLong();
+		merged = new MapMaker().makeMap();
 	}
 
 	/**
@@ -117,190 +251,2200 @@ final class PublishingDispatcherImpl implements PublishingDispatcher {
 	 * {@link ActionHandler} for the action, which it assumes was already bound
 	 * using {@link ActionModule#bindAction(Class)}. If no handler can be found,
 	 * {@link HandlerNotFoundException} is thrown.
+	 * <p>
+	 * 
+	 * If the action is instead bound to an {@link AsyncActionHandler}, the
+	 * current request is suspended using an {@link AsyncContext} and this method
+	 * returns {@code null} immediately, in the same manner as
+	 * {@link #check(long)}. Once the handler produces a complete result, the
+	 * request is dispatched again, and this method then returns that result.
+	 * When the action is executed from within another action, or outside of a
+	 * request which supports asynchronous processing, the calling thread waits
+	 * for the asynchronous handler instead.
+	 * <p>
 	 * 
+	 * If the action is a {@link TimedAction}, the action it wraps is executed
+	 * in its place, with a deadline computed from the timeout. Nested actions
+	 * inherit the deadline of the action within which they are executed.
+	 * <p>
+	 * 
+	 * If a result cache is configured and the action is a
+	 * {@link CacheableAction}, an unexpired cached result of an equal action is
+	 * returned without executing the action at all.
+	 * <p>
+	 * 
+	 * If rate limits are configured, the action is checked against them
+	 * before anything else is done with it, including looking up a cached
+	 * result or locating its handler. If an adaptive concurrency limit is
+	 * configured, actions executed directly by clients are rejected while the
+	 * limit is reached, unless their results are found in the cache.
+	 * 
+	 * @throws RateLimitExceededException
+	 *             if the action exceeds a configured rate limit
+	 * @throws ConcurrencyLimitException
+	 *             if the dispatcher's concurrency limit has been reached
 	 * @throws HandlerNotFoundException
 	 *             if no {@code ActionHandler} could be found for the action
+	 * @throws DeadlineExceededException
+	 *             if the deadline for the action passes before it is complete
 	 */
 	@Override
 	public <R extends Result> R execute(Action<R> action)
 			throws ActionException {
-		ActionHandler<Action<R>, R> handler = locateHandler(action);
-		if (handler != null) {
+		checkNotNull(action);
+		CancellationToken parent = dispatching.get();
+		boolean nested = (parent != null);
+		CancellationToken token;
+		if (action instanceof TimedAction) {
+			TimedAction<R> timedAction = (TimedAction<R>) action;
+			action = timedAction.getAction();
+			token = CancellationToken.create(parent, timedAction.getTimeout());
+		} else if (nested) {
+			token = parent;
+		} else {
+			token = CancellationToken.create();
+		}
+		dispatching.set(token);
+		try {
+			AsyncExecution<R> completed = (nested ? null : this
+					.<R> takeCompletedExecution());
+			ActionRecorder recorder = metrics.getRecorder(action);
+			long startTime = (completed == null ? System.nanoTime()
+					: completed.getStartTime());
+			ConcurrencyLimiter limiter = (nested ? null : registry
+					.getConcurrencyLimiter());
+			/*
+			 * Once the request is suspended, the permit belongs to the
+			 * execution, which returns it when it finishes; a resumed
+			 * execution therefore holds no permit.
+			 */
+			boolean limited = false;
 			R result;
-			do {
-				result = handler.execute(action);
-				for (Subscription subscription : subscriptions.values()) {
-					subscription.publish(action, result);
+			try {
+				if (completed != null) {
+					result = completed.getResult();
+					cacheResult(action, result);
+				} else if (token.isCancelled()) {
+					throw new DeadlineExceededException(action);
+				} else {
+					acquireRateLimit(action, nested);
+					result = getCachedResult(action);
+					if (result == null) {
+						if (limiter != null) {
+							if (!limiter.tryAcquire()) {
+								throw new ConcurrencyLimitException(action,
+										limiter.getLimit());
+							}
+							limited = true;
+						}
+						if (action instanceof MergeableAction) {
+							result = executeMerged((MergeableAction<R>) action,
+									nested, token);
+						} else {
+							result = dispatch(action, nested, token, null);
+						}
+						cacheResult(action, result);
+					}
 				}
-			} while (!result.isComplete());
+			} catch (ActionException ax) {
+				recorder.recordExecution(startTime, true);
+				if (limited) {
+					limiter.release(action.getClass(), System.nanoTime()
+							- startTime, isOverload(ax));
+				}
+				throw ax;
+			} catch (RuntimeException rx) {
+				recorder.recordExecution(startTime, true);
+				if (limited) {
+					limiter.release(action.getClass(), System.nanoTime()
+							- startTime, false);
+				}
+				throw rx;
+			} catch (Error e) {
+				recorder.recordExecution(startTime, true);
+				if (limited) {
+					limiter.release(action.getClass(), System.nanoTime()
+							- startTime, false);
+				}
+				throw e;
+			}
+			if (result != null) {
+				recorder.recordExecution(startTime, false);
+				if (limited) {
+					limiter.release(action.getClass(), System.nanoTime()
+							- startTime, false);
+				}
+			}
 			return result;
+		} finally {
+			if (nested) {
+				dispatching.set(parent);
+			} else {
+				dispatching.remove();
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether an action failed because the server, or a service on
+	 * which it depends, is overloaded, so that the concurrency limit should
+	 * be lowered.
+	 * 
+	 * @param caught
+	 *            the exception with which the action failed
+	 * @return {@code true} if the failure indicates overload; {@code false}
+	 *         otherwise
+	 */
+	private static boolean isOverload(Throwable caught) {
+		return (caught instanceof ActionRejectedException
+				|| caught instanceof DeadlineExceededException);
+	}
+
+	/**
+	 * Checks the specified action against any configured rate limits. Limits
+	 * which apply to each client separately are only checked for actions
+	 * executed directly by clients, since nested actions may run on threads
+	 * outside the client's request.
+	 * 
+	 * @param action
+	 *            the action to check
+	 * @param nested
+	 *            whether the action is being executed from within another
+	 *            action
+	 * @throws RateLimitExceededException
+	 *             if the action exceeds a configured rate limit
+	 */
+	private void acquireRateLimit(Action<?> action, boolean nested)
+			throws RateLimitExceededException {
+		RateLimiter rateLimiter = registry.getRateLimiter();
+		if (rateLimiter != null) {
+			rateLimiter.acquire(action, (nested ? null : getClient()));
+		}
+	}
+
+	/**
+	 * Identifies the client which made the current request, by its
+	 * authenticated user name if there is one, or otherwise by its HTTP
+	 * session or address.
+	 * 
+	 * @return a key identifying the client, or {@code null} if there is no
+	 *         current request
+	 */
+	private String getClient() {
+		HttpServletRequest request = getRequest();
+		if (request == null) {
+			return null;
+		} else if (request.getRemoteUser() != null) {
+			return "user:" + request.getRemoteUser();
+		}
+		HttpSession session = request.getSession(false);
+		if (session != null) {
+			return "session:" + session.getId();
 		} else {
-			throw new HandlerNotFoundException(action);
+			return "address:" + request.getRemoteAddr();
 		}
 	}
 
 	/**
-	 * Locates the handler required to execute the specified action. The handler
-	 * is located with the assumption that it was already bound using
-	 * {@link ActionModule#bindAction(Class)}. If no handler can be found, the
-	 * result is {@code null}.
+	 * Returns an unexpired cached result for the specified action, if a result
+	 * cache is configured and the action is a {@link CacheableAction}.
 	 * 
 	 * @param action
-	 *            the action to execute
-	 * @return an {@code ActionHandler} bound to execute the action, or
-	 *         {@code null} if none could be located
-	 */
-	/*
-	 * See the implementation comment for ActionModule.bindAction(Class).
-	 */
-	/*
-	 * Warnings are suppressed because generics are essentially ignored by
-	 * Guice's classes. All keys and bindings for Action are treated as if there
-	 * were no type parameter; no distinction is made between actions with
-	 * different type parameters. The only place where the warning would be
-	 * relevant is in the return statement, where an ActionHandler without type
-	 * parameters is implicitly converted to an ActionHandler<A, R>. However,
-	 * the implementation of ActionModule.bindAction(Class) ensures that this
-	 * conversion is always valid.
-	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private <A extends Action<R>, R extends Result> ActionHandler<A, R> locateHandler(
-			A action) {
-		Annotation annotation = null;
-		List<Binding<Action>> bindings = injector
-				.findBindingsByType(TypeLiteral.get(Action.class));
-		for (Binding<Action> binding : bindings) {
-			LinkedKeyBinding<Action> linkedBinding = (LinkedKeyBinding<Action>) binding;
-			Key<? extends Action> linkedKey = linkedBinding.getLinkedKey();
-			if (linkedKey.getTypeLiteral().getRawType() == action.getClass()) {
-				annotation = linkedBinding.getKey().getAnnotation();
-			}
-		}
-
-		if (annotation != null) {
-			Key<ActionHandler> key = Key.get(ActionHandler.class, annotation);
-			return injector.getInstance(key);
+	 *            the action to look up
+	 * @return a cached result for the action, or {@code null} if none exists
+	 */
+	private <R extends Result> R getCachedResult(Action<R> action) {
+		ResultCache cache = registry.getResultCache();
+		if (cache != null && action instanceof CacheableAction) {
+			return cache.get((CacheableAction<R>) action);
 		} else {
 			return null;
 		}
 	}
 
-	@Override
-	public long subscribe(Predicate<? super Action<?>> predicate) {
-		Subscription subscription = new Subscription(predicate);
-		long subscriptionId = nextSubscriptionId.getAndIncrement();
-		subscriptions.put(subscriptionId, subscription);
-		return subscriptionId;
+	/**
+	 * Stores the complete result of an action in the result cache, if one is
+	 * configured and the action is a {@link CacheableAction}.
+	 * 
+	 * @param action
+	 *            the action which was executed
+	 * @param result
+	 *            the complete result of the action, or {@code null} if the
+	 *            request was suspended
+	 */
+	private <R extends Result> void cacheResult(Action<R> action, R result) {
+		ResultCache cache = registry.getResultCache();
+		if (cache != null && result != null
+				&& action instanceof CacheableAction) {
+			cache.put((CacheableAction<R>) action, result);
+		}
 	}
 
-	@Override
-	public ImmutableList<Result> check(long subscriptionId) {
-		Subscription subscription = subscriptions.get(subscriptionId);
-		checkArgument(subscription != null);
-		return subscription.check();
+	/**
+	 * Returns the execution which the current request stored before it was
+	 * suspended, if the request has now been dispatched again because that
+	 * execution finished. The execution is removed from the request.
+	 * 
+	 * @return the finished execution, or {@code null} if the current request
+	 *         was not suspended for an execution
+	 */
+	private <R extends Result> AsyncExecution<R> takeCompletedExecution() {
+		HttpServletRequest request = getAsyncRequest();
+		if (request == null) {
+			return null;
+		}
+		AsyncExecution<?> completed = (AsyncExecution<?>) request
+				.getAttribute(AsyncExecution.ATTRIBUTE_NAME);
+		if (completed != null) {
+			request.removeAttribute(AsyncExecution.ATTRIBUTE_NAME);
+		}
+		/*
+		 * The request is only dispatched again for the execution it stored,
+		 * which was for this same action.
+		 */
+		@SuppressWarnings("unchecked")
+		AsyncExecution<R> execution = (AsyncExecution<R>) completed;
+		return execution;
 	}
 
-	@Override
-	public void cancel(long subscriptionId) {
-		Subscription subscription = subscriptions.remove(subscriptionId);
-		checkArgument(subscription != null);
-		subscription.cancel();
+	/**
+	 * Executes a {@link MergeableAction}, sharing a single execution among all
+	 * equal actions which are executed concurrently. The first such action
+	 * leads the execution, which proceeds exactly as for any other action.
+	 * Equal actions executed before it finishes follow the leading execution:
+	 * their requests are suspended, or their threads wait, until it finishes,
+	 * and they then receive its complete result or exception. Partial results
+	 * are published only once, by the leading execution.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @param nested
+	 *            whether the action is being executed from within another
+	 *            action
+	 * @param token
+	 *            the cancellation token for the execution
+	 * @return the complete result of the action, or {@code null} if the
+	 *         request was suspended
+	 * @throws ActionException
+	 *             if the action cannot be executed, or if its handler fails
+	 */
+	private <R extends Result> R executeMerged(MergeableAction<R> action,
+			boolean nested, CancellationToken token) throws ActionException {
+		MergedExecution<R> merged = new MergedExecution<R>(action);
+		MergedExecution<?> existing = merged.lead();
+		if (existing == null) {
+			R result;
+			try {
+				result = dispatch(action, nested, token, merged);
+			} catch (ActionException ax) {
+				merged.onFailure(ax);
+				throw ax;
+			} catch (RuntimeException rx) {
+				merged.onFailure(rx);
+				throw rx;
+			} catch (Error e) {
+				// otherwise, equal actions would wait for this one forever
+				merged.onFailure(e);
+				throw e;
+			}
+			if (result != null) {
+				merged.onSuccess(result);
+			}
+			return result;
+		} else {
+			/*
+			 * Only equal actions share an execution, and equal actions have
+			 * the same result type.
+			 */
+			@SuppressWarnings("unchecked")
+			MergedExecution<R> leader = (MergedExecution<R>) existing;
+			return executeAsync(action, leader, nested, token, null);
+		}
 	}
 
 	/**
-	 * Stores the state associated with a specific subscription.
+	 * Locates the handler for an action and executes it, on a bulkhead if the
+	 * action is assigned to one. The result is {@code null} if the current
+	 * request was suspended, as described in {@link #execute(Action)}.
 	 * 
-	 * @author Meyer Kizner
+	 * @param action
+	 *            the action to execute
+	 * @param nested
+	 *            whether the action is being executed from within another
+	 *            action
+	 * @param token
+	 *            the cancellation token for the execution
+	 * @param observer
+	 *            a callback to be notified of the outcome if the request is
+	 *            suspended, or {@code null}
+	 * @return the complete result of the action, or {@code null} if the
+	 *         request was suspended
+	 * @throws ActionException
+	 *             if the action cannot be executed, or if its handler fails
+	 */
+	private <R extends Result> R dispatch(Action<R> action, boolean nested,
+			CancellationToken token, AsyncCallback<? super R> observer)
+			throws ActionException {
+		StreamingActionHandler<Action<R>, R> handler = registry
+				.getHandler(action);
+		if (handler != null) {
+			Bulkhead bulkhead = registry.getBulkhead(action);
+			if (bulkhead == null && !nested) {
+				bulkhead = registry.getDefaultBulkhead();
+			}
+			if (bulkhead == null) {
+				return executeHandler(action, handler, token);
+			} else {
+				AsyncActionHandler<Action<R>, R> bulkheadHandler = new BulkheadHandler<R>(
+						handler, bulkhead, registry.getLoadShedder(bulkhead),
+						token);
+				return executeAsync(action, bulkheadHandler, nested, token,
+						observer);
+			}
+		}
+
+		AsyncActionHandler<Action<R>, R> asyncHandler = registry
+				.getAsyncHandler(action);
+		if (asyncHandler != null) {
+			return executeAsync(action, asyncHandler, nested, token,
+					observer);
+		} else {
+			throw new HandlerNotFoundException(action);
+		}
+	}
+
+	/**
+	 * Executes an action using a {@link StreamingActionHandler}, on the calling
+	 * thread. Partial results are published as the handler pushes them, and
+	 * the complete result is published once the handler returns it.
 	 * 
+	 * @param action
+	 *            the action to execute
+	 * @param handler
+	 *            the handler for the action
+	 * @param token
+	 *            the cancellation token for the execution
+	 * @return the complete result of the action
+	 * @throws ActionException
+	 *             if the handler throws an {@code ActionException}, or if the
+	 *             deadline for the action passes while it publishes partial
+	 *             results
+	 * @throws IllegalStateException
+	 *             if the handler returns a partial result
 	 */
-	private final class Subscription {
-		/**
-		 * Published results must originate from an action which matches this
-		 * predicate. Otherwise, the result is ignored by this subscription.
-		 */
-		private final Predicate<? super Action<?>> predicate;
+	private <R extends Result> R executeHandler(Action<R> action,
+			StreamingActionHandler<Action<R>, R> handler,
+			CancellationToken token) throws ActionException {
+		R result;
+		try {
+			result = handler.execute(action, new PublishingSink<R>(action,
+					token));
+		} catch (CancellationException cx) {
+			throw new DeadlineExceededException(action);
+		}
+		checkState(result.isComplete());
+		publish(action, result);
+		return result;
+	}
 
-		/**
-		 * A list of results which match the predicate and have been published,
-		 * but have not yet been sent to the client through the {@link #check()}
-		 * method.
-		 */
-		private final List<Result> published;
+	/**
+	 * Executes an action using an {@link AsyncActionHandler}. If possible, the
+	 * current request is suspended and {@code null} is returned; the request
+	 * will be dispatched again when the action is complete, at which point
+	 * {@link #execute(Action)} returns the result stored in the request
+	 * instead. Otherwise, the calling thread waits for the result. In either
+	 * case, the execution fails once its deadline passes.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @param handler
+	 *            the asynchronous handler for the action
+	 * @param nested
+	 *            whether the action is being executed from within another
+	 *            action
+	 * @param token
+	 *            the cancellation token for the execution
+	 * @param observer
+	 *            a callback to be notified of the outcome once the execution
+	 *            finishes, or {@code null}
+	 * @return the complete result of the action, or {@code null} if the
+	 *         request was suspended
+	 * @throws ActionException
+	 *             if the handler fails with an {@code ActionException}
+	 */
+	private <R extends Result> R executeAsync(Action<R> action,
+			AsyncActionHandler<Action<R>, R> handler, boolean nested,
+			CancellationToken token, AsyncCallback<? super R> observer)
+			throws ActionException {
+		HttpServletRequest request = (nested ? null : getAsyncRequest());
+		if (request != null) {
+			AsyncContext context = contextProvider.get();
+			AsyncExecution<R> execution = new AsyncExecution<R>(action,
+					handler, context, token, observer);
+			request.setAttribute(AsyncExecution.ATTRIBUTE_NAME, execution);
+			execution.start();
+			return null;
+		} else {
+			AsyncExecution<R> execution = new AsyncExecution<R>(action,
+					handler, null, token, observer);
+			execution.start();
+			return execution.getResult();
+		}
+	}
 
-		/**
-		 * The {@code AsyncContext} which is currently waiting for results to be
-		 * published. If no request is waiting, this field is {@code null}.
-		 */
-		private AsyncContext waiting;
+	/**
+	 * Returns the current request, if there is one and it may be suspended
+	 * using an {@link AsyncContext}.
+	 * 
+	 * @return the current request, or {@code null} if there is no current
+	 *         request or it does not support asynchronous processing
+	 */
+	private HttpServletRequest getAsyncRequest() {
+		HttpServletRequest request = getRequest();
+		return (request != null && request.isAsyncSupported() ? request : null);
+	}
 
-		/**
-		 * Constructs a new {@code Subscription} which uses the specified
-		 * predicate to determine which actions' results are to be included.
-		 * 
-		 * @param predicate
-		 *            a predicate to limit action results which are included
-		 */
-		private Subscription(Predicate<? super Action<?>> predicate) {
-			checkNotNull(predicate);
-			this.predicate = predicate;
-			published = Lists.newArrayList();
+	/**
+	 * Returns the current request, if there is one. Outside of a request, the
+	 * request scope throws an {@link OutOfScopeException}, which Guice wraps in
+	 * a {@link ProvisionException} when the scope is guice-servlet's.
+	 * 
+	 * @return the current request, or {@code null} if there is no current
+	 *         request
+	 */
+	private HttpServletRequest getRequest() {
+		try {
+			return requestProvider.get();
+		} catch (OutOfScopeException osx) {
+			return null;
+		} catch (ProvisionException px) {
+			if (px.getCause() instanceof OutOfScopeException) {
+				return null;
+			}
+			throw px;
 		}
+	}
 
-		/**
-		 * Indicates to this subscription object that the specified result has
-		 * been published as a result of the specified action. If the action
-		 * does not match this subscription's predicate, the result will be
-		 * ignored. If it does match, the result will be added to the list of
-		 * pending results, and if there is a request awaiting new results, it
-		 * will be awakened.
-		 * 
-		 * @param action
-		 *            the action whose execution resulted in {@code result}
-		 * @param result
-		 *            the result which was published
-		 */
-		private synchronized void publish(Action<?> action, Result result) {
-			if (predicate.apply(action)) {
-				published.add(result);
-				if (waiting != null) {
-					waiting.dispatch();
-					waiting = null;
+	/**
+	 * Returns the cancellation token of the action which the calling thread is
+	 * executing.
+	 * 
+	 * @return the current cancellation token
+	 * @throws IllegalStateException
+	 *             if the calling thread is not executing an action
+	 * @see ActionModule#getCancellationToken(PublishingDispatcherImpl)
+	 */
+	CancellationToken getCancellationToken() {
+		CancellationToken token = dispatching.get();
+		checkState(token != null);
+		return token;
+	}
+
+	/**
+	 * Returns an {@link Executor} on which handlers may run work on behalf of
+	 * the action they are executing. Tasks run on the executor are treated as
+	 * part of that action, so actions which they execute in turn are nested
+	 * within it and share its cancellation token. If the dispatcher was
+	 * configured with a default bulkhead, tasks are run on that bulkhead's
+	 * threads; otherwise, they are run directly on the calling thread. Tasks
+	 * submitted from one of the default bulkhead's own threads are also run
+	 * directly if the bulkhead is bounded, since a handler waiting for them
+	 * would otherwise hold a thread which they might need. If the bulkhead is
+	 * full, the executor throws a {@link java.util.concurrent.RejectedExecutionException}.
+	 * 
+	 * @return the executor for work performed on behalf of actions
+	 * @see ActionModule.ActionExecutor
+	 */
+	Executor getActionExecutor() {
+		return actionExecutor;
+	}
+
+	/**
+	 * Publishes a result to all active subscriptions whose predicates match
+	 * the action. If a {@link PublicationBus} is bound, the result is also
+	 * queued to be sent to the other nodes.
+	 * 
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result to publish
+	 */
+	private void publish(Action<?> action, Result result) {
+		if (!result.isComplete()) {
+			metrics.getRecorder(action).recordPartialResult();
+		}
+		fanOut(action, result);
+		PublicationBatcher batcher = registry.getPublicationBatcher();
+		if (batcher != null) {
+			batcher.add(new Publication(action, result));
+		}
+	}
+
+	/**
+	 * Delivers a batch of results published on another node to the local
+	 * subscriptions whose predicates match them. The results are not sent
+	 * back to the bus.
+	 * 
+	 * @param publications
+	 *            the publications received from another node
+	 */
+	void receive(List<Publication> publications) {
+		for (Publication publication : publications) {
+			fanOut(publication.getAction(), publication.getResult());
+		}
+	}
+
+	/**
+	 * Delivers a result to all active subscriptions on this node whose
+	 * predicates match the action. If a {@link PublishPipeline} is configured,
+	 * the result is handed to it and delivered later; otherwise, it is
+	 * delivered before this method returns.
+	 * 
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result to deliver
+	 */
+	private void fanOut(final Action<?> action, final Result result) {
+		PublishPipeline pipeline = registry.getPublishPipeline();
+		if (pipeline == null) {
+			deliver(action, result);
+		} else {
+			pipeline.publish(action, new Runnable() {
+				@Override
+				public void run() {
+					deliver(action, result);
 				}
+			});
+		}
+	}
+
+	/**
+	 * Delivers a result to every subscription whose predicate matches the
+	 * action. Indexed subscriptions are found by the action's class and
+	 * superclasses, and by the action itself, so that only those which might
+	 * match are considered; subscriptions with other predicates are all
+	 * tested. A subscription which fails to accept the result does not
+	 * prevent its delivery to the others.
+	 * 
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result to deliver
+	 */
+	private void deliver(Action<?> action, Result result) {
+		if (!classIndex.isEmpty()) {
+			for (Class<?> clazz = action.getClass(); clazz != null; clazz = clazz
+					.getSuperclass()) {
+				publish(classIndex.get(clazz.getName()), action, result);
 			}
 		}
+		if (!actionIndex.isEmpty()) {
+			publish(actionIndex.get(action), action, result);
+		}
+		for (Subscription subscription : unindexed.values()) {
+			deliver(subscription, action, result);
+		}
+	}
 
-		/**
-		 * Returns an {@code ImmutableList} containing all {@code Result}
-		 * objects which have been published but which have not yet been
-		 * returned through this method. However, if that list is empty, an
-		 * {@link AsyncContext} is created for the current request, and the
-		 * request is suspended until a result is published, the subscription is
-		 * canceled, or a new request takes the place of the current request in
-		 * awaiting results.
-		 * 
-		 * @return a list of {@code Result} objects which have been published
-		 *         but not yet sent
-		 */
-		private synchronized ImmutableList<Result> check() {
-			if (published.isEmpty()) {
-				if (waiting != null) {
-					waiting.complete();
-				}
-				waiting = contextProvider.get();
+	/**
+	 * Publishes a result to each of a set of indexed subscriptions.
+	 * 
+	 * @param indexed
+	 *            the subscriptions, or {@code null} if there are none
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result to publish
+	 */
+	private static void publish(ImmutableSet<Subscription> indexed,
+			Action<?> action, Result result) {
+		if (indexed != null) {
+			for (Subscription subscription : indexed) {
+				deliver(subscription, action, result);
 			}
-			ImmutableList<Result> toReturn = ImmutableList.copyOf(published);
-			published.clear();
-			return toReturn;
+		}
+	}
+
+	/**
+	 * Publishes a result to a single subscription. If the subscription throws
+	 * an exception or error, for example from its predicate, it is logged
+	 * rather than propagated, so that only that subscription misses the
+	 * result.
+	 * 
+	 * @param subscription
+	 *            the subscription
+	 * @param action
+	 *            the action whose execution resulted in {@code result}
+	 * @param result
+	 *            the result to publish
+	 */
+	private static void deliver(Subscription subscription, Action<?> action,
+			Result result) {
+		try {
+			subscription.publish(action, result);
+		} catch (RuntimeException rx) {
+			logDeliveryFailure(action, rx);
+		} catch (Error e) {
+			logDeliveryFailure(action, e);
+		}
+	}
+
+	/**
+	 * Logs the failure of {@link #deliver(Subscription, Action, Result)}.
+	 * 
+	 * @param action
+	 *            the action whose result could not be delivered
+	 * @param t
+	 *            the exception or error thrown by the subscription
+	 */
+	private static void logDeliveryFailure(Action<?> action, Throwable t) {
+		LOGGER.log(Level.WARNING, "could not deliver a result of "
+				+ action.getClass().getName() + " to a subscription", t);
+	}
+
+	/**
+	 * Adds a subscription to the appropriate index for its predicate, or to
+	 * the unindexed subscriptions.
+	 * 
+	 * @param subscriptionId
+	 *            the ID of the subscription
+	 * @param subscription
+	 *            the subscription to add
+	 */
+	private void index(long subscriptionId, Subscription subscription) {
+		Predicate<? super Action<?>> predicate = subscription.getPredicate();
+		if (predicate instanceof ActionClassPredicate) {
+			addToIndex(classIndex,
+					((ActionClassPredicate) predicate).getClassName(),
+					subscription);
+		} else if (predicate instanceof EqualActionPredicate) {
+			addToIndex(actionIndex,
+					((EqualActionPredicate) predicate).getAction(),
+					subscription);
+		} else {
+			unindexed.put(subscriptionId, subscription);
+		}
+	}
+
+	/**
+	 * Removes a subscription from the index to which it was added by
+	 * {@link #index(long, Subscription)}.
+	 * 
+	 * @param subscriptionId
+	 *            the ID of the subscription
+	 * @param subscription
+	 *            the subscription to remove
+	 */
+	private void unindex(long subscriptionId, Subscription subscription) {
+		Predicate<? super Action<?>> predicate = subscription.getPredicate();
+		if (predicate instanceof ActionClassPredicate) {
+			removeFromIndex(classIndex,
+					((ActionClassPredicate) predicate).getClassName(),
+					subscription);
+		} else if (predicate instanceof EqualActionPredicate) {
+			removeFromIndex(actionIndex,
+					((EqualActionPredicate) predicate).getAction(),
+					subscription);
+		} else {
+			unindexed.remove(subscriptionId);
+		}
+	}
+
+	/**
+	 * Adds a subscription to the set for a key in an index, replacing the set
+	 * atomically.
+	 * 
+	 * @param index
+	 *            the index to update
+	 * @param key
+	 *            the key under which to add the subscription
+	 * @param subscription
+	 *            the subscription to add
+	 */
+	private static <K> void addToIndex(
+			ConcurrentMap<K, ImmutableSet<Subscription>> index, K key,
+			Subscription subscription) {
+		while (true) {
+			ImmutableSet<Subscription> current = index.get(key);
+			if (current == null) {
+				if (index.putIfAbsent(key, ImmutableSet.of(subscription)) == null) {
+					return;
+				}
+			} else {
+				ImmutableSet<Subscription> updated = ImmutableSet
+						.<Subscription> builder().addAll(current)
+						.add(subscription).build();
+				if (index.replace(key, current, updated)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a subscription from the set for a key in an index, replacing
+	 * the set atomically. The key is removed once its set is empty.
+	 * 
+	 * @param index
+	 *            the index to update
+	 * @param key
+	 *            the key under which the subscription was added
+	 * @param subscription
+	 *            the subscription to remove
+	 */
+	private static <K> void removeFromIndex(
+			ConcurrentMap<K, ImmutableSet<Subscription>> index, K key,
+			Subscription subscription) {
+		while (true) {
+			ImmutableSet<Subscription> current = index.get(key);
+			if (current == null || !current.contains(subscription)) {
+				return;
+			}
+			ImmutableSet<Subscription> updated = ImmutableSet.copyOf(Sets
+					.difference(current, ImmutableSet.of(subscription)));
+			if (updated.isEmpty() ? index.remove(key, current) : index
+					.replace(key, current, updated)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the total number of results waiting to be checked in all active
+	 * subscriptions. Subscriptions are not locked, so the total is
+	 * approximate while results are being published.
+	 * 
+	 * @return the total backlog size
+	 * @see DispatcherMetrics#getTotalBacklogSize()
+	 */
+	long getTotalBacklogSize() {
+		long total = 0;
+		for (Subscription subscription : subscriptions.values()) {
+			total += subscription.getBacklogSize();
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the largest number of results waiting to be checked in any
+	 * active subscription, in the same manner as
+	 * {@link #getTotalBacklogSize()}.
+	 * 
+	 * @return the largest backlog size, or {@code 0} if there are no
+	 *         subscriptions
+	 * @see DispatcherMetrics#getMaxBacklogSize()
+	 */
+	int getMaxBacklogSize() {
+		int max = 0;
+		for (Subscription subscription : subscriptions.values()) {
+			max = Math.max(max, subscription.getBacklogSize());
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of active subscriptions.
+	 * 
+	 * @return the number of active subscriptions
+	 * @see DispatcherMetrics#getSubscriptionCount()
+	 */
+	int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	@Override
+	public long subscribe(Predicate<? super Action<?>> predicate) {
+		return subscribe(predicate, false);
+	}
+
+	@Override
+	public long subscribe(Predicate<? super Action<?>> predicate,
+			boolean conflate) {
+		Subscription subscription = new Subscription(predicate, conflate,
+				registry.getBacklogLimit());
+		long subscriptionId = nextSubscriptionId.getAndIncrement();
+		subscriptions.put(subscriptionId, subscription);
+		index(subscriptionId, subscription);
+		SubscriptionLease lease = registry.getSubscriptionLease();
+		if (lease != null) {
+			lease.schedule(new LeaseExpiry(subscriptionId, subscription),
+					lease.getTtl());
+		}
+		return subscriptionId;
+	}
+
+	@Override
+	public ImmutableList<Result> check(long subscriptionId) {
+		Subscription subscription = subscriptions.get(subscriptionId);
+		checkArgument(subscription != null);
+		ImmutableList<Result> results = subscription.poll();
+		if (results.isEmpty()) {
+			subscription.await(new RequestWaiter(contextProvider.get()));
+		} else {
+			removeIfTerminated(subscriptionId, subscription, results);
+		}
+		return results;
+	}
+
+	@Override
+	public ImmutableMap<Long, ImmutableList<Result>> check(
+			ImmutableSet<Long> subscriptionIds) {
+		checkArgument(!subscriptionIds.isEmpty());
+		Map<Long, Subscription> checked = Maps.newLinkedHashMap();
+		for (Long subscriptionId : subscriptionIds) {
+			Subscription subscription = subscriptions.get(subscriptionId);
+			checkArgument(subscription != null);
+			checked.put(subscriptionId, subscription);
+		}
+		ImmutableMap.Builder<Long, ImmutableList<Result>> builder = ImmutableMap
+				.builder();
+		boolean empty = true;
+		for (Map.Entry<Long, Subscription> entry : checked.entrySet()) {
+			ImmutableList<Result> results = entry.getValue().poll();
+			if (!results.isEmpty()) {
+				builder.put(entry.getKey(), results);
+				removeIfTerminated(entry.getKey(), entry.getValue(), results);
+				empty = false;
+			}
+		}
+		if (empty) {
+			Waiter waiter = new RequestWaiter(contextProvider.get());
+			for (Subscription subscription : checked.values()) {
+				subscription.await(waiter);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Pushes the results of a subscription to a stream as they are published,
+	 * instead of returning them from checks. Any results already pending are
+	 * written at once. Streaming continues until the subscription is
+	 * canceled, expires or is terminated, or until it is checked by another
+	 * request or stream, which takes its place, or until the stream is
+	 * closed. The subscription's lease is renewed for as long as the stream
+	 * remains open, whether or not it receives any results.
+	 * 
+	 * @param subscriptionId
+	 *            the subscription ID to stream
+	 * @param stream
+	 *            the stream to which results are written
+	 * @throws IllegalArgumentException
+	 *             if {@code subscriptionId} is invalid
+	 * @see SubscriptionStreamServlet
+	 */
+	void stream(long subscriptionId, final ResultStream stream) {
+		checkNotNull(stream);
+		final Subscription subscription = subscriptions.get(subscriptionId);
+		checkArgument(subscription != null);
+		final AtomicBoolean closed = new AtomicBoolean();
+		stream.addCloseListener(new Runnable() {
+			@Override
+			public void run() {
+				closed.set(true);
+				subscription.removeStream(stream);
+			}
+		});
+		new StreamWaiter(subscriptionId, subscription, stream, closed)
+				.dispatch();
+	}
+
+	/**
+	 * Removes a subscription which has just reported its termination on
+	 * overflow. Until then, the subscription remains valid, so that the
+	 * client is able to learn why it ended.
+	 * 
+	 * @param subscriptionId
+	 *            the ID of the subscription
+	 * @param subscription
+	 *            the subscription
+	 * @param results
+	 *            the results just returned by the subscription
+	 */
+	private void removeIfTerminated(long subscriptionId,
+			Subscription subscription, List<Result> results) {
+		if (results.get(0) instanceof OverflowResult
+				&& ((OverflowResult) results.get(0)).isTerminated()) {
+			if (subscriptions.remove(subscriptionId, subscription)) {
+				unindex(subscriptionId, subscription);
+			}
+		}
+	}
+
+	@Override
+	public void cancel(long subscriptionId) {
+		Subscription subscription = subscriptions.remove(subscriptionId);
+		checkArgument(subscription != null);
+		unindex(subscriptionId, subscription);
+		subscription.cancel();
+	}
+
+	/**
+	 * Something waiting for results from one or more subscriptions. A single
+	 * waiter may be registered with several subscriptions at once, so it
+	 * ensures that it is dispatched or completed only once, by whichever
+	 * subscription releases it first.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private abstract static class Waiter {
+		/**
+		 * Set once the waiter has been dispatched or completed.
+		 */
+		private final AtomicBoolean released;
+
+		private Waiter() {
+			released = new AtomicBoolean();
+		}
+
+		/**
+		 * Indicates that results are available, unless the waiter has already
+		 * been released.
+		 */
+		final void dispatch() {
+			if (released.compareAndSet(false, true)) {
+				onDispatch();
+			}
+		}
+
+		/**
+		 * Indicates that no results will be delivered, unless the waiter has
+		 * already been released.
+		 */
+		final void complete() {
+			if (released.compareAndSet(false, true)) {
+				onComplete();
+			}
+		}
+
+		/**
+		 * Returns whether the waiter is still waiting, having been neither
+		 * released nor abandoned by its client. A subscription with such a
+		 * waiter is not expired by its lease.
+		 * 
+		 * @return {@code true} if the waiter is still waiting
+		 */
+		final boolean isWaiting() {
+			return !released.get() && isOpen();
+		}
+
+		/**
+		 * @return {@code false} if the client has gone, so that the waiter
+		 *         will never be released by it
+		 */
+		abstract boolean isOpen();
+
+		/**
+		 * Called at most once, when results are available.
+		 */
+		abstract void onDispatch();
+
+		/**
+		 * Called at most once, when no results will be delivered.
+		 */
+		abstract void onComplete();
+	}
+
+	/**
+	 * A suspended request waiting in {@link PublishingDispatcher#check(long)}
+	 * or {@link PublishingDispatcher#check(ImmutableSet)}. When results are
+	 * available, the request is dispatched so that it checks again. The
+	 * waiter listens to the request, so that it stops counting as waiting
+	 * once the request times out.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private static final class RequestWaiter extends Waiter implements
+			AsyncListener {
+		/**
+		 * The context of the waiting request, or {@code null} if there is no
+		 * request to suspend.
+		 */
+		private final AsyncContext context;
+
+		/**
+		 * Set once the request has completed, timed out or failed.
+		 */
+		private volatile boolean ended;
+
+		private RequestWaiter(AsyncContext context) {
+			this.context = context;
+			if (context != null) {
+				context.addListener(this);
+			}
+		}
+
+		@Override
+		boolean isOpen() {
+			return context != null && !ended;
+		}
+
+		@Override
+		void onDispatch() {
+			if (context != null) {
+				context.dispatch();
+			}
+		}
+
+		@Override
+		void onComplete() {
+			if (context != null) {
+				context.complete();
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			ended = true;
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			ended = true;
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			ended = true;
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+
+	/**
+	 * A {@link ResultStream} waiting for results from a subscription. When
+	 * results are available, they are written to the stream on a thread of
+	 * its choosing, and a new waiter takes this one's place.
+	 * 
+	 * @author Meyer Kizner
+	 * @see #stream(long, ResultStream)
+	 * 
+	 */
+	private final class StreamWaiter extends Waiter {
+		/**
+		 * The ID of the subscription being streamed.
+		 */
+		private final long subscriptionId;
+
+		/**
+		 * The subscription being streamed.
+		 */
+		private final Subscription subscription;
+
+		/**
+		 * The stream to which results are written.
+		 */
+		private final ResultStream stream;
+
+		/**
+		 * Set once the stream has been closed. Shared by every waiter for the
+		 * stream.
+		 */
+		private final AtomicBoolean closed;
+
+		private StreamWaiter(long subscriptionId, Subscription subscription,
+				ResultStream stream, AtomicBoolean closed) {
+			this.subscriptionId = subscriptionId;
+			this.subscription = subscription;
+			this.stream = stream;
+			this.closed = closed;
+		}
+
+		@Override
+		boolean isOpen() {
+			return !closed.get();
+		}
+
+		@Override
+		void onDispatch() {
+			stream.execute(new Runnable() {
+				@Override
+				public void run() {
+					deliver();
+				}
+			});
+		}
+
+		@Override
+		void onComplete() {
+			stream.close();
+		}
+
+		/**
+		 * Writes any pending results to the stream, and waits for more if the
+		 * subscription is still active.
+		 */
+		private void deliver() {
+			ImmutableList<Result> results = subscription.poll();
+			if (!results.isEmpty()) {
+				removeIfTerminated(subscriptionId, subscription, results);
+				if (!stream.write(results)) {
+					return;
+				}
+			}
+			if (subscriptions.get(subscriptionId) == subscription) {
+				subscription.await(new StreamWaiter(subscriptionId,
+						subscription, stream, closed));
+				// the stream may have closed before the new waiter was visible
+				if (closed.get()) {
+					subscription.removeStream(stream);
+				}
+			} else {
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * Expires a subscription whose lease has ended without a check. When the
+	 * lease was renewed in the meantime, the expiry is rescheduled for the end
+	 * of the renewed lease instead. A subscription which a request or stream
+	 * is still waiting on has its lease renewed, since its client is plainly
+	 * still there. Subscriptions which have already been cancelled are
+	 * ignored, since the timing wheel cannot remove tasks.
+	 * 
+	 * @author Meyer Kizner
+	 * @see ActionModule#bindSubscriptionLease(long)
+	 * 
+	 */
+	private final class LeaseExpiry implements Runnable {
+		/**
+		 * The ID of the subscription to expire.
+		 */
+		private final long subscriptionId;
+
+		/**
+		 * The subscription to expire, compared by identity with the current
+		 * mapping for its ID.
+		 */
+		private final Subscription subscription;
+
+		private LeaseExpiry(long subscriptionId, Subscription subscription) {
+			this.subscriptionId = subscriptionId;
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void run() {
+			if (subscriptions.get(subscriptionId) != subscription) {
+				return;
+			}
+			SubscriptionLease lease = registry.getSubscriptionLease();
+			long remaining = subscription.getLastChecked() + lease.getTtl()
+					- System.nanoTime();
+			if (remaining > 0) {
+				lease.schedule(this, remaining);
+			} else if (subscription.isAwaited()) {
+				subscription.renew();
+				lease.schedule(this, lease.getTtl());
+			} else if (subscriptions.remove(subscriptionId, subscription)) {
+				unindex(subscriptionId, subscription);
+				subscription.cancel();
+			}
+		}
+	}
+
+	/**
+	 * The executor returned by {@link PublishingDispatcherImpl#getActionExecutor()}.
+	 * Each task is marked as executing within the submitting thread's action
+	 * for the duration of its execution.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class ActionExecutor implements Executor {
+		@Override
+		public void execute(final Runnable task) {
+			checkNotNull(task);
+			CancellationToken current = dispatching.get();
+			final CancellationToken token = (current == null ? CancellationToken
+					.create() : current);
+			Runnable actionTask = new Runnable() {
+				@Override
+				public void run() {
+					CancellationToken previous = dispatching.get();
+					dispatching.set(token);
+					try {
+						task.run();
+					} finally {
+						if (previous != null) {
+							dispatching.set(previous);
+						} else {
+							dispatching.remove();
+						}
+					}
+				}
+			};
+
+			Bulkhead bulkhead = registry.getDefaultBulkhead();
+			if (bulkhead == null
+					|| (bulkhead.isBounded() && bulkhead.isCurrent())) {
+				// a task waiting on its own bounded bulkhead could deadlock
+				actionTask.run();
+			} else {
+				bulkhead.execute(actionTask);
+			}
+		}
+	}
+
+	/**
+	 * Tracks a single execution of an action by an {@link AsyncActionHandler}.
+	 * The execution serves as the handler's callback, publishing partial
+	 * results and re-invoking the handler until a complete result is obtained.
+	 * If an {@link AsyncContext} is supplied, the suspended request is then
+	 * dispatched again so that it can retrieve the result; otherwise, the
+	 * result is retrieved by a thread waiting in {@link #getResult()}.
+	 * <p>
+	 * 
+	 * The execution fails with a {@link DeadlineExceededException} if its
+	 * deadline passes, or if the suspended request times out, before a
+	 * complete result is obtained. Any result the handler produces afterwards
+	 * is ignored.
+	 * <p>
+	 * 
+	 * If a concurrency limit is configured, an execution which suspends a
+	 * request holds the permit taken for it, and returns the permit as soon as
+	 * it finishes, whether or not the request is ever dispatched again.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class AsyncExecution<R extends Result> implements
+			AsyncCallback<R>, AsyncListener {
+		/**
+		 * The name of the request attribute in which the execution is stored
+		 * while the request is suspended.
+		 */
+		static final String ATTRIBUTE_NAME = "com.prealpha.xylophone.server.AsyncExecution";
+
+		/**
+		 * The action being executed.
+		 */
+		private final Action<R> action;
+
+		/**
+		 * The handler executing the action.
+		 */
+		private final AsyncActionHandler<Action<R>, R> handler;
+
+		/**
+		 * The context for the suspended request, or {@code null} if a thread is
+		 * waiting for the result instead.
+		 */
+		private final AsyncContext context;
+
+		/**
+		 * The cancellation token for the execution.
+		 */
+		private final CancellationToken token;
+
+		/**
+		 * A callback to be notified of the outcome once the execution
+		 * finishes, or {@code null}.
+		 */
+		private final AsyncCallback<? super R> observer;
+
+		/**
+		 * The time at which the execution was created, as given by
+		 * {@link System#nanoTime()}.
+		 */
+		private final long startTime;
+
+		/**
+		 * Set once the execution has either succeeded or failed, so that only
+		 * the first outcome is recorded.
+		 */
+		private final AtomicBoolean finished;
+
+		/**
+		 * Released once the outcome of the execution has been recorded.
+		 */
+		private final CountDownLatch done;
+
+		/**
+		 * The complete result of the action, if it was successful.
+		 */
+		private volatile R result;
+
+		/**
+		 * The exception with which the action failed, if it was unsuccessful.
+		 */
+		private volatile Throwable caught;
+
+		/**
+		 * Constructs a new {@code AsyncExecution} for the specified action. If
+		 * a context is supplied, the execution listens for the suspended
+		 * request to time out, and the request's timeout is limited to the
+		 * execution's deadline.
+		 * 
+		 * @param action
+		 *            the action to execute
+		 * @param handler
+		 *            the handler to execute the action
+		 * @param context
+		 *            the context for the suspended request, or {@code null} if
+		 *            no request is suspended
+		 * @param token
+		 *            the cancellation token for the execution
+		 * @param observer
+		 *            a callback to be notified of the outcome once the
+		 *            execution finishes, or {@code null}
+		 */
+		private AsyncExecution(Action<R> action,
+				AsyncActionHandler<Action<R>, R> handler, AsyncContext context,
+				CancellationToken token, AsyncCallback<? super R> observer) {
+			this.action = action;
+			this.handler = handler;
+			this.context = context;
+			this.token = token;
+			this.observer = observer;
+			startTime = System.nanoTime();
+			finished = new AtomicBoolean();
+			done = new CountDownLatch(1);
+			if (context != null) {
+				context.addListener(this);
+				if (token.hasDeadline()) {
+					context.setTimeout(Math.max(1L,
+							token.getRemaining(TimeUnit.MILLISECONDS)));
+				}
+			}
+		}
+
+		/**
+		 * Invokes the handler to begin execution, unless the execution has
+		 * already been cancelled.
+		 */
+		private void start() {
+			if (token.isCancelled()) {
+				onFailure(new DeadlineExceededException(action));
+				return;
+			}
+			try {
+				handler.execute(action, this);
+			} catch (RuntimeException rx) {
+				onFailure(rx);
+			} catch (Error e) {
+				onFailure(e);
+			}
+		}
+
+		@Override
+		public void onSuccess(R result) {
+			if (finished.get()) {
+				return;
+			}
+			/*
+			 * A merged execution delivers only the complete result, which its
+			 * leading execution has already published.
+			 */
+			if (!(handler instanceof MergedExecution)) {
+				publish(action, result);
+			}
+			if (result.isComplete()) {
+				finish(result, null);
+			} else {
+				start();
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable caught) {
+			finish(null, caught);
+		}
+
+		/**
+		 * Records the outcome of the execution, unless one has already been
+		 * recorded, and wakes the thread or request awaiting the result.
+		 * 
+		 * @param result
+		 *            the complete result of the action, or {@code null} if it
+		 *            failed
+		 * @param caught
+		 *            the exception with which the action failed, or
+		 *            {@code null} if it was successful
+		 */
+		private void finish(R result, Throwable caught) {
+			if (finished.compareAndSet(false, true)) {
+				this.result = result;
+				this.caught = caught;
+				done.countDown();
+				if (context != null) {
+					ConcurrencyLimiter limiter = registry
+							.getConcurrencyLimiter();
+					if (limiter != null) {
+						limiter.release(action.getClass(), System.nanoTime()
+								- startTime, isOverload(caught));
+					}
+					context.dispatch();
+				}
+				if (observer != null) {
+					if (caught == null) {
+						observer.onSuccess(result);
+					} else {
+						observer.onFailure(caught);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			token.cancel();
+			onFailure(new DeadlineExceededException(action));
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			token.cancel();
+			onFailure(event.getThrowable());
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+
+		/**
+		 * @return the time at which the execution was created, as given by
+		 *         {@link System#nanoTime()}
+		 */
+		private long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Returns the complete result of the action, waiting for the execution
+		 * to finish if necessary. If the handler failed, the exception is
+		 * rethrown instead. If the deadline passes while waiting, the execution
+		 * is cancelled and fails.
+		 * 
+		 * @return the complete result of the action
+		 * @throws ActionException
+		 *             if the handler failed with an {@code ActionException},
+		 *             if the deadline passed, or if the wait was interrupted
+		 */
+		private R getResult() throws ActionException {
+			try {
+				if (!done.await(token.getRemaining(TimeUnit.NANOSECONDS),
+						TimeUnit.NANOSECONDS)) {
+					token.cancel();
+					onFailure(new DeadlineExceededException(action));
+					done.await();
+				}
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				throw new ActionException(ix);
+			}
+			if (caught == null) {
+				return result;
+			} else if (caught instanceof ActionException) {
+				throw (ActionException) caught;
+			} else if (caught instanceof RuntimeException) {
+				throw (RuntimeException) caught;
+			} else if (caught instanceof Error) {
+				throw (Error) caught;
+			} else {
+				throw new ActionException(caught);
+			}
+		}
+	}
+
+	/**
+	 * Adapts a {@link StreamingActionHandler} to run on the threads of a
+	 * {@link Bulkhead}, so that it can be executed like any other
+	 * {@link AsyncActionHandler}. Partial results are published from the
+	 * bulkhead's thread, so that the action occupies only a single slot in the
+	 * bulkhead for its entire execution. An action whose deadline passes while
+	 * it waits in the bulkhead's queue is never started, and if load shedding
+	 * is configured, an action which the bulkhead's {@link LoadShedder} sheds
+	 * as it leaves the queue fails with a {@link LoadShedException}.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class BulkheadHandler<R extends Result> implements
+			AsyncActionHandler<Action<R>, R> {
+		/**
+		 * The handler which actually executes the action.
+		 */
+		private final StreamingActionHandler<Action<R>, R> handler;
+
+		/**
+		 * The bulkhead on which the handler is executed.
+		 */
+		private final Bulkhead bulkhead;
+
+		/**
+		 * The load shedder for the bulkhead's queue, or {@code null}.
+		 */
+		private final LoadShedder shedder;
+
+		/**
+		 * The cancellation token for the execution.
+		 */
+		private final CancellationToken token;
+
+		/**
+		 * Constructs a new {@code BulkheadHandler}.
+		 * 
+		 * @param handler
+		 *            the handler which executes the action
+		 * @param bulkhead
+		 *            the bulkhead on which to execute the handler
+		 * @param shedder
+		 *            the load shedder for the bulkhead's queue, or
+		 *            {@code null} if load is not shed
+		 * @param token
+		 *            the cancellation token for the execution
+		 */
+		private BulkheadHandler(StreamingActionHandler<Action<R>, R> handler,
+				Bulkhead bulkhead, LoadShedder shedder, CancellationToken token) {
+			this.handler = handler;
+			this.bulkhead = bulkhead;
+			this.shedder = shedder;
+			this.token = token;
+		}
+
+		@Override
+		public void execute(final Action<R> action,
+				final AsyncCallback<R> callback) {
+			final long enqueueTime = System.nanoTime();
+			try {
+				bulkhead.execute(action, new Runnable() {
+					@Override
+					public void run() {
+						R result;
+						dispatching.set(token);
+						try {
+							if (token.isCancelled()) {
+								throw new DeadlineExceededException(action);
+							} else if (shedder != null
+									&& shedder.shouldShed(System.nanoTime()
+											- enqueueTime)) {
+								throw new LoadShedException(action);
+							}
+							result = handler.execute(action,
+									new PublishingSink<R>(action, token));
+							checkState(result.isComplete());
+						} catch (CancellationException cx) {
+							callback.onFailure(new DeadlineExceededException(
+									action));
+							return;
+						} catch (ActionException ax) {
+							callback.onFailure(ax);
+							return;
+						} catch (RuntimeException rx) {
+							callback.onFailure(rx);
+							return;
+						} catch (Error e) {
+							/*
+							 * Otherwise, the suspended request or waiting
+							 * thread would never learn that the action ended.
+							 */
+							callback.onFailure(e);
+							return;
+						} finally {
+							dispatching.remove();
+						}
+						callback.onSuccess(result);
+					}
+				});
+			} catch (BulkheadFullException bfx) {
+				callback.onFailure(bfx);
+			}
+		}
+	}
+
+	/**
+	 * The shared execution of equal {@link MergeableAction}s. The leading
+	 * execution reports its outcome to this object, as an
+	 * {@link AsyncCallback}; following executions use this object as their
+	 * {@link AsyncActionHandler}, and receive that outcome once it is
+	 * available. The execution is removed from the map of merged executions
+	 * before the outcome is delivered, so that an equal action executed
+	 * afterwards is executed again.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class MergedExecution<R extends Result> implements
+			AsyncCallback<R>, AsyncActionHandler<Action<R>, R> {
+		/**
+		 * The action being executed.
+		 */
+		private final MergeableAction<R> action;
+
+		/**
+		 * The callbacks of the following executions. Once the outcome is
+		 * known, this field is set to {@code null}.
+		 */
+		private List<AsyncCallback<R>> callbacks;
+
+		/**
+		 * The complete result of the action, if it was successful.
+		 */
+		private R result;
+
+		/**
+		 * The exception with which the action failed, if it was unsuccessful.
+		 */
+		private Throwable caught;
+
+		/**
+		 * Constructs a new {@code MergedExecution} for the specified action.
+		 * 
+		 * @param action
+		 *            the action being executed
+		 */
+		private MergedExecution(MergeableAction<R> action) {
+			this.action = action;
+			callbacks = Lists.newArrayList();
+		}
+
+		/**
+		 * Attempts to make this the execution which equal actions follow.
+		 * 
+		 * @return {@code null} if this execution should proceed, or an
+		 *         existing execution of an equal action which should be
+		 *         followed instead
+		 */
+		private MergedExecution<?> lead() {
+			return merged.putIfAbsent(action, this);
+		}
+
+		@Override
+		public void execute(Action<R> action, AsyncCallback<R> callback) {
+			synchronized (this) {
+				if (callbacks != null) {
+					callbacks.add(callback);
+					return;
+				}
+			}
+			if (caught == null) {
+				callback.onSuccess(result);
+			} else {
+				callback.onFailure(caught);
+			}
+		}
+
+		@Override
+		public void onSuccess(R result) {
+			finish(result, null);
+		}
+
+		@Override
+		public void onFailure(Throwable caught) {
+			finish(null, caught);
+		}
+
+		/**
+		 * Records the outcome of the leading execution, unless one has already
+		 * been recorded, and delivers it to all following executions.
+		 * 
+		 * @param result
+		 *            the complete result of the action, or {@code null} if it
+		 *            failed
+		 * @param caught
+		 *            the exception with which the action failed, or
+		 *            {@code null} if it was successful
+		 */
+		private void finish(R result, Throwable caught) {
+			merged.remove(action, this);
+			List<AsyncCallback<R>> toNotify;
+			synchronized (this) {
+				if (callbacks == null) {
+					return;
+				}
+				this.result = result;
+				this.caught = caught;
+				toNotify = callbacks;
+				callbacks = null;
+			}
+			for (AsyncCallback<R> callback : toNotify) {
+				if (caught == null) {
+					callback.onSuccess(result);
+				} else {
+					callback.onFailure(caught);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The sink given to a {@link StreamingActionHandler}, which publishes each
+	 * partial result it receives on the pushing thread. Once the execution is
+	 * cancelled, the sink refuses further results by throwing
+	 * {@link CancellationException}, which stops the handler.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class PublishingSink<R extends Result> implements
+			StreamingActionHandler.ResultSink<R> {
+		/**
+		 * The action whose partial results are pushed to this sink.
+		 */
+		private final Action<R> action;
+
+		/**
+		 * The cancellation token for the execution.
+		 */
+		private final CancellationToken token;
+
+		/**
+		 * Constructs a new {@code PublishingSink} for the specified action.
+		 * 
+		 * @param action
+		 *            the action being executed
+		 * @param token
+		 *            the cancellation token for the execution
+		 */
+		private PublishingSink(Action<R> action, CancellationToken token) {
+			this.action = action;
+			this.token = token;
+		}
+
+		@Override
+		public void publish(R result) {
+			checkNotNull(result);
+			checkArgument(!result.isComplete());
+			if (token.isCancelled()) {
+				throw new CancellationException();
+			}
+			PublishingDispatcherImpl.this.publish(action, result);
+		}
+	}
+
+	/**
+	 * Stores the state associated with a specific subscription.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class Subscription {
+		/**
+		 * Published results must originate from an action which matches this
+		 * predicate. Otherwise, the result is ignored by this subscription.
+		 */
+		private final Predicate<? super Action<?>> predicate;
+
+		/**
+		 * Whether partial results are conflated for all actions, rather than
+		 * only for instances of {@link ConflatableAction}.
+		 */
+		private final boolean conflate;
+
+		/**
+		 * The limit on the number of results in {@link #published}, or
+		 * {@code null} if the backlog is unbounded.
+		 */
+		private final BacklogLimit limit;
+
+		/**
+		 * Results which match the predicate and have been published, each
+		 * paired with the action from which it resulted, but which have not
+		 * yet been moved to {@link #published}. Publishing threads add to this
+		 * queue without locking; it is drained in batches while holding
+		 * {@link #drainLock}.
+		 */
+		private final MpscQueue<Map.Entry<Action<?>, Result>> inbox;
+
+		/**
+		 * Guards the backlog, and serializes drains of {@link #inbox}. The
+		 * fields below are only accessed while holding this lock, unless
+		 * otherwise noted.
+		 */
+		private final Lock drainLock;
+
+		/**
+		 * The results which have been drained from {@link #inbox}, but have
+		 * not yet been sent to the client through the {@link #poll()} method,
+		 * each paired with the action from which it resulted. Results are
+		 * keyed by sequence number, in the order in which they were published,
+		 * so that results superseded by conflation or discarded on overflow
+		 * can be removed from anywhere in the backlog.
+		 */
+		private final Map<Long, Map.Entry<Action<?>, Result>> published;
+
+		/**
+		 * Maps conflated actions to the sequence number in {@link #published}
+		 * of their pending partial result. Actions are keyed by equality, and
+		 * the map is cleared along with the backlog.
+		 */
+		private final Map<Action<?>, Long> pendingPartials;
+
+		/**
+		 * The sequence number of the next result published.
+		 */
+		private long nextSequence;
+
+		/**
+		 * The number of results discarded on overflow since the last check.
+		 */
+		private int dropped;
+
+		/**
+		 * The size of {@link #published} as of the last drain or poll. Written
+		 * while holding {@link #drainLock}, but read without it, so that
+		 * metrics never contend with publishing threads.
+		 */
+		private volatile int backlogSize;
+
+		/**
+		 * Whether this subscription has been terminated on overflow, and
+		 * receives no further results. Written while holding
+		 * {@link #drainLock}, but read without it.
+		 */
+		private volatile boolean terminated;
+
+		/**
+		 * The value of {@link System#nanoTime()} when this subscription was
+		 * created, last checked or last found to be awaited, from which its
+		 * lease runs. Accessed without locking.
+		 */
+		private volatile long lastChecked;
+
+		/**
+		 * The request which is currently waiting for results to be published,
+		 * or {@code null} if no request is waiting. Whichever thread swaps a
+		 * waiter out of this reference is responsible for dispatching or
+		 * completing it, although the waiter may already have been released
+		 * by another subscription. Accessed without locking.
+		 */
+		private final AtomicReference<Waiter> waiting;
+
+		/**
+		 * Constructs a new {@code Subscription} which uses the specified
+		 * predicate to determine which actions' results are to be included.
+		 * 
+		 * @param predicate
+		 *            a predicate to limit action results which are included
+		 * @param conflate
+		 *            whether partial results should be conflated for all
+		 *            actions
+		 * @param limit
+		 *            the limit on the backlog, or {@code null} if it is
+		 *            unbounded
+		 */
+		private Subscription(Predicate<? super Action<?>> predicate,
+				boolean conflate, BacklogLimit limit) {
+			checkNotNull(predicate);
+			this.predicate = predicate;
+			this.conflate = conflate;
+			this.limit = limit;
+			inbox = new MpscQueue<Map.Entry<Action<?>, Result>>();
+			drainLock = new ReentrantLock();
+			published = Maps.newLinkedHashMap();
+			pendingPartials = Maps.newHashMap();
+			lastChecked = System.nanoTime();
+			waiting = new AtomicReference<Waiter>();
+		}
+
+		/**
+		 * @return the predicate which actions must match for their results to
+		 *         be included in this subscription
+		 */
+		private Predicate<? super Action<?>> getPredicate() {
+			return predicate;
+		}
+
+		/**
+		 * Indicates to this subscription object that the specified result has
+		 * been published as a result of the specified action. If the action
+		 * does not match this subscription's predicate, the result will be
+		 * ignored. If it does match, the result will be added to the inbox of
+		 * pending results, and if there is a request awaiting new results, it
+		 * will be awakened.
+		 * <p>
+		 * 
+		 * This method does not lock. Once enough results have accumulated in
+		 * the inbox, it drains them into the backlog, but only if no other
+		 * thread is doing so already. The backlog limit is applied as results
+		 * are drained, and may therefore be exceeded briefly by about the
+		 * number of threads publishing at once.
+		 * 
+		 * @param action
+		 *            the action whose execution resulted in {@code result}
+		 * @param result
+		 *            the result which was published
+		 */
+		private void publish(Action<?> action, Result result) {
+			if (!terminated && predicate.apply(action)) {
+				int size = inbox.offer(Maps.<Action<?>, Result> immutableEntry(
+						action, result));
+				if (size >= DRAIN_THRESHOLD
+						|| (limit != null && size >= limit.getCapacity())) {
+					if (drainLock.tryLock()) {
+						try {
+							drain();
+						} finally {
+							drainLock.unlock();
+						}
+					}
+				}
+				wake();
+			}
+		}
+
+		/**
+		 * Dispatches the waiting request, if there is one, so that it checks
+		 * for results again.
+		 */
+		private void wake() {
+			if (waiting.get() != null) {
+				Waiter waiter = waiting.getAndSet(null);
+				if (waiter != null) {
+					waiter.dispatch();
+				}
+			}
+		}
+
+		/**
+		 * Moves all results from the inbox to the backlog, in the order in
+		 * which they were published. Must be called while holding
+		 * {@link #drainLock}.
+		 */
+		private void drain() {
+			for (Map.Entry<Action<?>, Result> entry : inbox.drain()) {
+				if (terminated) {
+					break;
+				}
+				add(entry.getKey(), entry.getValue());
+			}
+			backlogSize = published.size();
+		}
+
+		/**
+		 * Adds a result to the backlog. If the action's results are
+		 * conflated, any pending partial result of an equal action is first
+		 * removed. If the backlog is full, the overflow policy is then applied.
+		 * Must be called while holding {@link #drainLock}.
+		 * 
+		 * @param action
+		 *            the action whose execution resulted in {@code result}
+		 * @param result
+		 *            the result to add
+		 */
+		private void add(Action<?> action, Result result) {
+			long sequence = nextSequence++;
+			if (conflate || action instanceof ConflatableAction) {
+				Long superseded = (result.isComplete() ? pendingPartials
+						.remove(action) : pendingPartials.put(action, sequence));
+				if (superseded != null) {
+					published.remove(superseded);
+				}
+			}
+			if (limit == null || published.size() < limit.getCapacity()
+					|| overflow(action)) {
+				published.put(sequence,
+						Maps.<Action<?>, Result> immutableEntry(action, result));
+			} else if (Long.valueOf(sequence).equals(
+					pendingPartials.get(action))) {
+				pendingPartials.remove(action);
+			}
+		}
+
+		/**
+		 * Applies the overflow policy when a result is published to a full
+		 * backlog, discarding a result or terminating the subscription. Must
+		 * be called while holding {@link #drainLock}.
+		 * 
+		 * @param action
+		 *            the action whose execution resulted in the new result
+		 * @return {@code true} if the new result should be added to the
+		 *         backlog; {@code false} if it should be discarded
+		 */
+		private boolean overflow(Action<?> action) {
+			dropped++;
+			switch (limit.getPolicy()) {
+			case DROP_OLDEST:
+				discard(published.keySet().iterator().next());
+				return true;
+			case DROP_NEWEST:
+				return false;
+			case CONFLATE:
+				Long latest = published.keySet().iterator().next();
+				for (Map.Entry<Long, Map.Entry<Action<?>, Result>> entry : published
+						.entrySet()) {
+					if (action.equals(entry.getValue().getKey())) {
+						latest = entry.getKey();
+					}
+				}
+				discard(latest);
+				return true;
+			case TERMINATE:
+				dropped += published.size();
+				published.clear();
+				pendingPartials.clear();
+				terminated = true;
+				return false;
+			default:
+				throw new AssertionError();
+			}
+		}
+
+		/**
+		 * Removes a result from the backlog, along with any reference to it as
+		 * a pending partial result. Must be called while holding
+		 * {@link #drainLock}.
+		 * 
+		 * @param sequence
+		 *            the sequence number of the result to remove
+		 */
+		private void discard(Long sequence) {
+			Action<?> action = published.remove(sequence).getKey();
+			if (sequence.equals(pendingPartials.get(action))) {
+				pendingPartials.remove(action);
+			}
+		}
+
+		/**
+		 * Returns an {@code ImmutableList} containing all {@code Result}
+		 * objects which have been published but which have not yet been
+		 * returned through this method, without waiting. If any results were
+		 * discarded on overflow, the list begins with an {@link OverflowResult}
+		 * reporting them. Polling renews the subscription's lease.
+		 * 
+		 * @return a list of {@code Result} objects which have been published
+		 *         but not yet sent
+		 */
+		private ImmutableList<Result> poll() {
+			lastChecked = System.nanoTime();
+			drainLock.lock();
+			try {
+				drain();
+				if (published.isEmpty() && dropped == 0) {
+					return ImmutableList.of();
+				}
+				ImmutableList.Builder<Result> builder = ImmutableList.builder();
+				if (dropped > 0) {
+					builder.add(new OverflowResult(dropped, terminated));
+				}
+				for (Map.Entry<Action<?>, Result> entry : published.values()) {
+					builder.add(entry.getValue());
+				}
+				published.clear();
+				pendingPartials.clear();
+				dropped = 0;
+				backlogSize = 0;
+				return builder.build();
+			} finally {
+				drainLock.unlock();
+			}
+		}
+
+		/**
+		 * Registers a request to wait for results, after a {@link #poll()}
+		 * found none. The request is dispatched when a result is published,
+		 * completed if the subscription is canceled, and completed as well if
+		 * a new request takes its place in awaiting results. If results have
+		 * arrived since the poll, the request is dispatched at once.
+		 * 
+		 * @param waiter
+		 *            the waiting request
+		 */
+		private void await(Waiter waiter) {
+			drainLock.lock();
+			try {
+				drain();
+				if (!published.isEmpty() || dropped > 0) {
+					waiter.dispatch();
+					return;
+				}
+				Waiter previous = waiting.getAndSet(waiter);
+				if (previous != null) {
+					previous.complete();
+				}
+				/*
+				 * A result published after the drain, but before the new waiter
+				 * was visible, would not have woken it.
+				 */
+				if (!inbox.isEmpty()) {
+					wake();
+				}
+			} finally {
+				drainLock.unlock();
+			}
+		}
+
+		/**
+		 * @return the value of {@link System#nanoTime()} when this
+		 *         subscription was created or last checked
+		 */
+		private long getLastChecked() {
+			return lastChecked;
+		}
+
+		/**
+		 * Renews this subscription's lease, as though it had just been
+		 * checked, without polling it.
+		 */
+		private void renew() {
+			lastChecked = System.nanoTime();
+		}
+
+		/**
+		 * @return {@code true} if a request or stream is still waiting for
+		 *         results from this subscription
+		 */
+		private boolean isAwaited() {
+			Waiter waiter = waiting.get();
+			return waiter != null && waiter.isWaiting();
+		}
+
+		/**
+		 * Stops waiting on behalf of a stream which has been closed, if one of
+		 * its waiters is still registered, so that the closed stream neither
+		 * receives results nor keeps the subscription from expiring.
+		 * 
+		 * @param stream
+		 *            the closed stream
+		 */
+		private void removeStream(ResultStream stream) {
+			Waiter waiter = waiting.get();
+			if (waiter instanceof StreamWaiter
+					&& ((StreamWaiter) waiter).stream == stream) {
+				if (waiting.compareAndSet(waiter, null)) {
+					waiter.complete();
+				}
+			}
+		}
+
+		/**
+		 * Returns the number of results waiting to be checked, without
+		 * locking. The result may be slightly out of date while results are
+		 * being published or drained.
+		 * 
+		 * @return the number of results waiting to be checked
+		 */
+		private int getBacklogSize() {
+			return backlogSize + inbox.size();
 		}
 
 		/**
 		 * Cancels this subscription, releasing the currently waiting request.
 		 * That request will return an empty list of results.
 		 */
-		private synchronized void cancel() {
-			if (waiting != null) {
-				waiting.complete();
-				waiting = null;
+		private void cancel() {
+			Waiter waiter = waiting.getAndSet(null);
+			if (waiter != null) {
+				waiter.complete();
 			}
 		}
 	}
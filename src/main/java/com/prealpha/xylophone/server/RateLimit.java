@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+
+/**
+ * A rate limit configured in {@link ActionModule}, applying either to one
+ * action class or to all of them, and either to all clients together or to
+ * each client separately. One instance is bound, with a unique annotation, for
+ * each limit; {@link HandlerRegistry} then finds all instances, sorts them by
+ * sequence number into the order in which they were bound, and uses them to
+ * construct a {@link RateLimiter}.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class RateLimit {
+	/**
+	 * Orders rate limits by sequence number.
+	 */
+	static final Ordering<RateLimit> BINDING_ORDER = new Ordering<RateLimit>() {
+		@Override
+		public int compare(RateLimit left, RateLimit right) {
+			return Ints.compare(left.sequence, right.sequence);
+		}
+	};
+
+	/**
+	 * The position of the limit in the order in which limits were bound.
+	 */
+	private final int sequence;
+
+	/**
+	 * The action class to which the limit applies, or {@code null} if it
+	 * applies to all action classes.
+	 */
+	private final Class<?> actionClass;
+
+	/**
+	 * The bucket shared by all clients, or {@code null} if each client has a
+	 * bucket of its own.
+	 */
+	private final TokenBucket bucket;
+
+	/**
+	 * The buckets for each client, keyed by client, or {@code null} if the
+	 * limit is shared by all clients. Buckets which have been idle for long
+	 * enough to refill are evicted, since they are equivalent to new buckets.
+	 * The refill time is rounded up, so that a bucket is never evicted before
+	 * it has refilled.
+	 */
+	private final LoadingCache<String, TokenBucket> clientBuckets;
+
+	/**
+	 * Constructs a new {@code RateLimit}.
+	 * 
+	 * @param sequence
+	 *            the position of the limit in the order in which limits were
+	 *            bound
+	 * @param actionClass
+	 *            the action class to which the limit applies, or {@code null}
+	 *            if it applies to all action classes
+	 * @param perClient
+	 *            whether each client has a separate limit
+	 * @param permitsPerSecond
+	 *            the sustained rate of actions permitted
+	 * @param burst
+	 *            the number of actions which may be executed at once after a
+	 *            period of inactivity
+	 * @throws IllegalArgumentException
+	 *             if {@code permitsPerSecond} or {@code burst} is not positive
+	 */
+	RateLimit(int sequence, Class<?> actionClass, boolean perClient,
+			final double permitsPerSecond, final int burst) {
+		this.sequence = sequence;
+		this.actionClass = actionClass;
+		TokenBucket template = new TokenBucket(permitsPerSecond, burst);
+		if (perClient) {
+			bucket = null;
+			clientBuckets = CacheBuilder
+					.newBuilder()
+					.expireAfterAccess(
+							template.getRefillTime(TimeUnit.MILLISECONDS) + 1,
+							TimeUnit.MILLISECONDS).build(
+							new CacheLoader<String, TokenBucket>() {
+								@Override
+								public TokenBucket load(String client) {
+									return new TokenBucket(permitsPerSecond,
+											burst);
+								}
+							});
+		} else {
+			bucket = template;
+			clientBuckets = null;
+		}
+	}
+
+	/**
+	 * @return the action class to which the limit applies, or {@code null} if
+	 *         it applies to all action classes
+	 */
+	Class<?> getActionClass() {
+		return actionClass;
+	}
+
+	/**
+	 * @return {@code true} if each client has a separate limit
+	 */
+	boolean isPerClient() {
+		return (clientBuckets != null);
+	}
+
+	/**
+	 * Takes a token for an action, if one is available.
+	 * 
+	 * @param client
+	 *            the client executing the action, which is ignored if the
+	 *            limit is shared by all clients
+	 * @return {@code true} if the action is permitted, {@code false} if it
+	 *         exceeds the limit
+	 */
+	boolean tryAcquire(String client) {
+		if (clientBuckets == null) {
+			return bucket.tryAcquire();
+		} else {
+			return clientBuckets.getUnchecked(checkNotNull(client))
+					.tryAcquire();
+		}
+	}
+}
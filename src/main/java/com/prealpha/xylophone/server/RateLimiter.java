@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.RateLimitExceededException;
+
+/**
+ * Applies the {@link RateLimit}s configured in {@link ActionModule} to each
+ * action before it is executed. The limits applicable to each action class
+ * are determined once, when the limiter is constructed, so that checking an
+ * action requires only a single map lookup in addition to the token buckets
+ * themselves.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class RateLimiter {
+	/**
+	 * The limits which apply to every action class, including those which are
+	 * not bound to a handler.
+	 */
+	private final ImmutableList<RateLimit> globalLimits;
+
+	/**
+	 * The limits which apply to each action class for which a limit was
+	 * specifically configured, including any global limits.
+	 */
+	private final ImmutableMap<Class<?>, ImmutableList<RateLimit>> classLimits;
+
+	/**
+	 * Constructs a new {@code RateLimiter} for the specified limits.
+	 * 
+	 * @param limits
+	 *            the rate limits to apply
+	 */
+	RateLimiter(List<RateLimit> limits) {
+		List<RateLimit> globalLimits = Lists.newArrayList();
+		Map<Class<?>, List<RateLimit>> classLimits = Maps.newHashMap();
+		for (RateLimit limit : limits) {
+			if (limit.getActionClass() == null) {
+				globalLimits.add(limit);
+			}
+		}
+		for (RateLimit limit : limits) {
+			Class<?> actionClass = limit.getActionClass();
+			if (actionClass != null) {
+				if (!classLimits.containsKey(actionClass)) {
+					classLimits.put(actionClass,
+							Lists.newArrayList(globalLimits));
+				}
+				classLimits.get(actionClass).add(limit);
+			}
+		}
+		this.globalLimits = ImmutableList.copyOf(globalLimits);
+		ImmutableMap.Builder<Class<?>, ImmutableList<RateLimit>> builder = ImmutableMap
+				.builder();
+		for (Map.Entry<Class<?>, List<RateLimit>> entry : classLimits
+				.entrySet()) {
+			builder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+		}
+		this.classLimits = builder.build();
+	}
+
+	/**
+	 * Takes a token from each limit applicable to the specified action.
+	 * Limits which apply to each client separately are skipped if the client
+	 * is unknown.
+	 * 
+	 * @param action
+	 *            the action to be executed
+	 * @param client
+	 *            the client executing the action, or {@code null} if it is
+	 *            unknown
+	 * @throws RateLimitExceededException
+	 *             if the action exceeds any applicable limit
+	 */
+	void acquire(Action<?> action, String client)
+			throws RateLimitExceededException {
+		List<RateLimit> limits = classLimits.get(action.getClass());
+		if (limits == null) {
+			limits = globalLimits;
+		}
+		for (RateLimit limit : limits) {
+			if (limit.isPerClient() && client == null) {
+				continue;
+			} else if (!limit.tryAcquire(client)) {
+				throw new RateLimitExceededException(action);
+			}
+		}
+	}
+}
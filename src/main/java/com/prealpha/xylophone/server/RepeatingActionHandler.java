@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * Adapts an {@link ActionHandler} to the {@link StreamingActionHandler}
+ * interface, so that the dispatcher need only execute one kind of synchronous
+ * handler. The adapted handler is invoked repeatedly, with each partial result
+ * pushed to the sink, until it returns a complete result.
+ * 
+ * @param <A>
+ *            the action type handled
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * 
+ */
+final class RepeatingActionHandler<A extends Action<R>, R extends Result>
+		implements StreamingActionHandler<A, R> {
+	/**
+	 * The handler being adapted.
+	 */
+	private final ActionHandler<A, R> handler;
+
+	/**
+	 * Constructs a new {@code RepeatingActionHandler} which adapts the
+	 * specified handler.
+	 * 
+	 * @param handler
+	 *            the handler to adapt
+	 */
+	RepeatingActionHandler(ActionHandler<A, R> handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public R execute(A action, ResultSink<R> sink) throws ActionException {
+		R result = handler.execute(action);
+		while (!result.isComplete()) {
+			sink.publish(result);
+			result = handler.execute(action);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.filter.CacheableAction;
+
+/**
+ * A server-side cache of the results of {@link CacheableAction}s, shared by
+ * all clients of a dispatcher. Entries are keyed by action equality, and are
+ * returned only until the expiry time given by
+ * {@link CacheableAction#getCacheExpiry(Result)}, exactly as in the client-side
+ * {@code CachingActionFilter}. The number of entries is bounded; once the
+ * bound is reached, the least recently used entries are evicted.
+ * <p>
+ * 
+ * A result cache is enabled using {@link ActionModule#bindResultCache(long)}.
+ * This class is thread safe.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class ResultCache {
+	/**
+	 * The underlying cache. Expired entries are not evicted automatically, but
+	 * are removed when they are next accessed.
+	 */
+	private final Cache<CacheableAction<?>, Result> cache;
+
+	/**
+	 * Constructs a new {@code ResultCache} containing at most the specified
+	 * number of entries.
+	 * 
+	 * @param maximumSize
+	 *            the maximum number of entries in the cache
+	 * @throws IllegalArgumentException
+	 *             if {@code maximumSize} is not positive
+	 */
+	ResultCache(long maximumSize) {
+		checkArgument(maximumSize > 0);
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+	}
+
+	/**
+	 * Returns the cached result for the specified action, if there is one
+	 * which has not yet expired.
+	 * 
+	 * @param action
+	 *            the action to look up
+	 * @return a valid, unexpired result for the action, or {@code null} if none
+	 *         exists
+	 */
+	<R extends Result> R get(CacheableAction<R> action) {
+		/*
+		 * The cache is guaranteed to contain results of the same type as the
+		 * type parameter of each respective key. The guarantee is enforced in
+		 * the put() method, which is the only place where mappings are added.
+		 */
+		@SuppressWarnings("unchecked")
+		R result = (R) cache.getIfPresent(action);
+		if (result == null) {
+			return null;
+		} else if (System.currentTimeMillis() < action.getCacheExpiry(result)) {
+			return result;
+		} else {
+			// only remove this result, not one which replaced it concurrently
+			cache.asMap().remove(action, result);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a result for the specified action, unless it has already
+	 * expired.
+	 * 
+	 * @param action
+	 *            the action which produced {@code result}
+	 * @param result
+	 *            the complete result of the action
+	 */
+	<R extends Result> void put(CacheableAction<R> action, R result) {
+		checkNotNull(action);
+		checkNotNull(result);
+		if (System.currentTimeMillis() < action.getCacheExpiry(result)) {
+			cache.put(action, result);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.google.common.collect.ImmutableList;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * A persistent connection to which the results of a subscription are pushed
+ * as they are published, rather than returned by checks. Streams are opened by
+ * {@link SubscriptionStreamServlet}, and fed by the dispatcher.
+ * 
+ * @author Meyer Kizner
+ * @see PublishingDispatcherImpl#stream(long, ResultStream)
+ * 
+ */
+interface ResultStream {
+	/**
+	 * Runs a task which writes to this stream. The task should not run on the
+	 * calling thread, which may be publishing a result. Once the stream has
+	 * been closed, the task is not run.
+	 * 
+	 * @param task
+	 *            the task to run
+	 */
+	void execute(Runnable task);
+
+	/**
+	 * Registers a task to be run once this stream is closed, by either side.
+	 * The task is run at most once, and is run immediately if the stream has
+	 * already been closed.
+	 * 
+	 * @param listener
+	 *            the task to run when the stream is closed
+	 */
+	void addCloseListener(Runnable listener);
+
+	/**
+	 * Writes a list of results to this stream.
+	 * 
+	 * @param results
+	 *            the results to write, which is never empty
+	 * @return {@code true} if the results were written; {@code false} if the
+	 *         stream has been closed
+	 */
+	boolean write(ImmutableList<Result> results);
+
+	/**
+	 * Closes this stream, because the subscription has ended or is being
+	 * checked in another request. Closing a stream more than once has no
+	 * further effect.
+	 */
+	void close();
+}
@@ -0,0 +1,664 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link PublicationBus} which connects nodes over TCP. Each bus listens on
+ * a local address for connections from the other nodes, and opens a
+ * connection to each of a fixed list of peers the first time it sends to them.
+ * Encoded batches are queued for each peer and written by a thread of its
+ * own, so that a slow or unreachable peer delays only its own batches.
+ * A batch is written to a peer as one or more frames: the number of
+ * publications, followed by each publication as a length-prefixed byte array
+ * in Java serialization format. Publications whose action or result is not
+ * {@link java.io.Serializable} are not sent.
+ * <p>
+ * 
+ * If a peer cannot be reached, the batch is dropped for that peer and the
+ * connection is retried with the next batch. If a peer falls so far behind
+ * that its queue is full, further batches for it are dropped and counted, and
+ * its connection is closed; since sockets have no write timeout, this is also
+ * what aborts a write to a peer which has stopped reading. A peer which
+ * stalls partway through sending a frame is disconnected after a read timeout.
+ * Publications which cannot be serialized are not sent, and a warning is
+ * logged once for each class responsible.
+ * <p>
+ * 
+ * Received publications are
+ * deserialized only if every class they contain is a {@link Publication}, is
+ * in {@code java.lang}, or is in one of the packages given to the
+ * constructor; other publications are dropped. A peer which sends a frame
+ * larger than the bus would send is disconnected. Even so, the bus should
+ * only listen on an address reachable by trusted nodes.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class SocketPublicationBus implements PublicationBus, Closeable {
+	/**
+	 * The time to wait for a connection to a peer, in milliseconds.
+	 */
+	private static final int CONNECT_TIMEOUT = 1000;
+
+	/**
+	 * The time to wait for the rest of a frame once it has begun, in
+	 * milliseconds.
+	 */
+	private static final int READ_TIMEOUT = 10000;
+
+	/**
+	 * The number of batches which may wait to be written to each peer.
+	 */
+	private static final int MAX_PENDING_BATCHES = 16;
+
+	/**
+	 * The largest serialized publication which is sent or received, in bytes.
+	 */
+	private static final int MAX_PUBLICATION_LENGTH = 1 << 20;
+
+	/**
+	 * The largest number of publications in one frame.
+	 */
+	private static final int MAX_FRAME_COUNT = 1024;
+
+	/**
+	 * The largest total length of the publications in one frame, in bytes.
+	 */
+	private static final int MAX_FRAME_LENGTH = 16 << 20;
+
+	/**
+	 * The largest number of classes about which a warning is logged, so that
+	 * a misbehaving peer cannot fill the set of classes already logged.
+	 */
+	private static final int MAX_LOGGED_CLASSES = 256;
+
+	private static final Logger LOGGER = Logger
+			.getLogger(SocketPublicationBus.class.getName());
+
+	/**
+	 * The socket on which connections from other nodes are accepted.
+	 */
+	private final ServerSocket serverSocket;
+
+	/**
+	 * The other nodes.
+	 */
+	private final ImmutableList<Peer> peers;
+
+	/**
+	 * The packages, besides {@code java.lang}, whose classes may be
+	 * deserialized. Subpackages are included.
+	 */
+	private final ImmutableSet<String> packages;
+
+	/**
+	 * The names of the classes about which a warning has been logged.
+	 */
+	private final Set<String> loggedClasses;
+
+	/**
+	 * The number of batches dropped for peers which had fallen behind.
+	 */
+	private final AtomicLong droppedBatches;
+
+	/**
+	 * The sockets accepted from other nodes, so that they can be closed.
+	 */
+	private final Set<Socket> accepted;
+
+	/**
+	 * Creates the acceptor, reader and peer threads.
+	 */
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * Whether {@link #close()} has been called.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new {@code SocketPublicationBus}, binding it to a local
+	 * address. Connections are not accepted until the bus is started.
+	 * 
+	 * @param bindAddress
+	 *            the local address on which to listen; a port of {@code 0}
+	 *            selects any free port
+	 * @param peers
+	 *            the addresses of the other nodes
+	 * @param packages
+	 *            the packages containing the classes of the published actions
+	 *            and results, and of the objects they refer to, such as
+	 *            {@code java.util} for collections; subpackages are included
+	 * @throws IOException
+	 *             if the address cannot be bound
+	 * @throws NullPointerException
+	 *             if any argument is {@code null}
+	 */
+	public SocketPublicationBus(InetSocketAddress bindAddress,
+			List<InetSocketAddress> peers, Set<String> packages)
+			throws IOException {
+		checkNotNull(bindAddress);
+		ImmutableList.Builder<Peer> builder = ImmutableList.builder();
+		for (InetSocketAddress peer : peers) {
+			builder.add(new Peer(checkNotNull(peer)));
+		}
+		this.peers = builder.build();
+		this.packages = ImmutableSet.copyOf(packages);
+		loggedClasses = Sets.newSetFromMap(
+				new ConcurrentHashMap<String, Boolean>());
+		serverSocket = new ServerSocket();
+		serverSocket.bind(bindAddress);
+		droppedBatches = new AtomicLong();
+		accepted = Sets.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+		threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("xylophone-bus-%d").setDaemon(true).build();
+	}
+
+	/**
+	 * @return the local port on which the bus listens
+	 */
+	public int getLocalPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of batches dropped because a peer had fallen too far
+	 *         behind, counting each peer separately
+	 */
+	public long getDroppedBatchCount() {
+		return droppedBatches.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 
+	 * Batches are not sent to other nodes until the bus is started.
+	 */
+	@Override
+	public void start(final Receiver receiver) {
+		checkNotNull(receiver);
+		for (Peer peer : peers) {
+			peer.start();
+		}
+		threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				accept(receiver);
+			}
+		}).start();
+	}
+
+	/**
+	 * Accepts connections from other nodes until the bus is closed, starting a
+	 * thread to read from each.
+	 * 
+	 * @param receiver
+	 *            the receiver for publications from other nodes
+	 */
+	private void accept(final Receiver receiver) {
+		while (!closed) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException iox) {
+				// the server socket was closed
+				break;
+			}
+			accepted.add(socket);
+			if (closed) {
+				closeQuietly(socket);
+				break;
+			}
+			try {
+				socket.setKeepAlive(true);
+			} catch (IOException iox) {
+				accepted.remove(socket);
+				closeQuietly(socket);
+				continue;
+			}
+			threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					read(socket, receiver);
+				}
+			}).start();
+		}
+	}
+
+	/**
+	 * Reads batches from a connection until it is closed, passing each to the
+	 * receiver. The connection may be idle between frames for any time, but
+	 * is closed if the rest of a frame does not arrive within the read
+	 * timeout.
+	 * 
+	 * @param socket
+	 *            the connection to read from
+	 * @param receiver
+	 *            the receiver for publications from other nodes
+	 */
+	private void read(Socket socket, Receiver receiver) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			while (true) {
+				socket.setSoTimeout(0);
+				int count = in.readInt();
+				socket.setSoTimeout(READ_TIMEOUT);
+				if (count < 0 || count > MAX_FRAME_COUNT) {
+					throw new IOException("invalid batch size " + count);
+				}
+				List<Publication> publications = new ArrayList<Publication>();
+				long frameLength = 0;
+				for (int i = 0; i < count; i++) {
+					int length = in.readInt();
+					frameLength += length;
+					if (length < 0 || length > MAX_PUBLICATION_LENGTH
+							|| frameLength > MAX_FRAME_LENGTH) {
+						throw new IOException("invalid publication length "
+								+ length);
+					}
+					byte[] bytes = new byte[length];
+					in.readFully(bytes);
+					Publication publication = decode(bytes);
+					if (publication != null) {
+						publications.add(publication);
+					}
+				}
+				if (!publications.isEmpty()) {
+					receiver.receive(publications);
+				}
+			}
+		} catch (IOException iox) {
+			// the connection was closed
+		} finally {
+			accepted.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * 
+	 * This method only encodes the batch and queues it for each peer, so it
+	 * does not block on the network.
+	 */
+	@Override
+	public void send(List<Publication> publications) {
+		if (closed) {
+			return;
+		}
+		List<byte[]> encoded = new ArrayList<byte[]>(publications.size());
+		for (Publication publication : publications) {
+			byte[] bytes = encode(publication);
+			if (bytes == null) {
+				continue;
+			} else if (bytes.length > MAX_PUBLICATION_LENGTH) {
+				logOnce(publication.getAction().getClass().getName(),
+						"Publications of {0} are too large to be sent");
+			} else {
+				encoded.add(bytes);
+			}
+		}
+		if (encoded.isEmpty()) {
+			return;
+		}
+		for (Peer peer : peers) {
+			peer.offer(encoded);
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes every open connection. The bus
+	 * cannot be restarted.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException iox) {
+			// nothing more to do
+		}
+		for (Socket socket : accepted) {
+			closeQuietly(socket);
+		}
+		for (Peer peer : peers) {
+			peer.stop();
+		}
+	}
+
+	/**
+	 * Writes encoded publications as frames which the receiving bus accepts,
+	 * splitting them where a frame would hold too many publications or bytes.
+	 */
+	private static void writeFrames(DataOutputStream out, List<byte[]> encoded)
+			throws IOException {
+		int start = 0;
+		while (start < encoded.size()) {
+			int end = start;
+			long frameLength = 0;
+			while (end < encoded.size() && end - start < MAX_FRAME_COUNT) {
+				frameLength += encoded.get(end).length;
+				if (frameLength > MAX_FRAME_LENGTH) {
+					break;
+				}
+				end++;
+			}
+			out.writeInt(end - start);
+			for (byte[] bytes : encoded.subList(start, end)) {
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			start = end;
+		}
+	}
+
+	/**
+	 * Logs a warning about a class, unless one has already been logged for
+	 * it.
+	 * 
+	 * @param className
+	 *            the name of the class, substituted for {@code {0}}
+	 * @param message
+	 *            the message to log
+	 */
+	private void logOnce(String className, String message) {
+		if (loggedClasses.size() < MAX_LOGGED_CLASSES
+				&& loggedClasses.add(className)) {
+			LOGGER.log(Level.WARNING, message, className);
+		}
+	}
+
+	/**
+	 * Serializes a publication, or returns {@code null} if it is not
+	 * serializable.
+	 */
+	private byte[] encode(Publication publication) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(publication);
+			out.close();
+			return bytes.toByteArray();
+		} catch (NotSerializableException nsx) {
+			// the message is the name of the class which is not serializable
+			logOnce(nsx.getMessage(), "Publications containing {0} are not "
+					+ "sent to other nodes, since it is not serializable");
+			return null;
+		} catch (IOException iox) {
+			logOnce(publication.getAction().getClass().getName(),
+					"Publications of {0} could not be serialized");
+			return null;
+		}
+	}
+
+	/**
+	 * Deserializes a publication, or returns {@code null} if it cannot be
+	 * deserialized on this node or contains a class which is not allowed.
+	 */
+	private Publication decode(byte[] bytes) {
+		try {
+			ObjectInputStream in = new FilteringInputStream(
+					new ByteArrayInputStream(bytes));
+			return (Publication) in.readObject();
+		} catch (InvalidClassException icx) {
+			logOnce(icx.classname,
+					"Dropped a publication containing {0}, which is not in "
+							+ "an allowed package");
+			return null;
+		} catch (IOException iox) {
+			return null;
+		} catch (ClassNotFoundException cnfx) {
+			return null;
+		} catch (ClassCastException ccx) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether instances of a class may be deserialized: that is,
+	 * whether the class, or the component type of an array class, is
+	 * {@link Publication}, a primitive type, a class in {@code java.lang}, or
+	 * a class in one of the allowed packages.
+	 * 
+	 * @param className
+	 *            the name of the class, as given by {@link Class#getName()}
+	 * @return {@code true} if the class is allowed
+	 */
+	private boolean isAllowed(String className) {
+		String name = className;
+		while (name.startsWith("[")) {
+			name = name.substring(1);
+		}
+		if (name.length() == 1) {
+			// an array of a primitive type
+			return true;
+		} else if (name.startsWith("L") && name.endsWith(";")) {
+			name = name.substring(1, name.length() - 1);
+		}
+		if (name.equals(Publication.class.getName())) {
+			return true;
+		}
+		int lastDot = name.lastIndexOf('.');
+		String packageName = (lastDot < 0 ? "" : name.substring(0, lastDot));
+		if (packageName.equals("java.lang")) {
+			return true;
+		}
+		for (String allowed : packages) {
+			if (packageName.equals(allowed)
+					|| packageName.startsWith(allowed + ".")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deserializes only those classes which are {@linkplain #isAllowed(String)
+	 * allowed}, so that a peer cannot instantiate arbitrary serializable
+	 * classes on this node. Proxy classes are never allowed.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class FilteringInputStream extends ObjectInputStream {
+		private FilteringInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException {
+			if (!isAllowed(desc.getName())) {
+				throw new InvalidClassException(desc.getName(), "not allowed");
+			}
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces)
+				throws IOException {
+			throw new InvalidClassException("proxy", "not allowed");
+		}
+	}
+
+	/**
+	 * Another node, to which batches are written by a thread of its own.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class Peer implements Runnable {
+		/**
+		 * The address of the peer.
+		 */
+		private final InetSocketAddress address;
+
+		/**
+		 * The encoded batches waiting to be written.
+		 */
+		private final BlockingQueue<List<byte[]>> pending;
+
+		/**
+		 * The connection to the peer, or {@code null} if there is none. Only
+		 * opened by the peer's thread, but closed by others to abort a write
+		 * which has stalled.
+		 */
+		private volatile Socket socket;
+
+		/**
+		 * The thread which writes to the peer, or {@code null} if the bus has
+		 * not been started.
+		 */
+		private volatile Thread thread;
+
+		private Peer(InetSocketAddress address) {
+			this.address = address;
+			pending = new ArrayBlockingQueue<List<byte[]>>(MAX_PENDING_BATCHES);
+		}
+
+		private void start() {
+			Thread thread = threadFactory.newThread(this);
+			this.thread = thread;
+			thread.start();
+		}
+
+		/**
+		 * Queues a batch to be written. If the queue is full, the batch is
+		 * dropped and the connection closed, since the peer has stopped
+		 * keeping up.
+		 */
+		private void offer(List<byte[]> encoded) {
+			if (!pending.offer(encoded)) {
+				droppedBatches.incrementAndGet();
+				disconnect();
+			}
+		}
+
+		/**
+		 * Stops the peer's thread and closes its connection.
+		 */
+		private void stop() {
+			Thread thread = this.thread;
+			if (thread != null) {
+				thread.interrupt();
+			}
+			disconnect();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					write(pending.take());
+				}
+			} catch (InterruptedException ix) {
+				// the bus was closed
+			} finally {
+				disconnect();
+			}
+		}
+
+		/**
+		 * Writes a batch to the peer, connecting first if necessary. If the
+		 * peer cannot be reached, the batch is dropped.
+		 */
+		private void write(List<byte[]> encoded) {
+			Socket socket = this.socket;
+			try {
+				if (socket == null) {
+					socket = new Socket();
+					socket.setTcpNoDelay(true);
+					socket.connect(address, CONNECT_TIMEOUT);
+					this.socket = socket;
+					if (closed) {
+						// close() may have missed the new connection
+						disconnect();
+						return;
+					}
+				}
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(socket.getOutputStream()));
+				writeFrames(out, encoded);
+				out.flush();
+			} catch (IOException iox) {
+				closeQuietly(socket);
+				if (this.socket == socket) {
+					this.socket = null;
+				}
+			}
+		}
+
+		/**
+		 * Closes the connection to the peer, if there is one. The peer's
+		 * thread reconnects with the next batch.
+		 */
+		private void disconnect() {
+			Socket socket = this.socket;
+			if (socket != null) {
+				this.socket = null;
+				closeQuietly(socket);
+			}
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException iox) {
+			// nothing more to do
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.concurrent.CancellationException;
+
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * An action handler which produces partial results as a single, continuous
+ * computation. Whereas an {@link ActionHandler} returns one partial result per
+ * invocation and must be re-invoked, keeping track of its own progress between
+ * invocations, a streaming handler is invoked exactly once per action. It
+ * pushes each partial result to a {@link ResultSink} as soon as it is
+ * available, and then returns the complete result. Streaming handlers are
+ * bound using {@link ActionModule#bindStreamingAction(Class)}.
+ * <p>
+ * 
+ * Because all progress is kept on the stack of a single invocation, streaming
+ * handlers need not be stateful, and they need not distinguish between equal
+ * actions executing at the same time.
+ * 
+ * @param <A>
+ *            the action type handled
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * @see ActionHandler
+ * @see ActionModule
+ * @since 0.4-beta
+ * 
+ */
+public interface StreamingActionHandler<A extends Action<R>, R extends Result> {
+	/**
+	 * Executes an {@link Action} appropriate to this handler, returning its
+	 * complete {@link Result}. Any partial results produced along the way
+	 * should be passed to {@link ResultSink#publish(Result)} on the sink
+	 * provided. An {@link ActionException} may be thrown if the action cannot
+	 * be dispatched or executed for any reason.
+	 * 
+	 * @param action
+	 *            an action to execute
+	 * @param sink
+	 *            a sink to which partial results should be pushed
+	 * @return the complete result of the action
+	 * @throws ActionException
+	 *             thrown to indicate a problem during dispatch or execution
+	 */
+	R execute(A action, ResultSink<R> sink) throws ActionException;
+
+	/**
+	 * Receives the partial results produced by a
+	 * {@link StreamingActionHandler}. Each result pushed to the sink is
+	 * published to the subscribers of a {@link PublishingDispatcher} before
+	 * the sink returns.
+	 * 
+	 * @param <R>
+	 *            the result type for the action
+	 * @author Meyer Kizner
+	 * @since 0.4-beta
+	 * 
+	 */
+	public interface ResultSink<R extends Result> {
+		/**
+		 * Publishes a partial result of the action being executed.
+		 * 
+		 * @param result
+		 *            a partial result
+		 * @throws NullPointerException
+		 *             if {@code result} is {@code null}
+		 * @throws IllegalArgumentException
+		 *             if {@code result} is {@linkplain Result#isComplete()
+		 *             complete}; complete results must be returned from
+		 *             {@link StreamingActionHandler#execute(Action, ResultSink)}
+		 *             instead
+		 * @throws CancellationException
+		 *             if the execution has been {@linkplain CancellationToken
+		 *             cancelled}; handlers should allow this exception to
+		 *             propagate, and the dispatcher reports the execution as
+		 *             having exceeded its deadline
+		 */
+		void publish(R result);
+	}
+}
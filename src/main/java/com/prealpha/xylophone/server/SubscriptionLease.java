@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lease under which subscriptions are held: the time for which a
+ * subscription may go unchecked before it expires, and the timing wheel on
+ * which expiry is scheduled. The wheel's tick is a thirty-second of the lease,
+ * so a subscription expires at most about three percent late.
+ * 
+ * @author Meyer Kizner
+ * @see ActionModule#bindSubscriptionLease(long)
+ * 
+ */
+final class SubscriptionLease {
+	/**
+	 * The number of ticks of the timing wheel per lease.
+	 */
+	private static final int TICKS_PER_LEASE = 32;
+
+	/**
+	 * The duration of the lease, in nanoseconds.
+	 */
+	private final long ttl;
+
+	/**
+	 * The timing wheel on which expiry is scheduled.
+	 */
+	private final TimingWheel wheel;
+
+	/**
+	 * Constructs a new {@code SubscriptionLease}.
+	 * 
+	 * @param ttlMillis
+	 *            the time for which a subscription may go unchecked, in
+	 *            milliseconds
+	 * @throws IllegalArgumentException
+	 *             if {@code ttlMillis} is not positive
+	 */
+	SubscriptionLease(long ttlMillis) {
+		checkArgument(ttlMillis > 0);
+		ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		wheel = new TimingWheel(Math.max(1, ttlMillis / TICKS_PER_LEASE),
+				TimeUnit.MILLISECONDS, 2 * TICKS_PER_LEASE);
+	}
+
+	/**
+	 * @return the duration of the lease, in nanoseconds
+	 */
+	long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Schedules a task to run after the specified delay, usually to check
+	 * whether a subscription has expired.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param delay
+	 *            the delay, in nanoseconds
+	 */
+	void schedule(Runnable task, long delay) {
+		wheel.schedule(task, delay, TimeUnit.NANOSECONDS);
+	}
+}
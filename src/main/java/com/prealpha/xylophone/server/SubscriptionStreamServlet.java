@@ -0,0 +1,304 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.RemoteServiceServlet;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.prealpha.xylophone.client.SubscriptionStream;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.Result;
+
+/**
+ * Pushes the results of a subscription to the client over a persistent
+ * connection, using server-sent events, as an alternative to checking for
+ * them with long polling. Each event carries one list of results, exactly as
+ * {@link PublishingDispatcher#check(long)} would have returned it, encoded for
+ * GWT RPC as the response to that method. The client side of the connection is
+ * {@link SubscriptionStream}, which falls back to long polling if this servlet
+ * is unavailable.
+ * <p>
+ * 
+ * A {@code GET} request to this servlet takes three parameters:
+ * {@code subscription}, the subscription ID to stream; {@code module}, the GWT
+ * module base URL; and {@code permutation}, the strong name of the client's
+ * permutation. The last two locate the serialization policy with which results
+ * are encoded, just as for an ordinary RPC request. An invalid subscription ID
+ * results in a 404 response, which the client treats as the end of the
+ * subscription.
+ * <p>
+ * 
+ * The servlet should be served through Guice, using the same injector as the
+ * {@link ActionModule} whose dispatcher it streams from, and must support
+ * asynchronous requests, as long polling already requires. Each connection
+ * lasts until the container's asynchronous timeout, after which the client
+ * reconnects.
+ * 
+ * @author Meyer Kizner
+ * @see PublishingDispatcherImpl#stream(long, ResultStream)
+ * @since 0.4-beta
+ * 
+ */
+@Singleton
+public final class SubscriptionStreamServlet extends RemoteServiceServlet {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The method for whose response results are encoded. Its return type
+	 * determines which types the serialization policy must allow.
+	 */
+	private static final Method CHECK_METHOD;
+
+	static {
+		try {
+			CHECK_METHOD = PublishingDispatcher.class.getMethod("check",
+					long.class);
+		} catch (NoSuchMethodException nsmx) {
+			throw new AssertionError(nsmx);
+		}
+	}
+
+	/**
+	 * The dispatcher whose subscriptions are streamed.
+	 */
+	private final transient PublishingDispatcherImpl dispatcher;
+
+	@Inject
+	SubscriptionStreamServlet(PublishingDispatcherImpl dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		long subscriptionId;
+		try {
+			subscriptionId = Long.parseLong(request
+					.getParameter("subscription"));
+		} catch (NumberFormatException nfx) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		String moduleBaseUrl = request.getParameter("module");
+		String strongName = request.getParameter("permutation");
+		if (moduleBaseUrl == null || strongName == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		SerializationPolicy policy = doGetSerializationPolicy(request,
+				moduleBaseUrl, strongName);
+		if (policy == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		AsyncContext context = request.startAsync();
+		EventStream stream = new EventStream(context, policy);
+		context.addListener(stream);
+		try {
+			dispatcher.stream(subscriptionId, stream);
+		} catch (IllegalArgumentException iax) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			stream.close();
+			return;
+		}
+		stream.open();
+	}
+
+	/**
+	 * Writes results to a suspended response as server-sent events. Methods
+	 * are synchronized, since the dispatcher may write to the stream before
+	 * the request which opened it has returned. {@link #execute(Runnable)} is
+	 * the exception: it is called by publishing threads, which must not wait
+	 * for a write in progress.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class EventStream implements ResultStream, AsyncListener {
+		/**
+		 * The context of the suspended request.
+		 */
+		private final AsyncContext context;
+
+		/**
+		 * The serialization policy with which results are encoded.
+		 */
+		private final SerializationPolicy policy;
+
+		/**
+		 * Whether the response headers have been sent.
+		 */
+		private boolean opened;
+
+		/**
+		 * Whether the stream has been closed, by either side. Volatile so that
+		 * {@link #execute(Runnable)} may read it without the lock.
+		 */
+		private volatile boolean closed;
+
+		/**
+		 * The tasks to run when the stream is closed.
+		 */
+		private final List<Runnable> closeListeners = Lists.newArrayList();
+
+		private EventStream(AsyncContext context, SerializationPolicy policy) {
+			this.context = checkNotNull(context);
+			this.policy = checkNotNull(policy);
+		}
+
+		/**
+		 * Sends the response headers, so that the client knows the stream is
+		 * open. Called before any results are written.
+		 */
+		private synchronized void open() throws IOException {
+			if (!opened && !closed) {
+				HttpServletResponse response = (HttpServletResponse) context
+						.getResponse();
+				response.setContentType("text/event-stream");
+				response.setCharacterEncoding("UTF-8");
+				response.setHeader("Cache-Control", "no-cache");
+				response.flushBuffer();
+				opened = true;
+			}
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			if (closed) {
+				return;
+			}
+			try {
+				context.start(task);
+			} catch (IllegalStateException isx) {
+				// the request completed or timed out since the check above
+				close();
+			}
+		}
+
+		@Override
+		public void addCloseListener(Runnable listener) {
+			checkNotNull(listener);
+			synchronized (this) {
+				if (!closed) {
+					closeListeners.add(listener);
+					return;
+				}
+			}
+			listener.run();
+		}
+
+		@Override
+		public synchronized boolean write(ImmutableList<Result> results) {
+			if (closed) {
+				return false;
+			}
+			try {
+				open();
+				String encoded = RPC.encodeResponseForSuccess(CHECK_METHOD,
+						results, policy);
+				PrintWriter writer = context.getResponse().getWriter();
+				// strip the "//OK" which marks a successful RPC response
+				for (String line : encoded.substring(4).split("\n", -1)) {
+					writer.print("data: ");
+					writer.print(line);
+					writer.print('\n');
+				}
+				writer.print('\n');
+				writer.flush();
+				if (writer.checkError()) {
+					close();
+					return false;
+				}
+				return true;
+			} catch (SerializationException sx) {
+				log("Unable to encode results for stream", sx);
+				close();
+				return false;
+			} catch (IOException iox) {
+				close();
+				return false;
+			}
+		}
+
+		@Override
+		public synchronized void close() {
+			if (markClosed()) {
+				try {
+					context.complete();
+				} catch (IllegalStateException isx) {
+					// the request already completed or timed out
+				}
+			}
+		}
+
+		/**
+		 * Marks the stream as closed, running its close listeners the first
+		 * time.
+		 * 
+		 * @return {@code true} if the stream was not already closed
+		 */
+		private synchronized boolean markClosed() {
+			if (closed) {
+				return false;
+			}
+			closed = true;
+			for (Runnable listener : closeListeners) {
+				listener.run();
+			}
+			closeListeners.clear();
+			return true;
+		}
+
+		@Override
+		public synchronized void onComplete(AsyncEvent event) {
+			markClosed();
+		}
+
+		@Override
+		public synchronized void onTimeout(AsyncEvent event) {
+			close();
+		}
+
+		@Override
+		public synchronized void onError(AsyncEvent event) {
+			close();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A hashed timing wheel, which runs tasks after a delay at the granularity of
+ * a fixed tick. The wheel is a ring of buckets, one per tick; a task is placed
+ * in the bucket for the tick on which it is due, along with the number of
+ * further revolutions of the wheel it must wait. Scheduling a task and
+ * advancing the wheel by one tick both take constant time, regardless of the
+ * number of tasks scheduled, at the cost of running each task up to one tick
+ * late.
+ * <p>
+ * 
+ * Tasks are run on a single daemon thread, started when the first task is
+ * scheduled, and should therefore be brief. Scheduled tasks cannot be
+ * cancelled; a task which is no longer needed should simply do nothing when
+ * it runs.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class TimingWheel {
+	private static final Logger LOGGER = Logger
+			.getLogger(TimingWheel.class.getName());
+
+	/**
+	 * The duration of a tick, in nanoseconds.
+	 */
+	private final long tickDuration;
+
+	/**
+	 * The buckets of the wheel, one per tick. Only accessed by the worker
+	 * thread.
+	 */
+	private final List<List<Timeout>> wheel;
+
+	/**
+	 * Tasks which have been scheduled but not yet placed in a bucket.
+	 */
+	private final Queue<Timeout> pending;
+
+	/**
+	 * Set once the worker thread has been started.
+	 */
+	private final AtomicBoolean started;
+
+	/**
+	 * The value of {@link System#nanoTime()} when the wheel was constructed,
+	 * from which all deadlines and ticks are measured.
+	 */
+	private final long startTime;
+
+	/**
+	 * Constructs a new {@code TimingWheel}.
+	 * 
+	 * @param tickDuration
+	 *            the duration of a tick
+	 * @param unit
+	 *            the unit of {@code tickDuration}
+	 * @param ticksPerWheel
+	 *            the number of buckets in the wheel
+	 * @throws NullPointerException
+	 *             if {@code unit} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if either {@code tickDuration} or {@code ticksPerWheel} is
+	 *             not positive
+	 */
+	TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+		checkArgument(tickDuration > 0);
+		checkArgument(ticksPerWheel > 0);
+		this.tickDuration = unit.toNanos(tickDuration);
+		List<List<Timeout>> wheel = Lists.newArrayList();
+		for (int i = 0; i < ticksPerWheel; i++) {
+			wheel.add(Lists.<Timeout> newLinkedList());
+		}
+		this.wheel = wheel;
+		pending = new ConcurrentLinkedQueue<Timeout>();
+		started = new AtomicBoolean();
+		startTime = System.nanoTime();
+	}
+
+	/**
+	 * Schedules a task to run once the specified delay has elapsed. The task
+	 * may run up to one tick late.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param delay
+	 *            the time from now after which the task should run
+	 * @param unit
+	 *            the unit of {@code delay}
+	 * @throws NullPointerException
+	 *             if {@code task} or {@code unit} is {@code null}
+	 */
+	void schedule(Runnable task, long delay, TimeUnit unit) {
+		checkNotNull(task);
+		if (!started.get() && started.compareAndSet(false, true)) {
+			new ThreadFactoryBuilder().setNameFormat("xylophone-timer-%d")
+					.setDaemon(true).build().newThread(new Worker()).start();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+		pending.add(new Timeout(task, deadline));
+	}
+
+	/**
+	 * A scheduled task, with the time at which it is due.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private static final class Timeout {
+		/**
+		 * The task to run.
+		 */
+		private final Runnable task;
+
+		/**
+		 * The time at which the task is due, in nanoseconds relative to the
+		 * start time of the wheel.
+		 */
+		private final long deadline;
+
+		/**
+		 * The number of further revolutions of the wheel before the task is
+		 * due, once it has been placed in a bucket.
+		 */
+		private long remainingRounds;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * Advances the wheel once per tick, placing newly scheduled tasks in
+	 * their buckets and running the tasks which are due.
+	 * 
+	 * @author Meyer Kizner
+	 * 
+	 */
+	private final class Worker implements Runnable {
+		/**
+		 * The number of ticks which have passed since the wheel was
+		 * constructed.
+		 */
+		private long tick;
+
+		private Worker() {
+			tick = (System.nanoTime() - startTime) / tickDuration;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				long sleep = startTime + (tick + 1) * tickDuration
+						- System.nanoTime();
+				if (sleep > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(sleep);
+					} catch (InterruptedException ix) {
+						return;
+					}
+					continue;
+				}
+				transferPending();
+				expire(wheel.get((int) (tick % wheel.size())));
+				tick++;
+			}
+		}
+
+		/**
+		 * Places newly scheduled tasks in the buckets for the ticks on which
+		 * they are due. Tasks which are already overdue are placed in the
+		 * bucket for the current tick.
+		 */
+		private void transferPending() {
+			Timeout timeout;
+			while ((timeout = pending.poll()) != null) {
+				long due = Math.max(timeout.deadline / tickDuration, tick);
+				timeout.remainingRounds = (due - tick) / wheel.size();
+				wheel.get((int) (due % wheel.size())).add(timeout);
+			}
+		}
+
+		/**
+		 * Runs the tasks in a bucket which are due on this revolution of the
+		 * wheel, and counts down the remaining rounds of the others.
+		 * 
+		 * @param bucket
+		 *            the bucket for the current tick
+		 */
+		private void expire(List<Timeout> bucket) {
+			Iterator<Timeout> iterator = bucket.iterator();
+			while (iterator.hasNext()) {
+				Timeout timeout = iterator.next();
+				if (timeout.remainingRounds <= 0) {
+					iterator.remove();
+					/*
+					 * A failing task must not stop the wheel, or every other
+					 * task would never run.
+					 */
+					try {
+						timeout.task.run();
+					} catch (RuntimeException rx) {
+						LOGGER.log(Level.WARNING, "timer task failed", rx);
+					} catch (Error e) {
+						LOGGER.log(Level.WARNING, "timer task failed", e);
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Tokens are added at a fixed rate, up to a maximum
+ * burst, and each permitted action removes one token. Rather than counting
+ * tokens, the bucket stores the time at which it would next be empty if no
+ * further tokens were taken, which allows the entire state to be updated with
+ * a single compare-and-set.
+ * 
+ * @author Meyer Kizner
+ * 
+ */
+final class TokenBucket {
+	/**
+	 * The time taken to add one token, in nanoseconds.
+	 */
+	private final long interval;
+
+	/**
+	 * The time taken to fill the bucket from one token to the maximum burst,
+	 * in nanoseconds.
+	 */
+	private final long tolerance;
+
+	/**
+	 * The time, as given by {@link System#nanoTime()}, at which the bucket
+	 * will have added back every token taken so far. If this time is in the
+	 * past, the bucket is full.
+	 */
+	private final AtomicLong emptyUntil;
+
+	/**
+	 * Constructs a new, full {@code TokenBucket}.
+	 * 
+	 * @param permitsPerSecond
+	 *            the rate at which tokens are added
+	 * @param burst
+	 *            the maximum number of tokens in the bucket
+	 * @throws IllegalArgumentException
+	 *             if either argument is not positive
+	 */
+	TokenBucket(double permitsPerSecond, int burst) {
+		checkArgument(permitsPerSecond > 0);
+		checkArgument(burst > 0);
+		interval = Math.max(1L,
+				(long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		tolerance = interval * (burst - 1);
+		emptyUntil = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Takes a token from the bucket, if one is available.
+	 * 
+	 * @return {@code true} if a token was taken, {@code false} if the bucket
+	 *         was empty
+	 */
+	boolean tryAcquire() {
+		while (true) {
+			long now = System.nanoTime();
+			long current = emptyUntil.get();
+			long start = (current - now < 0 ? now : current);
+			if (start - now > tolerance) {
+				return false;
+			} else if (emptyUntil.compareAndSet(current, start + interval)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the time taken for an empty bucket to fill completely. A bucket
+	 * which has not been used for at least this long is indistinguishable from
+	 * a new one.
+	 * 
+	 * @param unit
+	 *            the unit of the result
+	 * @return the time taken to fill the bucket
+	 */
+	long getRefillTime(TimeUnit unit) {
+		return unit.convert(tolerance + interval, TimeUnit.NANOSECONDS);
+	}
+}
@@ -17,13 +17,21 @@
 package com.prealpha.xylophone.server.filter;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
-import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.prealpha.xylophone.server.ActionHandler;
+import com.prealpha.xylophone.server.ActionModule;
+import com.prealpha.xylophone.server.ActionModule.ActionExecutor;
 import com.prealpha.xylophone.shared.Action;
 import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.BulkheadFullException;
 import com.prealpha.xylophone.shared.Dispatcher;
 import com.prealpha.xylophone.shared.Result;
 import com.prealpha.xylophone.shared.filter.BatchAction;
@@ -36,6 +44,13 @@ import com.prealpha.xylophone.shared.filter.BatchedActionSuccess;
  * The server-side handler for {@link BatchAction}. This handler is essentially
  * an internal implementation detail of {@link BatchActionModule}, and should
  * only be used through that module.
+ * <p>
+ * 
+ * Batched actions are submitted to the dispatcher's {@link ActionExecutor}, so
+ * that they execute concurrently when the dispatcher runs actions on threads
+ * of their own. Results are always returned in the order of the batch. If
+ * the executor rejects a batched action because the default bulkhead is full,
+ * the batch fails with a {@link BulkheadFullException}.
  * 
  * @author Meyer Kizner
  * @see BatchActionModule
@@ -48,29 +63,64 @@ final class BatchActionHandler implements
 	 */
 	private final Dispatcher dispatcher;
 
+	/**
+	 * The executor on which batched actions are executed.
+	 */
+	private final Executor executor;
+
 	/**
 	 * Constructs a new {@code BatchActionHandler}, using the specified
-	 * {@link Dispatcher} to execute batched actions.
+	 * {@link Dispatcher} to execute batched actions on the specified
+	 * {@link Executor}.
 	 * 
 	 * @param dispatcher
 	 *            the dispatcher with which this handler should execute batched
 	 *            actions
+	 * @param executor
+	 *            the executor on which batched actions should be executed
 	 */
 	@Inject
-	private BatchActionHandler(Dispatcher dispatcher) {
+	private BatchActionHandler(Dispatcher dispatcher,
+			@ActionExecutor Executor executor) {
 		this.dispatcher = dispatcher;
+		this.executor = executor;
 	}
 
 	@Override
 	public BatchResult execute(BatchAction action) throws ActionException {
-		List<BatchedActionResult<?>> results = Lists.transform(
-				action.getActions(),
-				new Function<Action<?>, BatchedActionResult<?>>() {
-					@Override
-					public BatchedActionResult<?> apply(Action<?> action) {
-						return executeBatched(action);
-					}
-				});
+		List<FutureTask<BatchedActionResult<?>>> tasks = Lists.newArrayList();
+		for (final Action<?> batched : action.getActions()) {
+			FutureTask<BatchedActionResult<?>> task = new FutureTask<BatchedActionResult<?>>(
+					new Callable<BatchedActionResult<?>>() {
+						@Override
+						public BatchedActionResult<?> call() {
+							return executeBatched(batched);
+						}
+					});
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException rex) {
+				for (FutureTask<BatchedActionResult<?>> submitted : tasks) {
+					submitted.cancel(false);
+				}
+				throw new BulkheadFullException(batched,
+						ActionModule.DEFAULT_BULKHEAD);
+			}
+			tasks.add(task);
+		}
+
+		List<BatchedActionResult<?>> results = Lists.newArrayList();
+		try {
+			for (FutureTask<BatchedActionResult<?>> task : tasks) {
+				results.add(task.get());
+			}
+		} catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			throw new ActionException(ix);
+		} catch (ExecutionException ex) {
+			// executeBatched() only throws unchecked exceptions
+			throw Throwables.propagate(ex.getCause());
+		}
 		return new BatchResult(results);
 	}
 
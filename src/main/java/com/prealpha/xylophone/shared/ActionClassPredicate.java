@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.common.base.Predicate;
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * A predicate which matches actions of a particular class or any of its
+ * subclasses. Subscriptions created with this predicate are indexed by class
+ * in the dispatcher provided by the server, so that publishing a result need
+ * not consider subscriptions to unrelated action classes. Subscriptions with
+ * any other predicate must be tested against every published result, which
+ * becomes expensive when there are many subscribers.
+ * <p>
+ * 
+ * Only superclasses of an action's class are considered, not the interfaces
+ * it implements, so that the predicate can be evaluated in GWT client code as
+ * well. To match all implementations of an interface, use an ordinary
+ * predicate.
+ * 
+ * @author Meyer Kizner
+ * @see PublishingDispatcher#subscribe(Predicate)
+ * @see EqualActionPredicate
+ * @since 0.4-beta
+ * 
+ */
+public final class ActionClassPredicate implements Predicate<Action<?>>,
+		IsSerializable {
+	/**
+	 * The name of the action class matched. Non-{@code final} to allow for GWT
+	 * serialization, but never altered in practice.
+	 */
+	private String className;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private ActionClassPredicate() {
+	}
+
+	/**
+	 * Constructs a new {@code ActionClassPredicate} matching actions of the
+	 * specified class or any of its subclasses.
+	 * 
+	 * @param actionClass
+	 *            the action class to match
+	 * @throws NullPointerException
+	 *             if {@code actionClass} is {@code null}
+	 */
+	public ActionClassPredicate(Class<? extends Action<?>> actionClass) {
+		className = actionClass.getName();
+	}
+
+	/**
+	 * Returns the name of the action class matched. Classes are identified by
+	 * name because {@link Class} objects cannot be serialized by GWT.
+	 * 
+	 * @return the name of the action class matched
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	@Override
+	public boolean apply(Action<?> action) {
+		checkNotNull(action);
+		for (Class<?> clazz = action.getClass(); clazz != null; clazz = clazz
+				.getSuperclass()) {
+			if (clazz.getName().equals(className)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof ActionClassPredicate) {
+			return className.equals(((ActionClassPredicate) obj).className);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return className.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "ActionClassPredicate[" + className + "]";
+	}
+}
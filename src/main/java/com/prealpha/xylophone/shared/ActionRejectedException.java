@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that the dispatcher declined to execute an {@link Action} in order
+ * to protect its own capacity, rather than because of a problem with the
+ * action itself. The action was not executed at all, so it is generally safe
+ * for the client to retry it at a later time. Subclasses identify the specific
+ * reason for the rejection.
+ * 
+ * @author Meyer Kizner
+ * @see Dispatcher
+ * @since 0.4-beta
+ * 
+ */
+public class ActionRejectedException extends ActionException {
+	private static final long serialVersionUID = -3958212738425566101L;
+
+	/**
+	 * Constructs a new {@code ActionRejectedException} with no detail message.
+	 */
+	public ActionRejectedException() {
+		super();
+	}
+
+	/**
+	 * Constructs a new {@code ActionRejectedException} with the specified
+	 * detail message.
+	 * 
+	 * @param message
+	 *            the detail message
+	 */
+	public ActionRejectedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that an {@link Action} was rejected because the bulkhead to which
+ * its class is assigned was already executing as many actions as it allows,
+ * and its queue of waiting actions was full. Other action classes, assigned to
+ * other bulkheads, are unaffected.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class BulkheadFullException extends ActionRejectedException {
+	private static final long serialVersionUID = 5296027781961633790L;
+
+	/**
+	 * The name of the bulkhead which was full. Non-{@code final} to allow for
+	 * GWT serialization, but never altered in practice.
+	 */
+	private String bulkhead;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private BulkheadFullException() {
+	}
+
+	/**
+	 * Constructs a new {@code BulkheadFullException} for the specified action
+	 * and bulkhead.
+	 * 
+	 * @param action
+	 *            the action which was rejected
+	 * @param bulkhead
+	 *            the name of the bulkhead which was full
+	 */
+	public BulkheadFullException(Action<?> action, String bulkhead) {
+		super("Bulkhead " + bulkhead + " is full; rejected "
+				+ action.getClass().getName());
+		this.bulkhead = bulkhead;
+	}
+
+	/**
+	 * @return the name of the bulkhead which was full
+	 */
+	public String getBulkhead() {
+		return bulkhead;
+	}
+}
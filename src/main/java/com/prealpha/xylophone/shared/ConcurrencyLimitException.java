@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that an {@link Action} was rejected because the dispatcher was
+ * already executing as many actions as its adaptive concurrency limit allows.
+ * The limit rises and falls with the latency of the actions being executed,
+ * so the same action may well be accepted if it is retried after a short
+ * delay.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class ConcurrencyLimitException extends ActionRejectedException {
+	private static final long serialVersionUID = 8263615482350174129L;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private ConcurrencyLimitException() {
+	}
+
+	/**
+	 * Constructs a new {@code ConcurrencyLimitException} for the specified
+	 * action.
+	 * 
+	 * @param action
+	 *            the action which was rejected
+	 * @param limit
+	 *            the concurrency limit at the time the action was rejected
+	 */
+	public ConcurrencyLimitException(Action<?> action, int limit) {
+		super("Concurrency limit of " + limit + " reached; rejected "
+				+ action.getClass().getName());
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * A marker interface for actions whose partial results supersede one another,
+ * such as actions which report their progress. When a result of a conflatable
+ * action is published, any partial result of an equal action which is still
+ * pending in a subscription is discarded, so that subscribers receive only the
+ * latest result of each action execution when they next
+ * {@linkplain PublishingDispatcher#check(long) check}. Two actions are
+ * considered the same only if they are equal according to the
+ * {@link #equals(Object)} method.
+ * <p>
+ * 
+ * Conflation may also be requested for all actions in a single subscription,
+ * using {@link PublishingDispatcher#subscribe(com.google.common.base.Predicate, boolean)}.
+ * 
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public interface ConflatableAction<R extends Result> extends Action<R> {
+}
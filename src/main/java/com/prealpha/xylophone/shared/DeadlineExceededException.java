@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that the execution of an {@link Action} was abandoned because the
+ * deadline given by a {@link TimedAction} passed before it was complete. Unlike
+ * an {@link ActionRejectedException}, this exception does not imply that the
+ * action was not executed at all; the handler may have performed some or all
+ * of its work before noticing the deadline.
+ * 
+ * @author Meyer Kizner
+ * @see TimedAction
+ * @since 0.4-beta
+ * 
+ */
+public final class DeadlineExceededException extends ActionException {
+	private static final long serialVersionUID = -1480213935766521349L;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private DeadlineExceededException() {
+	}
+
+	/**
+	 * Constructs a new {@code DeadlineExceededException} for the specified
+	 * action.
+	 * 
+	 * @param action
+	 *            the action whose deadline passed
+	 */
+	public DeadlineExceededException(Action<?> action) {
+		super("Deadline exceeded for " + action.getClass().getName());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.common.base.Predicate;
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+ * A predicate which matches actions equal to a particular action, according
+ * to {@link Object#equals(Object)}. This is the most selective subscription
+ * possible, to the results of one logical action regardless of which client
+ * executes it. Subscriptions created with this predicate are indexed by
+ * action in the dispatcher provided by the server, so that publishing a result
+ * considers only the subscriptions to equal actions. Actions used with this
+ * predicate must therefore implement {@code equals} and {@code hashCode}.
+ * 
+ * @author Meyer Kizner
+ * @see PublishingDispatcher#subscribe(Predicate)
+ * @see ActionClassPredicate
+ * @since 0.4-beta
+ * 
+ */
+public final class EqualActionPredicate implements Predicate<Action<?>>,
+		IsSerializable {
+	/**
+	 * The action matched. Non-{@code final} to allow for GWT serialization,
+	 * but never altered in practice.
+	 */
+	private Action<?> action;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private EqualActionPredicate() {
+	}
+
+	/**
+	 * Constructs a new {@code EqualActionPredicate} matching actions equal to
+	 * the specified action.
+	 * 
+	 * @param action
+	 *            the action to match
+	 * @throws NullPointerException
+	 *             if {@code action} is {@code null}
+	 */
+	public EqualActionPredicate(Action<?> action) {
+		this.action = checkNotNull(action);
+	}
+
+	/**
+	 * @return the action matched
+	 */
+	public Action<?> getAction() {
+		return action;
+	}
+
+	@Override
+	public boolean apply(Action<?> input) {
+		return action.equals(input);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof EqualActionPredicate) {
+			return action.equals(((EqualActionPredicate) obj).action);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return action.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "EqualActionPredicate[" + action + "]";
+	}
+}
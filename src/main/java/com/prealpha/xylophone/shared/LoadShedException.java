@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that an {@link Action} was shed because the server is overloaded.
+ * Actions waiting to execute have been delayed beyond the dispatcher's target
+ * for long enough that it has begun failing some of them immediately, so that
+ * the remainder can still be executed promptly. The action was not executed,
+ * so it may be retried, preferably after some delay.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class LoadShedException extends ActionRejectedException {
+	private static final long serialVersionUID = -6190430856717125327L;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private LoadShedException() {
+	}
+
+	/**
+	 * Constructs a new {@code LoadShedException} for the specified action.
+	 * 
+	 * @param action
+	 *            the action which was shed
+	 */
+	public LoadShedException(Action<?> action) {
+		super("Server overloaded; shed " + action.getClass().getName());
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * A result reported by {@link PublishingDispatcher#check(long)} when the
+ * subscription's backlog overflowed since the previous check. It precedes any
+ * results which were kept, and carries the number of results which were
+ * discarded. If the subscription was terminated by the overflow, this is the
+ * last result it reports, and the subscription ID is no longer valid.
+ * 
+ * @author Meyer Kizner
+ * @see PublishingDispatcher#check(long)
+ * @since 0.4-beta
+ * 
+ */
+public final class OverflowResult implements Result {
+	/**
+	 * The number of results discarded. Non-{@code final} to allow for GWT
+	 * serialization, but never altered in practice.
+	 */
+	private int droppedCount;
+
+	/**
+	 * Whether the subscription was terminated. Non-{@code final} to allow for
+	 * GWT serialization, but never altered in practice.
+	 */
+	private boolean terminated;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private OverflowResult() {
+	}
+
+	/**
+	 * Constructs a new {@code OverflowResult}.
+	 * 
+	 * @param droppedCount
+	 *            the number of results discarded since the previous check
+	 * @param terminated
+	 *            whether the subscription was terminated
+	 */
+	public OverflowResult(int droppedCount, boolean terminated) {
+		this.droppedCount = droppedCount;
+		this.terminated = terminated;
+	}
+
+	@Override
+	public boolean isComplete() {
+		return true;
+	}
+
+	/**
+	 * @return the number of results discarded since the previous check
+	 */
+	public int getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * @return {@code true} if the subscription was terminated, and can no
+	 *         longer be checked; {@code false} otherwise
+	 */
+	public boolean isTerminated() {
+		return terminated;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * An action which is scheduled according to a priority when the server is
+ * saturated. Actions which are executed on a bulkhead created with priority
+ * scheduling wait for a thread in order of priority, and then in the order
+ * in which they were executed, so that actions a user is waiting on need not
+ * queue behind background work such as prefetching. Actions which do not
+ * implement this interface have {@link Priority#NORMAL} priority. The priority
+ * has no effect on actions which run on the calling thread or on an
+ * unbounded bulkhead, since they never wait.
+ * 
+ * @param <R>
+ *            the result type for the action
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public interface PrioritizedAction<R extends Result> extends Action<R> {
+	/**
+	 * Returns the priority with which this action should be scheduled. The
+	 * priority of an action should not change once it has been executed.
+	 * 
+	 * @return the priority of this action
+	 */
+	Priority getPriority();
+
+	/**
+	 * The priorities with which actions may be scheduled, from highest to
+	 * lowest.
+	 * 
+	 * @author Meyer Kizner
+	 * @since 0.4-beta
+	 * 
+	 */
+	enum Priority {
+		/**
+		 * The priority of actions whose results a user is actively waiting
+		 * for.
+		 */
+		INTERACTIVE,
+
+		/**
+		 * The priority of actions which do not implement
+		 * {@link PrioritizedAction}.
+		 */
+		NORMAL,
+
+		/**
+		 * The priority of actions whose results are not needed immediately,
+		 * such as prefetches.
+		 */
+		BACKGROUND;
+	}
+}
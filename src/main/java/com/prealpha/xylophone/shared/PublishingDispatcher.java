@@ -18,6 +18,8 @@ package com.prealpha.xylophone.shared;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * An extension of the basic {@link Dispatcher} interface to provide for action
@@ -42,6 +44,15 @@ public interface PublishingDispatcher extends Dispatcher {
 	 * cancelled} at any time. The dispatcher may not free resources associated
 	 * with a subscription until it is cancelled, so it is recommended that all
 	 * clients do so when the subscription is no longer necessary.
+	 * Implementations may also expire subscriptions which have not been
+	 * checked for some time, after which their IDs are no longer valid.
+	 * <p>
+	 * 
+	 * Implementations may index subscriptions created with an
+	 * {@link ActionClassPredicate} or {@link EqualActionPredicate}, so that
+	 * publishing a result considers only the subscriptions which might match
+	 * it. Such subscriptions should be preferred when there are many
+	 * subscribers; any other predicate must be tested against every result.
 	 * 
 	 * @param predicate
 	 *            a predicate matching actions to which a subscription is
@@ -53,6 +64,31 @@ public interface PublishingDispatcher extends Dispatcher {
 	 */
 	long subscribe(Predicate<? super Action<?>> predicate);
 
+	/**
+	 * Establishes a subscription to results in the same manner as
+	 * {@link #subscribe(Predicate)}, optionally conflating partial results.
+	 * When a subscription is conflated, publishing a result discards any
+	 * partial result of an equal action which has not yet been returned by
+	 * {@link #check(long)}. Each check therefore returns at most one result
+	 * per action execution: its latest. Results of a
+	 * {@link ConflatableAction} are always conflated, regardless of this
+	 * setting.
+	 * 
+	 * @param predicate
+	 *            a predicate matching actions to which a subscription is
+	 *            desired
+	 * @param conflate
+	 *            whether partial results should be conflated for all actions
+	 *            in the subscription
+	 * @return a subscription ID, representing a subscription to all results
+	 *         arising from actions matching {@code predicate}
+	 * @throws NullPointerException
+	 *             if {@code predicate} is {@code null}
+	 * @see ConflatableAction
+	 * @since 0.4-beta
+	 */
+	long subscribe(Predicate<? super Action<?>> predicate, boolean conflate);
+
 	/**
 	 * Checks a subscription for any results which may have been published since
 	 * the last check. The results will be returned as a list, in the order in
@@ -68,6 +104,13 @@ public interface PublishingDispatcher extends Dispatcher {
 	 * fulfilled the predicate specified when the subscription was created.
 	 * Clients are advised to create multiple subscriptions, each with a
 	 * restrictive predicate, if this information is required.
+	 * <p>
+	 * 
+	 * Implementations may limit the number of results held for a subscription
+	 * between checks. If results were discarded for this reason, the list
+	 * begins with an {@link OverflowResult} reporting how many. If the
+	 * subscription was instead terminated, that is the only result, and the
+	 * subscription ID is no longer valid.
 	 * 
 	 * @param subscriptionId
 	 *            the subscription ID to check
@@ -78,6 +121,35 @@ public interface PublishingDispatcher extends Dispatcher {
 	 */
 	ImmutableList<Result> check(long subscriptionId);
 
+	/**
+	 * Checks several subscriptions at once, using a single request. The
+	 * results of each subscription are returned exactly as by
+	 * {@link #check(long)}, grouped by subscription ID; subscriptions with no
+	 * results are omitted. If none of the subscriptions has results pending,
+	 * this method will block until a result is published to any of them. An
+	 * empty map will be returned if one of the subscriptions is canceled while
+	 * the wait is in progress, or if any of them is checked in a separate
+	 * request; in the latter case, the new request will displace the old one.
+	 * <p>
+	 * 
+	 * Clients with many subscriptions should prefer this method to checking
+	 * each separately, since only one request is held open on the server.
+	 * 
+	 * @param subscriptionIds
+	 *            the subscription IDs to check
+	 * @return a map from subscription IDs to lists of results, in
+	 *         chronological order, which have been published since the last
+	 *         time each subscription was checked
+	 * @throws NullPointerException
+	 *             if {@code subscriptionIds} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code subscriptionIds} is empty or contains an invalid
+	 *             subscription ID
+	 * @since 0.4-beta
+	 */
+	ImmutableMap<Long, ImmutableList<Result>> check(
+			ImmutableSet<Long> subscriptionIds);
+
 	/**
 	 * Cancels a subscription, freeing any resources associated with it. Any
 	 * results which have been published since the last check are discarded.
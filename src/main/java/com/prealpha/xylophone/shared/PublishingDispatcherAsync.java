@@ -18,6 +18,8 @@ package com.prealpha.xylophone.shared;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /**
@@ -44,6 +46,26 @@ public interface PublishingDispatcherAsync extends DispatcherAsync {
 	void subscribe(Predicate<? super Action<?>> predicate,
 			AsyncCallback<Long> callback);
 
+	/**
+	 * The asynchronous version of
+	 * {@link PublishingDispatcher#subscribe(Predicate, boolean)}.
+	 * 
+	 * @param predicate
+	 *            a predicate matching actions to which a subscription is
+	 *            desired
+	 * @param conflate
+	 *            whether partial results should be conflated for all actions
+	 *            in the subscription
+	 * @param callback
+	 *            a callback to receive the subscription ID
+	 * @throws NullPointerException
+	 *             if {@code predicate} is {@code null}
+	 * @see PublishingDispatcher#subscribe(Predicate, boolean)
+	 * @since 0.4-beta
+	 */
+	void subscribe(Predicate<? super Action<?>> predicate, boolean conflate,
+			AsyncCallback<Long> callback);
+
 	/**
 	 * The asynchronous version of {@link PublishingDispatcher#check(long)}.
 	 * 
@@ -58,6 +80,25 @@ public interface PublishingDispatcherAsync extends DispatcherAsync {
 	void check(long subscriptionId,
 			AsyncCallback<ImmutableList<Result>> callback);
 
+	/**
+	 * The asynchronous version of
+	 * {@link PublishingDispatcher#check(ImmutableSet)}.
+	 * 
+	 * @param subscriptionIds
+	 *            the subscription IDs to check
+	 * @param callback
+	 *            a callback to receive the results, grouped by subscription ID
+	 * @throws NullPointerException
+	 *             if {@code subscriptionIds} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code subscriptionIds} is empty or contains an invalid
+	 *             subscription ID
+	 * @see PublishingDispatcher#check(ImmutableSet)
+	 * @since 0.4-beta
+	 */
+	void check(ImmutableSet<Long> subscriptionIds,
+			AsyncCallback<ImmutableMap<Long, ImmutableList<Result>>> callback);
+
 	/**
 	 * The asynchronous version of {@link PublishingDispatcher#cancel(long)}.
 	 * 
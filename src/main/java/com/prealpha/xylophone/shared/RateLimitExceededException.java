@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+/**
+ * Indicates that an {@link Action} was rejected because it exceeded a rate
+ * limit configured on the server, either for its action class as a whole or
+ * for the client which executed it. The action was rejected before its handler
+ * was located, so it is safe to retry once the rate of execution has fallen.
+ * 
+ * @author Meyer Kizner
+ * @since 0.4-beta
+ * 
+ */
+public final class RateLimitExceededException extends ActionRejectedException {
+	private static final long serialVersionUID = 3076591542206893175L;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private RateLimitExceededException() {
+	}
+
+	/**
+	 * Constructs a new {@code RateLimitExceededException} for the specified
+	 * action.
+	 * 
+	 * @param action
+	 *            the action which was rejected
+	 */
+	public RateLimitExceededException(Action<?> action) {
+		super("Rate limit exceeded; rejected " + action.getClass().getName());
+	}
+}
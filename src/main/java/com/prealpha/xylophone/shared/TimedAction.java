@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.shared;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.prealpha.xylophone.client.filter.TimeoutFilter;
+
+/**
+ * Wraps another {@link Action} with a timeout, after which the server should
+ * abandon its execution. The dispatcher executes the wrapped action exactly as
+ * if it had been submitted directly, except that a deadline is computed from
+ * the timeout when execution begins. Once the deadline passes, the action
+ * fails with a {@link DeadlineExceededException}; handlers are expected to
+ * notice this cooperatively and stop their work. Actions executed by a handler
+ * on behalf of a timed action inherit its deadline.
+ * <p>
+ * 
+ * The timeout is relative, rather than an absolute time, so that it is not
+ * affected by differences between the client's and server's clocks. It does
+ * not include the time taken to send the action to the server.
+ * 
+ * @param <R>
+ *            the result type for the wrapped action
+ * @author Meyer Kizner
+ * @see TimeoutFilter
+ * @since 0.4-beta
+ * 
+ */
+public final class TimedAction<R extends Result> implements Action<R> {
+	/**
+	 * The wrapped action. Non-{@code final} to allow for GWT serialization, but
+	 * never altered in practice.
+	 */
+	private Action<R> action;
+
+	/**
+	 * The timeout, in milliseconds. Non-{@code final} to allow for GWT
+	 * serialization, but never altered in practice.
+	 */
+	private long timeout;
+
+	// serialization support
+	@SuppressWarnings("unused")
+	private TimedAction() {
+	}
+
+	/**
+	 * Constructs a new {@code TimedAction} which wraps the specified action
+	 * with the specified timeout.
+	 * 
+	 * @param action
+	 *            the action to execute
+	 * @param timeout
+	 *            the time, in milliseconds, after which execution of the
+	 *            action should be abandoned
+	 * @throws NullPointerException
+	 *             if {@code action} is {@code null}
+	 * @throws IllegalArgumentException
+	 *             if {@code timeout} is not positive
+	 */
+	public TimedAction(Action<R> action, long timeout) {
+		checkNotNull(action);
+		checkArgument(timeout > 0);
+		this.action = action;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return the wrapped action
+	 */
+	public Action<R> getAction() {
+		return action;
+	}
+
+	/**
+	 * @return the timeout, in milliseconds
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+}
@@ -33,6 +33,10 @@ import com.prealpha.xylophone.shared.Result;
  * 
  * Any code which makes use of {@code CacheableAction} should honor the
  * {@link #getCacheExpiry(Result)} method.
+ * <p>
+ * 
+ * Cacheable actions may also be cached on the server, and shared among all
+ * clients, if the server's {@code ActionModule} enables a result cache.
  * 
  * @param <R>
  *            the result type for the action
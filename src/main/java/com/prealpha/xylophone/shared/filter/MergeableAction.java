@@ -27,6 +27,10 @@ import com.prealpha.xylophone.shared.Result;
  * {@link #equals(Object)} method. Generally, actions which fetch data from the
  * server without modifying the server's state are good candidates for
  * implementing {@code MergeableAction}.
+ * <p>
+ * 
+ * The dispatcher provided by the server's {@code ActionModule} also merges
+ * equal mergeable actions executed concurrently by different clients.
  * 
  * @param <R>
  *            the result type for the action
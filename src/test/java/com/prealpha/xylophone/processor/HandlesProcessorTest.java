@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.processor;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public final class HandlesProcessorTest {
+	private static final String IMPORTS = "import com.prealpha.xylophone.server.*;"
+			+ " import com.prealpha.xylophone.shared.*;"
+			+ " import com.google.gwt.user.client.rpc.AsyncCallback;";
+
+	private static final JavaFileObject FOO_ACTION = source("test.FooAction",
+			"public class FooAction implements Action<FooResult> {}");
+
+	private static final JavaFileObject BAR_ACTION = source("test.BarAction",
+			"public class BarAction implements Action<FooResult> {}");
+
+	private static final JavaFileObject FOO_RESULT = source("test.FooResult",
+			"public class FooResult implements Result {"
+					+ " public boolean isComplete() { return true; } }");
+
+	private File generated;
+
+	@Before
+	public void createOutputDirectory() {
+		generated = Files.createTempDir();
+	}
+
+	@Test
+	public void testGeneratedModule() {
+		List<String> errors = process(ImmutableList.<String> of(),
+				source("test.FooHandler", "@Handles(FooAction.class)"
+						+ " public class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; } }"));
+		assertEquals(ImmutableList.of(), errors);
+		assertTrue(new File(generated, "test/GeneratedActionModule.java")
+				.isFile());
+	}
+
+	@Test
+	public void testAbstractHandler() {
+		List<String> errors = process(ImmutableList.<String> of(),
+				source("test.FooHandler", "@Handles(FooAction.class)"
+						+ " public abstract class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {}"));
+		assertError(errors, "@Handles must annotate a concrete class");
+	}
+
+	@Test
+	public void testSeveralHandlerInterfaces() {
+		List<String> errors = process(ImmutableList.<String> of(),
+				source("test.FooHandler", "@Handles(FooAction.class)"
+						+ " public class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult>,"
+						+ " AsyncActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; }"
+						+ " public void execute(FooAction action,"
+						+ " AsyncCallback<FooResult> callback) {} }"));
+		assertError(errors, "more than one handler interface");
+	}
+
+	@Test
+	public void testWrongActionType() {
+		List<String> errors = process(ImmutableList.<String> of(),
+				source("test.FooHandler", "@Handles(BarAction.class)"
+						+ " public class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; } }"));
+		assertError(errors, "handler does not handle test.BarAction");
+	}
+
+	@Test
+	public void testDuplicateAction() {
+		List<String> errors = process(ImmutableList.<String> of(),
+				source("test.FooHandler", "@Handles(FooAction.class)"
+						+ " public class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; } }"),
+				source("test.OtherHandler", "@Handles(FooAction.class)"
+						+ " public class OtherHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; } }"));
+		assertError(errors, "another handler is annotated for test.FooAction");
+	}
+
+	@Test
+	public void testInaccessibleHandler() {
+		List<String> errors = process(
+				ImmutableList.of("-A" + HandlesProcessor.MODULE_OPTION
+						+ "=other.Bindings"),
+				source("test.FooHandler", "@Handles(FooAction.class)"
+						+ " class FooHandler"
+						+ " implements ActionHandler<FooAction, FooResult> {"
+						+ " public FooResult execute(FooAction action) {"
+						+ " return null; } }"));
+		assertError(errors, "handler must be public to be bound by "
+				+ "other.Bindings");
+		assertFalse(new File(generated, "other/Bindings.java").exists());
+	}
+
+	private List<String> process(List<String> options,
+			JavaFileObject... handlers) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		List<String> allOptions = Lists.newArrayList("-proc:only", "-s",
+				generated.getPath());
+		allOptions.addAll(options);
+		List<JavaFileObject> sources = Lists.newArrayList(FOO_ACTION,
+				BAR_ACTION, FOO_RESULT);
+		sources.addAll(ImmutableList.copyOf(handlers));
+		CompilationTask task = compiler.getTask(null, null, diagnostics,
+				allOptions, null, sources);
+		task.setProcessors(ImmutableList.of(new HandlesProcessor()));
+		task.call();
+		List<String> errors = Lists.newArrayList();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+				.getDiagnostics()) {
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				errors.add(diagnostic.getMessage(null));
+			}
+		}
+		return errors;
+	}
+
+	private static void assertError(List<String> errors, String expected) {
+		for (String error : errors) {
+			if (error.contains(expected)) {
+				return;
+			}
+		}
+		fail("expected an error containing \"" + expected + "\", but got "
+				+ errors);
+	}
+
+	private static JavaFileObject source(String name, String body) {
+		int lastDot = name.lastIndexOf('.');
+		final String code = "package " + name.substring(0, lastDot) + "; "
+				+ IMPORTS + " " + body;
+		return new SimpleJavaFileObject(URI.create("string:///"
+				+ name.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return code;
+			}
+		};
+	}
+}
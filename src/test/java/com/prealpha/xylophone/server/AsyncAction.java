@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+import com.prealpha.xylophone.server.AsyncAction.AsyncResult;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+final class AsyncAction implements Action<AsyncResult> {
+	private final boolean exception;
+
+	AsyncAction(boolean exception) {
+		this.exception = exception;
+	}
+
+	static final class AsyncResult implements Result {
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+	}
+
+	static final class AsyncHandler implements
+			AsyncActionHandler<AsyncAction, AsyncResult> {
+		@Override
+		public void execute(final AsyncAction action,
+				final AsyncCallback<AsyncResult> callback) {
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException ix) {
+					}
+					if (action.exception) {
+						callback.onFailure(new ActionException());
+					} else {
+						callback.onSuccess(new AsyncResult());
+					}
+				}
+			}.start();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.OverflowResult;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.Result;
+
+public final class BacklogTest {
+	@Test
+	public void testDropOldest() throws ActionException {
+		PublishingDispatcher dispatcher = createDispatcher(
+				BacklogOverflowPolicy.DROP_OLDEST);
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		dispatcher.execute(new CompleteAction(false));
+		CompleteResult second = dispatcher.execute(new CompleteAction(false));
+		CompleteResult third = dispatcher.execute(new CompleteAction(false));
+		List<Result> results = dispatcher.check(subscriptionId);
+		assertOverflow(results, 1, false);
+		assertEquals(ImmutableList.of(second, third), results.subList(1, 3));
+	}
+
+	@Test
+	public void testDropNewest() throws ActionException {
+		PublishingDispatcher dispatcher = createDispatcher(
+				BacklogOverflowPolicy.DROP_NEWEST);
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		CompleteResult first = dispatcher.execute(new CompleteAction(false));
+		CompleteResult second = dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		List<Result> results = dispatcher.check(subscriptionId);
+		assertOverflow(results, 1, false);
+		assertEquals(ImmutableList.of(first, second), results.subList(1, 3));
+		dispatcher.execute(new CompleteAction(false));
+		assertEquals(1, dispatcher.check(subscriptionId).size());
+	}
+
+	@Test
+	public void testConflate() throws ActionException {
+		PublishingDispatcher dispatcher = createDispatcher(
+				BacklogOverflowPolicy.CONFLATE);
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		CompleteAction action = new CompleteAction(false);
+		dispatcher.execute(action);
+		CompleteResult second = dispatcher.execute(new CompleteAction(false));
+		CompleteResult third = dispatcher.execute(action);
+		List<Result> results = dispatcher.check(subscriptionId);
+		assertOverflow(results, 1, false);
+		assertEquals(ImmutableList.of(second, third), results.subList(1, 3));
+	}
+
+	@Test
+	public void testTerminate() throws ActionException {
+		PublishingDispatcher dispatcher = createDispatcher(
+				BacklogOverflowPolicy.TERMINATE);
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		List<Result> results = dispatcher.check(subscriptionId);
+		assertEquals(1, results.size());
+		assertOverflow(results, 3, true);
+		try {
+			dispatcher.check(subscriptionId);
+			fail();
+		} catch (IllegalArgumentException iax) {
+		}
+	}
+
+	private static void assertOverflow(List<Result> results, int dropped,
+			boolean terminated) {
+		assertTrue(results.get(0) instanceof OverflowResult);
+		OverflowResult overflow = (OverflowResult) results.get(0);
+		assertEquals(dropped, overflow.getDroppedCount());
+		assertEquals(terminated, overflow.isTerminated());
+	}
+
+	private static PublishingDispatcher createDispatcher(
+			final BacklogOverflowPolicy policy) {
+		return Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				HttpServletRequest request = createNiceMock(
+						HttpServletRequest.class);
+				replay(request);
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bind(HttpServletRequest.class).toInstance(request);
+				bindSubscriptionCapacity(2, policy);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+			}
+		}).getInstance(PublishingDispatcher.class);
+	}
+}
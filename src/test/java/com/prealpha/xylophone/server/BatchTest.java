@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.util.Modules;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.filter.BatchActionModule;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.filter.BatchAction;
+import com.prealpha.xylophone.shared.filter.BatchResult;
+import com.prealpha.xylophone.shared.filter.BatchedActionSuccess;
+
+public final class BatchTest {
+	@Test(timeout = 5000)
+	public void testBoundedVirtualThreads() throws ActionException {
+		Dispatcher dispatcher = createDispatcher(new TestModule() {
+			@Override
+			protected void configureBulkhead() {
+				bindVirtualThreads(1, 8);
+			}
+		});
+		assertBatchSucceeds(dispatcher);
+	}
+
+	@Test(timeout = 5000)
+	public void testPriorityScheduling() throws ActionException {
+		Dispatcher dispatcher = createDispatcher(new TestModule() {
+			@Override
+			protected void configureBulkhead() {
+				bindPriorityScheduling(1, 8);
+			}
+		});
+		assertBatchSucceeds(dispatcher);
+	}
+
+	private static void assertBatchSucceeds(Dispatcher dispatcher)
+			throws ActionException {
+		BatchResult result = dispatcher.execute(new BatchAction(ImmutableList
+				.of(new CompleteAction(false), new CompleteAction(false))));
+		assertEquals(2, result.getResults().size());
+		for (Object batched : result.getResults()) {
+			assertTrue(batched instanceof BatchedActionSuccess);
+		}
+	}
+
+	private static Dispatcher createDispatcher(TestModule module) {
+		return Guice.createInjector(
+				Modules.override(new BatchActionModule()).with(module))
+				.getInstance(Dispatcher.class);
+	}
+
+	private abstract static class TestModule extends ActionModule {
+		@Override
+		protected void configureActions() {
+			HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+			replay(request);
+			bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+			bind(HttpServletRequest.class).toInstance(request);
+			bindAction(CompleteAction.class).to(CompleteHandler.class);
+			configureBulkhead();
+		}
+
+		protected abstract void configureBulkhead();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.io.Serializable;
+
+import com.prealpha.xylophone.server.BroadcastAction.BroadcastResult;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Result;
+
+final class BroadcastAction implements Action<BroadcastResult>, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final int value;
+
+	BroadcastAction(int value) {
+		this.value = value;
+	}
+
+	static final class BroadcastResult implements Result, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int value;
+
+		BroadcastResult(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof BroadcastResult
+					&& ((BroadcastResult) obj).value == value);
+		}
+
+		@Override
+		public int hashCode() {
+			return value;
+		}
+	}
+
+	static final class BroadcastHandler implements
+			ActionHandler<BroadcastAction, BroadcastResult> {
+		@Override
+		public BroadcastResult execute(BroadcastAction action) {
+			return new BroadcastResult(action.value);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.SlowAction.SlowHandler;
+import com.prealpha.xylophone.server.SlowAction.SlowResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.BulkheadFullException;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+@RunWith(MycilaJunitRunner.class)
+public final class BulkheadTest {
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bindBulkhead("slow", 1, 0);
+				bindAction(SlowAction.class, "slow").to(SlowHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	/*
+	 * The request is used from several threads at once, so it must be put
+	 * into the replay state before any of them use it.
+	 */
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testBulkheadAction() throws ActionException {
+		SlowResult result = dispatcher.execute(new SlowAction());
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+	}
+
+	@Test(expected = BulkheadFullException.class)
+	public void testBulkheadFull() throws ActionException,
+			InterruptedException {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					dispatcher.execute(new SlowAction());
+				} catch (ActionException ax) {
+				}
+			}
+		};
+		thread.start();
+		Thread.sleep(100);
+		try {
+			dispatcher.execute(new SlowAction());
+		} finally {
+			thread.join();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.prealpha.xylophone.server.CachedAction.CachedResult;
+import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.filter.CacheableAction;
+
+final class CachedAction implements CacheableAction<CachedResult> {
+	private final long lifetime;
+
+	CachedAction(long lifetime) {
+		this.lifetime = lifetime;
+	}
+
+	@Override
+	public long getCacheExpiry(CachedResult result) {
+		return result.created + lifetime;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof CachedAction) {
+			return (lifetime == ((CachedAction) obj).lifetime);
+		} else {
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) lifetime;
+	}
+
+	static final class CachedResult implements Result {
+		private final long created;
+
+		CachedResult() {
+			created = System.currentTimeMillis();
+		}
+
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+	}
+
+	static final class CachedHandler implements
+			ActionHandler<CachedAction, CachedResult> {
+		static final AtomicInteger executions = new AtomicInteger();
+
+		@Override
+		public CachedResult execute(CachedAction action) {
+			executions.incrementAndGet();
+			return new CachedResult();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public final class ConcurrencyLimiterTest {
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+	@Test
+	public void testLimit() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertEquals(2, limiter.getInFlight());
+	}
+
+	@Test
+	public void testIncrease() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 3);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limiter.tryAcquire());
+			assertTrue(limiter.tryAcquire());
+			limiter.release(CompleteAction.class, FAST, false);
+			limiter.release(CompleteAction.class, FAST, false);
+		}
+		assertEquals(3, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testDecrease() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10);
+		assertTrue(limiter.tryAcquire());
+		limiter.release(CompleteAction.class, FAST, false);
+		assertTrue(limiter.tryAcquire());
+		limiter.release(CompleteAction.class, SLOW, false);
+		assertEquals(9, limiter.getLimit());
+		assertTrue(limiter.tryAcquire());
+		limiter.release(CompleteAction.class, FAST, true);
+		assertEquals(8, limiter.getLimit());
+	}
+
+	@Test
+	public void testMixedClasses() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 10);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(limiter.tryAcquire());
+			limiter.release(CompleteAction.class, FAST, false);
+			assertTrue(limiter.tryAcquire());
+			limiter.release(SlowAction.class, SLOW, false);
+		}
+		assertEquals(10, limiter.getLimit());
+	}
+}
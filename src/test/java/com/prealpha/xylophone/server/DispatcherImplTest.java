@@ -16,28 +16,47 @@
 
 package com.prealpha.xylophone.server;
 
+import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.servlet.RequestScoped;
+import com.google.inject.servlet.ServletModule;
 import com.mycila.testing.junit.MycilaJunitRunner;
-import com.mycila.testing.plugin.easymock.Mock;
 import com.mycila.testing.plugin.guice.Bind;
 import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.AsyncAction.AsyncHandler;
+import com.prealpha.xylophone.server.AsyncAction.AsyncResult;
 import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
 import com.prealpha.xylophone.server.CompleteAction.CompleteResult;
 import com.prealpha.xylophone.server.PartialAction.PartialHandler;
 import com.prealpha.xylophone.server.PartialAction.PartialResult;
+import com.prealpha.xylophone.server.StreamingAction.StreamingHandler;
+import com.prealpha.xylophone.server.StreamingAction.StreamingResult;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionClassPredicate;
 import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.DeadlineExceededException;
 import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.EqualActionPredicate;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.TimedAction;
 
 @RunWith(MycilaJunitRunner.class)
 public final class DispatcherImplTest {
@@ -51,6 +70,9 @@ public final class DispatcherImplTest {
 				bindAction(PartialAction.class).to(PartialHandler.class).in(
 						Singleton.class);
 				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindAsyncAction(AsyncAction.class).to(AsyncHandler.class);
+				bindStreamingAction(StreamingAction.class).to(
+						StreamingHandler.class);
 			}
 		};
 	}
@@ -58,10 +80,20 @@ public final class DispatcherImplTest {
 	@Inject
 	private Dispatcher dispatcher;
 
-	@SuppressWarnings("unused")
-	@Mock(Mock.Type.NICE)
+	@Inject
+	private PublishingDispatcher publishingDispatcher;
+
+	/*
+	 * The request must be put into the replay state before it is used, since
+	 * the dispatcher may use it more than once per action.
+	 */
 	@Bind
-	private HttpServletRequest request;
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
 
 	@Test
 	public void testPartialAction() throws ActionException {
@@ -84,4 +116,141 @@ public final class DispatcherImplTest {
 		CompleteAction action = new CompleteAction(true);
 		dispatcher.execute(action);
 	}
+
+	@Test
+	public void testFailingPredicate() throws ActionException {
+		publishingDispatcher.subscribe(new Predicate<Action<?>>() {
+			@Override
+			public boolean apply(Action<?> input) {
+				throw new IllegalStateException();
+			}
+		});
+		publishingDispatcher.subscribe(new Predicate<Action<?>>() {
+			@Override
+			public boolean apply(Action<?> input) {
+				throw new Error();
+			}
+		});
+		long first = publishingDispatcher.subscribe(Predicates.alwaysTrue());
+		long second = publishingDispatcher.subscribe(Predicates.alwaysTrue());
+		CompleteResult result = dispatcher.execute(new CompleteAction(false));
+		assertEquals(ImmutableList.of(result),
+				publishingDispatcher.check(first));
+		assertEquals(ImmutableList.of(result),
+				publishingDispatcher.check(second));
+	}
+
+	@Test
+	public void testAsyncAction() throws ActionException {
+		AsyncAction action = new AsyncAction(false);
+		AsyncResult result = dispatcher.execute(action);
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+	}
+
+	@Test(expected = ActionException.class)
+	public void testAsyncException() throws ActionException {
+		AsyncAction action = new AsyncAction(true);
+		dispatcher.execute(action);
+	}
+
+	@Test
+	public void testStreamingAction() throws ActionException {
+		long subscriptionId = publishingDispatcher.subscribe(Predicates
+				.alwaysTrue());
+		StreamingAction action = new StreamingAction();
+		StreamingResult result = dispatcher.execute(action);
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+		ImmutableList<Result> published = publishingDispatcher
+				.check(subscriptionId);
+		assertEquals(5, published.size());
+		assertSame(result, published.get(4));
+		publishingDispatcher.cancel(subscriptionId);
+	}
+
+	@Test
+	public void testConflatedSubscription() throws ActionException {
+		long subscriptionId = publishingDispatcher.subscribe(
+				Predicates.alwaysTrue(), true);
+		StreamingAction action = new StreamingAction();
+		StreamingResult result = dispatcher.execute(action);
+		ImmutableList<Result> published = publishingDispatcher
+				.check(subscriptionId);
+		assertEquals(1, published.size());
+		assertSame(result, published.get(0));
+		publishingDispatcher.cancel(subscriptionId);
+	}
+
+	@Test
+	public void testIndexedSubscriptions() throws ActionException {
+		CompleteAction action = new CompleteAction(false);
+		long classId = publishingDispatcher
+				.subscribe(new ActionClassPredicate(CompleteAction.class));
+		long otherId = publishingDispatcher
+				.subscribe(new ActionClassPredicate(StreamingAction.class));
+		long actionId = publishingDispatcher
+				.subscribe(new EqualActionPredicate(action));
+		CompleteResult first = dispatcher.execute(action);
+		CompleteResult second = dispatcher.execute(new CompleteAction(false));
+		assertEquals(ImmutableList.of(first, second),
+				publishingDispatcher.check(classId));
+		assertEquals(ImmutableList.of(first),
+				publishingDispatcher.check(actionId));
+		assertTrue(publishingDispatcher.check(otherId).isEmpty());
+		publishingDispatcher.cancel(classId);
+		publishingDispatcher.cancel(otherId);
+		publishingDispatcher.cancel(actionId);
+		dispatcher.execute(action);
+	}
+
+	@Test
+	public void testMultiplexedCheck() throws ActionException {
+		long completeId = publishingDispatcher
+				.subscribe(new ActionClassPredicate(CompleteAction.class));
+		long streamingId = publishingDispatcher
+				.subscribe(new ActionClassPredicate(StreamingAction.class));
+		ImmutableSet<Long> subscriptionIds = ImmutableSet.of(completeId,
+				streamingId);
+		assertTrue(publishingDispatcher.check(subscriptionIds).isEmpty());
+		CompleteResult result = dispatcher.execute(new CompleteAction(false));
+		assertEquals(ImmutableMap.of(completeId, ImmutableList.of(result)),
+				publishingDispatcher.check(subscriptionIds));
+		publishingDispatcher.cancel(completeId);
+		publishingDispatcher.cancel(streamingId);
+	}
+
+	@Test
+	public void testTimedAction() throws ActionException {
+		CompleteAction action = new CompleteAction(false);
+		CompleteResult result = dispatcher
+				.execute(new TimedAction<CompleteResult>(action, 1000));
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+	}
+
+	@Test(expected = DeadlineExceededException.class)
+	public void testAsyncDeadline() throws ActionException {
+		AsyncAction action = new AsyncAction(false);
+		dispatcher.execute(new TimedAction<AsyncResult>(action, 50));
+	}
+
+	@Test(expected = DeadlineExceededException.class)
+	public void testPartialDeadline() throws ActionException {
+		PartialAction action = new PartialAction();
+		dispatcher.execute(new TimedAction<PartialResult>(action, 700));
+	}
+
+	@Test
+	public void testOutsideRequest() throws ActionException {
+		Dispatcher dispatcher = Guice.createInjector(new ServletModule(),
+				new ActionModule() {
+					@Override
+					protected void configureActions() {
+						bindAsyncAction(AsyncAction.class).to(
+								AsyncHandler.class);
+					}
+				}).getInstance(Dispatcher.class);
+		assertNotNull(dispatcher.execute(new AsyncAction(false)));
+	}
 }
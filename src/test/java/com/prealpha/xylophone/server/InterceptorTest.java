@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.AsyncAction.AsyncHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.StreamingAction.StreamingHandler;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.Result;
+
+@RunWith(MycilaJunitRunner.class)
+public final class InterceptorTest {
+	private final List<String> intercepted = Lists.newArrayList();
+
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				interceptActions().toInstance(new RecordingInterceptor("all"));
+				interceptActions(CompleteAction.class).toInstance(
+						new RecordingInterceptor("complete"));
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindStreamingAction(StreamingAction.class).to(
+						StreamingHandler.class);
+				bindAsyncAction(AsyncAction.class).to(AsyncHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testInterceptorOrder() throws ActionException {
+		dispatcher.execute(new CompleteAction(false));
+		assertEquals(ImmutableList.of("all", "complete"), intercepted);
+	}
+
+	@Test
+	public void testGlobalInterceptor() throws ActionException {
+		dispatcher.execute(new StreamingAction());
+		assertEquals(ImmutableList.of("all"), intercepted);
+	}
+
+	@Test
+	public void testAsyncAction() throws ActionException {
+		dispatcher.execute(new AsyncAction(false));
+		assertTrue(intercepted.isEmpty());
+	}
+
+	private final class RecordingInterceptor implements ActionInterceptor {
+		private final String name;
+
+		private RecordingInterceptor(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public <R extends Result> R intercept(Action<R> action, Chain<R> chain)
+				throws ActionException {
+			intercepted.add(name);
+			return chain.proceed();
+		}
+	}
+}
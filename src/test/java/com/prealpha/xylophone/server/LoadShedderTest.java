@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public final class LoadShedderTest {
+	private static final long BELOW_TARGET = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final long ABOVE_TARGET = TimeUnit.MILLISECONDS.toNanos(20);
+
+	@Test
+	public void testBelowTarget() {
+		LoadShedder shedder = new LoadShedder(10, 50, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 100; i++) {
+			assertFalse(shedder.shouldShed(BELOW_TARGET));
+		}
+	}
+
+	@Test
+	public void testBurst() throws InterruptedException {
+		LoadShedder shedder = new LoadShedder(10, 50, TimeUnit.MILLISECONDS);
+		assertFalse(shedder.shouldShed(ABOVE_TARGET));
+		Thread.sleep(25);
+		assertFalse(shedder.shouldShed(BELOW_TARGET));
+		Thread.sleep(50);
+		assertFalse(shedder.shouldShed(ABOVE_TARGET));
+	}
+
+	@Test
+	public void testPersistentDelay() throws InterruptedException {
+		LoadShedder shedder = new LoadShedder(10, 50, TimeUnit.MILLISECONDS);
+		assertFalse(shedder.shouldShed(ABOVE_TARGET));
+		Thread.sleep(60);
+		assertTrue(shedder.shouldShed(ABOVE_TARGET));
+		assertFalse(shedder.shouldShed(ABOVE_TARGET));
+		Thread.sleep(60);
+		assertTrue(shedder.shouldShed(ABOVE_TARGET));
+		assertFalse(shedder.shouldShed(BELOW_TARGET));
+		assertFalse(shedder.shouldShed(ABOVE_TARGET));
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.prealpha.xylophone.server.MergedAction.MergedResult;
+import com.prealpha.xylophone.shared.Result;
+import com.prealpha.xylophone.shared.filter.MergeableAction;
+
+final class MergedAction implements MergeableAction<MergedResult> {
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof MergedAction);
+	}
+
+	@Override
+	public int hashCode() {
+		return MergedAction.class.hashCode();
+	}
+
+	static final class MergedResult implements Result {
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+	}
+
+	static final class MergedHandler implements
+			ActionHandler<MergedAction, MergedResult> {
+		static final AtomicInteger executions = new AtomicInteger();
+
+		static final AtomicBoolean failing = new AtomicBoolean();
+
+		@Override
+		public MergedResult execute(MergedAction action) {
+			executions.incrementAndGet();
+			if (failing.get()) {
+				throw new Error();
+			}
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException ix) {
+			}
+			return new MergedResult();
+		}
+	}
+}
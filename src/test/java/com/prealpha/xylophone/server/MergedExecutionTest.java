@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.MergedAction.MergedHandler;
+import com.prealpha.xylophone.server.MergedAction.MergedResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+@RunWith(MycilaJunitRunner.class)
+public final class MergedExecutionTest {
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bindAction(MergedAction.class).to(MergedHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	/*
+	 * The request is used from several threads at once, so it must be put
+	 * into the replay state before any of them use it.
+	 */
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testMergedExecution() throws ActionException,
+			InterruptedException {
+		int executions = MergedHandler.executions.get();
+		final AtomicReference<MergedResult> other = new AtomicReference<MergedResult>();
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					other.set(dispatcher.execute(new MergedAction()));
+				} catch (ActionException ax) {
+				}
+			}
+		};
+		thread.start();
+		Thread.sleep(100);
+		MergedResult result = dispatcher.execute(new MergedAction());
+		thread.join();
+		assertNotNull(result);
+		assertSame(result, other.get());
+		assertEquals(executions + 1, MergedHandler.executions.get());
+	}
+
+	@Test(timeout = 5000)
+	public void testError() throws ActionException {
+		MergedHandler.failing.set(true);
+		boolean failed = false;
+		try {
+			dispatcher.execute(new MergedAction());
+		} catch (Error e) {
+			failed = true;
+		} finally {
+			MergedHandler.failing.set(false);
+		}
+		assertTrue(failed);
+		assertNotNull(dispatcher.execute(new MergedAction()));
+	}
+
+	@Test
+	public void testSequentialExecution() throws ActionException {
+		int executions = MergedHandler.executions.get();
+		MergedResult first = dispatcher.execute(new MergedAction());
+		MergedResult second = dispatcher.execute(new MergedAction());
+		assertNotSame(first, second);
+		assertEquals(executions + 2, MergedHandler.executions.get());
+	}
+}
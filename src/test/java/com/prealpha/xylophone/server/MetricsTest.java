@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.base.Predicates;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.AsyncAction.AsyncHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.PartialAction.PartialHandler;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+
+@RunWith(MycilaJunitRunner.class)
+public final class MetricsTest {
+	private static int instances;
+
+	private final String name = "MetricsTest-" + (++instances);
+
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				exportMetrics(name);
+				bindConcurrencyLimit(4, 16);
+				bindAction(PartialAction.class).to(PartialHandler.class).in(
+						Singleton.class);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindAsyncAction(AsyncAction.class).to(AsyncHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private PublishingDispatcher dispatcher;
+
+	@Inject
+	private DispatcherMetrics metrics;
+
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testActionStats() throws ActionException {
+		dispatcher.execute(new CompleteAction(false));
+		try {
+			dispatcher.execute(new CompleteAction(true));
+		} catch (ActionException ax) {
+		}
+		dispatcher.execute(new PartialAction());
+
+		ActionStats completeStats = metrics
+				.getActionStats(CompleteAction.class);
+		assertEquals(2, completeStats.getInvocations());
+		assertEquals(1, completeStats.getErrors());
+		assertEquals(0, completeStats.getPartialResults());
+
+		ActionStats partialStats = metrics.getActionStats(PartialAction.class);
+		assertEquals(1, partialStats.getInvocations());
+		assertEquals(0, partialStats.getErrors());
+		assertEquals(4, partialStats.getPartialResults());
+		assertTrue(partialStats.getMedianLatency() >= 2500000);
+		assertTrue(partialStats.getMaxLatency() >= partialStats
+				.getLatency99());
+	}
+
+	@Test
+	public void testSubscriptionCount() throws ActionException {
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		assertEquals(1, metrics.getSubscriptionCount());
+		assertEquals(0, metrics.getTotalBacklogSize());
+		dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		assertEquals(2, metrics.getTotalBacklogSize());
+		assertEquals(2, metrics.getMaxBacklogSize());
+		dispatcher.cancel(subscriptionId);
+		assertEquals(0, metrics.getSubscriptionCount());
+		assertEquals(0, metrics.getMaxBacklogSize());
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws ActionException {
+		assertEquals(4, metrics.getConcurrencyLimit());
+		dispatcher.execute(new CompleteAction(false));
+		assertEquals(0, metrics.getConcurrency());
+		assertTrue(metrics.getConcurrencyLimit() >= 3);
+	}
+
+	@Test
+	public void testSuspendedConcurrency() throws ActionException,
+			InterruptedException {
+		// the container never dispatches the request again
+		AsyncContext context = createNiceMock(AsyncContext.class);
+		reset(request);
+		expect(request.isAsyncSupported()).andReturn(true).anyTimes();
+		expect(request.startAsync()).andReturn(context).anyTimes();
+		replay(context, request);
+		assertNull(dispatcher.execute(new AsyncAction(false)));
+		assertEquals(1, metrics.getConcurrency());
+		for (int i = 0; i < 100 && metrics.getConcurrency() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, metrics.getConcurrency());
+	}
+
+	@Test
+	public void testExport() throws ActionException, JMException {
+		dispatcher.execute(new CompleteAction(false));
+		ObjectName objectName = new ObjectName(
+				"com.prealpha.xylophone:type=Dispatcher,name="
+						+ ObjectName.quote(name));
+		TabularData stats = (TabularData) ManagementFactory
+				.getPlatformMBeanServer().getAttribute(objectName,
+						"ActionStats");
+		assertEquals(1, stats.size());
+	}
+
+	@Test
+	public void testReexport() throws JMException {
+		Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bind(HttpServletRequest.class).toInstance(request);
+				exportMetrics(name);
+			}
+		});
+		ObjectName objectName = new ObjectName(
+				"com.prealpha.xylophone:type=Dispatcher,name="
+						+ ObjectName.quote(name));
+		assertEquals(0, ManagementFactory.getPlatformMBeanServer()
+				.getAttribute(objectName, "SubscriptionCount"));
+	}
+}
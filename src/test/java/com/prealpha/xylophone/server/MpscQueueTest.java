@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public final class MpscQueueTest {
+	private static final int PRODUCERS = 4;
+
+	private static final int ELEMENTS = 10000;
+
+	@Test
+	public void testOrder() {
+		MpscQueue<Integer> queue = new MpscQueue<Integer>();
+		assertTrue(queue.isEmpty());
+		assertEquals(1, queue.offer(1));
+		assertEquals(2, queue.offer(2));
+		assertEquals(3, queue.offer(3));
+		assertEquals(3, queue.size());
+		assertEquals(ImmutableList.of(1, 2, 3), queue.drain());
+		assertTrue(queue.isEmpty());
+		assertTrue(queue.drain().isEmpty());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final MpscQueue<int[]> queue = new MpscQueue<int[]>();
+		final CountDownLatch done = new CountDownLatch(PRODUCERS);
+		for (int i = 0; i < PRODUCERS; i++) {
+			final int producer = i;
+			new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < ELEMENTS; j++) {
+						queue.offer(new int[] { producer, j });
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		List<int[]> drained = Lists.newArrayList();
+		while (done.getCount() > 0 || !queue.isEmpty()) {
+			drained.addAll(queue.drain());
+		}
+		assertEquals(PRODUCERS * ELEMENTS, drained.size());
+		int[] next = new int[PRODUCERS];
+		for (int[] element : drained) {
+			assertEquals(next[element[0]]++, element[1]);
+		}
+	}
+}
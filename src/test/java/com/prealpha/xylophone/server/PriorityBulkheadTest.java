@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.prealpha.xylophone.shared.BulkheadFullException;
+import com.prealpha.xylophone.shared.PrioritizedAction.Priority;
+
+public final class PriorityBulkheadTest {
+	@Test
+	public void testPriorityOrder() throws BulkheadFullException,
+			InterruptedException {
+		Bulkhead bulkhead = Bulkhead.prioritized("test", 1, 3);
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(3);
+		List<Priority> order = Collections
+				.synchronizedList(Lists.<Priority> newArrayList());
+		bulkhead.execute(new PriorityAction(Priority.NORMAL), new Blocker(
+				blocked));
+		for (Priority priority : new Priority[] { Priority.BACKGROUND,
+				Priority.NORMAL, Priority.INTERACTIVE }) {
+			bulkhead.execute(new PriorityAction(priority), new Recorder(
+					priority, order, finished));
+		}
+		blocked.countDown();
+		assertTrue(finished.await(1, TimeUnit.SECONDS));
+		assertEquals(ImmutableList.of(Priority.INTERACTIVE, Priority.NORMAL,
+				Priority.BACKGROUND), order);
+	}
+
+	@Test
+	public void testPriorityBulkheadFull() throws BulkheadFullException,
+			InterruptedException {
+		Bulkhead bulkhead = Bulkhead.prioritized("test", 1, 1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		bulkhead.execute(new PriorityAction(Priority.NORMAL), new Blocker(
+				blocked));
+		bulkhead.execute(new PriorityAction(Priority.NORMAL), new Blocker(
+				finished));
+		try {
+			bulkhead.execute(new PriorityAction(Priority.INTERACTIVE),
+					new Blocker(finished));
+			fail();
+		} catch (BulkheadFullException bfx) {
+		}
+		blocked.countDown();
+		finished.countDown();
+	}
+
+	private static final class Blocker implements Runnable {
+		private final CountDownLatch latch;
+
+		private Blocker(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void run() {
+			try {
+				latch.await();
+			} catch (InterruptedException ix) {
+			}
+		}
+	}
+
+	private static final class Recorder implements Runnable {
+		private final Priority priority;
+
+		private final List<Priority> order;
+
+		private final CountDownLatch finished;
+
+		private Recorder(Priority priority, List<Priority> order,
+				CountDownLatch finished) {
+			this.priority = priority;
+			this.order = order;
+			this.finished = finished;
+		}
+
+		@Override
+		public void run() {
+			order.add(priority);
+			finished.countDown();
+		}
+	}
+}
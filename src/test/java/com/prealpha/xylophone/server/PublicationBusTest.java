@@ -0,0 +1,224 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.prealpha.xylophone.server.BroadcastAction.BroadcastHandler;
+import com.prealpha.xylophone.server.BroadcastAction.BroadcastResult;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+public final class PublicationBusTest {
+	@Test
+	public void testLoopback() throws ActionException, InterruptedException {
+		LoopbackPublicationBus firstBus = new LoopbackPublicationBus();
+		PublishingDispatcherImpl first = createDispatcher(firstBus);
+		PublishingDispatcherImpl second = createDispatcher(
+				new LoopbackPublicationBus(firstBus));
+		long firstId = first.subscribe(Predicates.alwaysTrue());
+		long secondId = second.subscribe(Predicates.alwaysTrue());
+
+		BroadcastResult result = first.execute(new BroadcastAction(1));
+		assertEquals(ImmutableList.of(result), first.check(firstId));
+		assertEquals(ImmutableList.of(result),
+				awaitResults(second, secondId, 1));
+		Thread.sleep(50);
+		assertTrue(first.check(firstId).isEmpty());
+	}
+
+	@Test
+	public void testBatching() throws ActionException, InterruptedException {
+		LoopbackPublicationBus firstBus = new LoopbackPublicationBus();
+		final List<Integer> batchSizes = Lists.newArrayList();
+		new LoopbackPublicationBus(firstBus)
+				.start(new PublicationBus.Receiver() {
+					@Override
+					public void receive(List<Publication> publications) {
+						synchronized (batchSizes) {
+							batchSizes.add(publications.size());
+						}
+					}
+				});
+		PublishingDispatcherImpl dispatcher = createDispatcher(firstBus);
+		for (int i = 0; i < 12; i++) {
+			dispatcher.execute(new BroadcastAction(i));
+		}
+		Thread.sleep(200);
+		synchronized (batchSizes) {
+			int total = 0;
+			for (int size : batchSizes) {
+				assertTrue(size <= 4);
+				total += size;
+			}
+			assertEquals(12, total);
+			assertTrue(batchSizes.size() < 12);
+		}
+	}
+
+	@Test
+	public void testSocket() throws ActionException, IOException,
+			InterruptedException {
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		InetSocketAddress local = new InetSocketAddress(loopback, 0);
+		Set<String> packages = ImmutableSet.of("com.prealpha.xylophone");
+		SocketPublicationBus firstBus = new SocketPublicationBus(local,
+				ImmutableList.<InetSocketAddress> of(), packages);
+		SocketPublicationBus secondBus = new SocketPublicationBus(local,
+				ImmutableList.of(new InetSocketAddress(loopback, firstBus
+						.getLocalPort())), packages);
+		try {
+			PublishingDispatcherImpl first = createDispatcher(firstBus);
+			PublishingDispatcherImpl second = createDispatcher(secondBus);
+			long subscriptionId = first.subscribe(Predicates.alwaysTrue());
+
+			second.execute(new CompleteAction(false));
+			BroadcastResult result = second.execute(new BroadcastAction(2));
+			assertEquals(ImmutableList.of(result),
+					awaitResults(first, subscriptionId, 1));
+		} finally {
+			firstBus.close();
+			secondBus.close();
+		}
+	}
+
+	@Test
+	public void testSocketFilter() throws IOException, InterruptedException {
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		InetSocketAddress local = new InetSocketAddress(loopback, 0);
+		SocketPublicationBus firstBus = new SocketPublicationBus(local,
+				ImmutableList.<InetSocketAddress> of(),
+				ImmutableSet.<String> of());
+		SocketPublicationBus secondBus = new SocketPublicationBus(local,
+				ImmutableList.of(new InetSocketAddress(loopback, firstBus
+						.getLocalPort())), ImmutableSet.<String> of());
+		try {
+			final List<Publication> received = Lists.newArrayList();
+			firstBus.start(new PublicationBus.Receiver() {
+				@Override
+				public void receive(List<Publication> publications) {
+					synchronized (received) {
+						received.addAll(publications);
+					}
+				}
+			});
+			secondBus.start(new PublicationBus.Receiver() {
+				@Override
+				public void receive(List<Publication> publications) {
+				}
+			});
+			secondBus.send(ImmutableList.of(new Publication(
+					new BroadcastAction(3), new BroadcastResult(3))));
+			Thread.sleep(200);
+			synchronized (received) {
+				assertTrue(received.isEmpty());
+			}
+		} finally {
+			firstBus.close();
+			secondBus.close();
+		}
+	}
+
+	@Test
+	public void testOversizedFrame() throws IOException {
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		SocketPublicationBus bus = new SocketPublicationBus(
+				new InetSocketAddress(loopback, 0),
+				ImmutableList.<InetSocketAddress> of(),
+				ImmutableSet.<String> of());
+		Socket socket = new Socket(loopback, bus.getLocalPort());
+		try {
+			bus.start(new PublicationBus.Receiver() {
+				@Override
+				public void receive(List<Publication> publications) {
+					fail();
+				}
+			});
+			socket.setSoTimeout(1000);
+			DataOutputStream out = new DataOutputStream(
+					socket.getOutputStream());
+			out.writeInt(1);
+			out.writeInt(Integer.MAX_VALUE);
+			out.flush();
+			assertEquals(-1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+			bus.close();
+		}
+	}
+
+	@Test
+	public void testBatcherOverflow() {
+		PublicationBatcher batcher = new PublicationBatcher(2, 1000);
+		for (int i = 0; i < 200; i++) {
+			batcher.add(new Publication(new BroadcastAction(i),
+					new BroadcastResult(i)));
+		}
+		assertEquals(72, batcher.getDroppedCount());
+	}
+
+	private static PublishingDispatcherImpl createDispatcher(
+			final PublicationBus bus) {
+		return Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				HttpServletRequest request = createNiceMock(
+						HttpServletRequest.class);
+				replay(request);
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bind(HttpServletRequest.class).toInstance(request);
+				bindAction(BroadcastAction.class).to(BroadcastHandler.class);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindPublicationBus(4, 10).toInstance(bus);
+			}
+		}).getInstance(PublishingDispatcherImpl.class);
+	}
+
+	private static List<Result> awaitResults(
+			PublishingDispatcherImpl dispatcher, long subscriptionId,
+			int count) throws InterruptedException {
+		List<Result> results = Lists.newArrayList();
+		for (int i = 0; i < 200 && results.size() < count; i++) {
+			results.addAll(dispatcher.check(subscriptionId));
+			if (results.size() < count) {
+				Thread.sleep(10);
+			}
+		}
+		return results;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public final class PublishPipelineTest {
+	private static final Object ACTION = new Object();
+
+	@Test
+	public void testOrder() throws InterruptedException {
+		PublishPipeline pipeline = new PublishPipeline(16, 2,
+				PublishOverflowPolicy.BLOCK);
+		final List<Integer> delivered = Lists.newArrayList();
+		final CountDownLatch done = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++) {
+			final int n = i;
+			pipeline.publish(ACTION, new Runnable() {
+				@Override
+				public void run() {
+					delivered.add(n);
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), delivered);
+	}
+
+	@Test
+	public void testCallerRuns() throws InterruptedException {
+		PublishPipeline pipeline = new PublishPipeline(1, 1,
+				PublishOverflowPolicy.CALLER_RUNS);
+		CountDownLatch release = block(pipeline);
+		final Thread caller = Thread.currentThread();
+		final AtomicBoolean inline = new AtomicBoolean();
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				inline.set(Thread.currentThread() == caller);
+			}
+		});
+		assertTrue(inline.get());
+		release.countDown();
+	}
+
+	@Test
+	public void testDiscard() throws InterruptedException {
+		PublishPipeline pipeline = new PublishPipeline(1, 1,
+				PublishOverflowPolicy.DISCARD);
+		CountDownLatch release = block(pipeline);
+		final CountDownLatch queued = new CountDownLatch(1);
+		final AtomicBoolean discarded = new AtomicBoolean(true);
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				queued.countDown();
+			}
+		});
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				discarded.set(false);
+			}
+		});
+		release.countDown();
+		assertTrue(queued.await(1, TimeUnit.SECONDS));
+		final CountDownLatch drained = new CountDownLatch(1);
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				drained.countDown();
+			}
+		});
+		assertTrue(drained.await(1, TimeUnit.SECONDS));
+		assertTrue(discarded.get());
+	}
+
+	@Test
+	public void testFailingDelivery() throws InterruptedException {
+		PublishPipeline pipeline = new PublishPipeline(16, 1,
+				PublishOverflowPolicy.BLOCK);
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				throw new Error();
+			}
+		});
+		final CountDownLatch delivered = new CountDownLatch(1);
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				delivered.countDown();
+			}
+		});
+		assertTrue(delivered.await(1, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Occupies the publisher thread of a single-shard pipeline until the
+	 * returned latch is released.
+	 */
+	private static CountDownLatch block(PublishPipeline pipeline)
+			throws InterruptedException {
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		pipeline.publish(ACTION, new Runnable() {
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(running.await(1, TimeUnit.SECONDS));
+		return release;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.servlet.ServletModule;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.CachedAction.CachedHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+import com.prealpha.xylophone.shared.RateLimitExceededException;
+
+@RunWith(MycilaJunitRunner.class)
+public final class RateLimitTest {
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				limitRate(CompleteAction.class, 0.01, 2);
+				limitClientRate(CachedAction.class, 0.01, 1);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindAction(CachedAction.class).to(CachedHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testClassLimit() throws ActionException {
+		dispatcher.execute(new CompleteAction(false));
+		dispatcher.execute(new CompleteAction(false));
+		try {
+			dispatcher.execute(new CompleteAction(false));
+			fail();
+		} catch (RateLimitExceededException rlex) {
+		}
+	}
+
+	@Test
+	public void testClientLimit() throws ActionException {
+		int executions = CachedHandler.executions.get();
+		dispatcher.execute(new CachedAction(0));
+		try {
+			dispatcher.execute(new CachedAction(0));
+			fail();
+		} catch (RateLimitExceededException rlex) {
+		}
+		assertEquals(executions + 1, CachedHandler.executions.get());
+
+		reset(request);
+		expect(request.getRemoteAddr()).andReturn("192.0.2.2").anyTimes();
+		replay(request);
+		dispatcher.execute(new CachedAction(0));
+		assertEquals(executions + 2, CachedHandler.executions.get());
+	}
+
+	@Test
+	public void testClientLimitOutsideRequest() throws ActionException {
+		Dispatcher dispatcher = Guice.createInjector(new ServletModule(),
+				new ActionModule() {
+					@Override
+					protected void configureActions() {
+						limitClientRate(CachedAction.class, 0.01, 1);
+						bindAction(CachedAction.class).to(CachedHandler.class);
+					}
+				}).getInstance(Dispatcher.class);
+		int executions = CachedHandler.executions.get();
+		// per-client limits do not apply outside of a request
+		dispatcher.execute(new CachedAction(0));
+		dispatcher.execute(new CachedAction(0));
+		assertEquals(executions + 2, CachedHandler.executions.get());
+	}
+
+	@Test
+	public void testClientBucketExpiry() throws InterruptedException {
+		RateLimit limit = new RateLimit(0, null, true, 0.6, 1);
+		assertTrue(limit.tryAcquire("client"));
+		Thread.sleep(1100);
+		assertFalse(limit.tryAcquire("client"));
+	}
+
+	@Test
+	public void testRefill() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(20, 1);
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		Thread.sleep(100);
+		assertTrue(bucket.tryAcquire());
+	}
+}
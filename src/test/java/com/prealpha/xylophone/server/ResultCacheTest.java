@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.CachedAction.CachedHandler;
+import com.prealpha.xylophone.server.CachedAction.CachedResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+@RunWith(MycilaJunitRunner.class)
+public final class ResultCacheTest {
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bindResultCache(16);
+				bindAction(CachedAction.class).to(CachedHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	/*
+	 * The request must be put into the replay state before it is used, since
+	 * the dispatcher may use it more than once per action.
+	 */
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testCachedResult() throws ActionException {
+		int executions = CachedHandler.executions.get();
+		CachedResult first = dispatcher.execute(new CachedAction(60000));
+		CachedResult second = dispatcher.execute(new CachedAction(60000));
+		assertSame(first, second);
+		assertEquals(executions + 1, CachedHandler.executions.get());
+	}
+
+	@Test
+	public void testExpiredResult() throws ActionException,
+			InterruptedException {
+		int executions = CachedHandler.executions.get();
+		CachedResult first = dispatcher.execute(new CachedAction(50));
+		Thread.sleep(100);
+		CachedResult second = dispatcher.execute(new CachedAction(50));
+		assertNotSame(first, second);
+		assertEquals(executions + 2, CachedHandler.executions.get());
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.prealpha.xylophone.server.SlowAction.SlowResult;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Result;
+
+final class SlowAction implements Action<SlowResult> {
+	static final class SlowResult implements Result {
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+	}
+
+	static final class SlowHandler implements
+			ActionHandler<SlowAction, SlowResult> {
+		@Override
+		public SlowResult execute(SlowAction action) {
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException ix) {
+			}
+			return new SlowResult();
+		}
+	}
+}
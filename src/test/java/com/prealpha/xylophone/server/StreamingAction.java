@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import com.prealpha.xylophone.server.StreamingAction.StreamingResult;
+import com.prealpha.xylophone.shared.Action;
+import com.prealpha.xylophone.shared.Result;
+
+final class StreamingAction implements Action<StreamingResult> {
+	static final class StreamingResult implements Result {
+		private final boolean complete;
+
+		StreamingResult(int n) {
+			complete = (n >= 5);
+		}
+
+		@Override
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	static final class StreamingHandler implements
+			StreamingActionHandler<StreamingAction, StreamingResult> {
+		@Override
+		public StreamingResult execute(StreamingAction action,
+				ResultSink<StreamingResult> sink) {
+			for (int n = 1; n < 5; n++) {
+				sink.publish(new StreamingResult(n));
+			}
+			return new StreamingResult(5);
+		}
+	}
+}
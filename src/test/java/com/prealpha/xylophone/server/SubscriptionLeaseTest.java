@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.prealpha.xylophone.shared.PublishingDispatcher;
+
+public final class SubscriptionLeaseTest {
+	@Test
+	public void testTimingWheel() throws InterruptedException {
+		TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 4);
+		final List<Integer> order = Lists.newArrayList();
+		final CountDownLatch done = new CountDownLatch(3);
+		long start = System.nanoTime();
+		for (final int delay : new int[] { 90, 10, 50 }) {
+			wheel.schedule(new Runnable() {
+				@Override
+				public void run() {
+					order.add(delay);
+					done.countDown();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+				.toNanos(90));
+		assertEquals(ImmutableList.of(10, 50, 90), order);
+	}
+
+	@Test
+	public void testFailingTask() throws InterruptedException {
+		TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 4);
+		wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				throw new Error();
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+		final CountDownLatch done = new CountDownLatch(1);
+		wheel.schedule(new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		PublishingDispatcher dispatcher = createDispatcher(100);
+		long idleId = dispatcher.subscribe(Predicates.alwaysTrue());
+		long activeId = dispatcher.subscribe(Predicates.alwaysTrue());
+		for (int i = 0; i < 6; i++) {
+			Thread.sleep(50);
+			dispatcher.check(activeId);
+		}
+		try {
+			dispatcher.check(idleId);
+			fail();
+		} catch (IllegalArgumentException iax) {
+		}
+		dispatcher.cancel(activeId);
+	}
+
+	private static PublishingDispatcher createDispatcher(final long ttlMillis) {
+		return Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				HttpServletRequest request = createNiceMock(
+						HttpServletRequest.class);
+				replay(request);
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bind(HttpServletRequest.class).toInstance(request);
+				bindSubscriptionLease(ttlMillis);
+			}
+		}).getInstance(PublishingDispatcher.class);
+	}
+}
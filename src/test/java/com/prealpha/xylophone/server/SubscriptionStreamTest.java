@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Result;
+
+public final class SubscriptionStreamTest {
+	private PublishingDispatcherImpl dispatcher;
+
+	@Before
+	public void createDispatcher() {
+		dispatcher = createDispatcher(0);
+	}
+
+	@Test
+	public void testStream() throws ActionException {
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		CompleteResult first = dispatcher.execute(new CompleteAction(false));
+		RecordingStream stream = new RecordingStream();
+		dispatcher.stream(subscriptionId, stream);
+		CompleteResult second = dispatcher.execute(new CompleteAction(false));
+		CompleteResult third = dispatcher.execute(new CompleteAction(false));
+		assertEquals(ImmutableList.of(ImmutableList.of(first),
+				ImmutableList.of(second), ImmutableList.of(third)),
+				stream.written);
+		assertFalse(stream.closed);
+		dispatcher.cancel(subscriptionId);
+		assertTrue(stream.closed);
+	}
+
+	@Test
+	public void testDisplacedStream() throws ActionException {
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		RecordingStream stream = new RecordingStream();
+		dispatcher.stream(subscriptionId, stream);
+		assertTrue(dispatcher.check(subscriptionId).isEmpty());
+		assertTrue(stream.closed);
+		dispatcher.execute(new CompleteAction(false));
+		assertTrue(stream.written.isEmpty());
+		dispatcher.cancel(subscriptionId);
+	}
+
+	@Test
+	public void testClosedStream() throws ActionException {
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		RecordingStream stream = new RecordingStream();
+		dispatcher.stream(subscriptionId, stream);
+		stream.close();
+		dispatcher.execute(new CompleteAction(false));
+		assertTrue(stream.written.isEmpty());
+		dispatcher.execute(new CompleteAction(false));
+		assertEquals(2, dispatcher.check(subscriptionId).size());
+		dispatcher.cancel(subscriptionId);
+	}
+
+	@Test
+	public void testStreamLease() throws InterruptedException {
+		PublishingDispatcherImpl dispatcher = createDispatcher(100);
+		long subscriptionId = dispatcher.subscribe(Predicates.alwaysTrue());
+		RecordingStream stream = new RecordingStream();
+		dispatcher.stream(subscriptionId, stream);
+		Thread.sleep(300);
+		assertFalse(stream.closed);
+		stream.close();
+		Thread.sleep(300);
+		try {
+			dispatcher.check(subscriptionId);
+			fail();
+		} catch (IllegalArgumentException iax) {
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSubscription() {
+		dispatcher.stream(-1, new RecordingStream());
+	}
+
+	private static final class RecordingStream implements ResultStream {
+		private final List<ImmutableList<Result>> written = Lists
+				.newArrayList();
+
+		private final List<Runnable> closeListeners = Lists.newArrayList();
+
+		private boolean closed;
+
+		@Override
+		public void execute(Runnable task) {
+			// a closed stream's request may already have completed
+			assertFalse(closed);
+			task.run();
+		}
+
+		@Override
+		public void addCloseListener(Runnable listener) {
+			if (closed) {
+				listener.run();
+			} else {
+				closeListeners.add(listener);
+			}
+		}
+
+		@Override
+		public boolean write(ImmutableList<Result> results) {
+			written.add(results);
+			return !closed;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				for (Runnable listener : closeListeners) {
+					listener.run();
+				}
+			}
+		}
+	}
+
+	private static PublishingDispatcherImpl createDispatcher(
+			final long leaseMillis) {
+		return Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				HttpServletRequest request = createNiceMock(
+						HttpServletRequest.class);
+				replay(request);
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bind(HttpServletRequest.class).toInstance(request);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				if (leaseMillis > 0) {
+					bindSubscriptionLease(leaseMillis);
+				}
+			}
+		}).getInstance(PublishingDispatcherImpl.class);
+	}
+}
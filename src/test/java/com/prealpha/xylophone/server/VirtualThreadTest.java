@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.RequestScoped;
+import com.mycila.testing.junit.MycilaJunitRunner;
+import com.mycila.testing.plugin.guice.Bind;
+import com.mycila.testing.plugin.guice.ModuleProvider;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteResult;
+import com.prealpha.xylophone.server.PartialAction.PartialHandler;
+import com.prealpha.xylophone.server.PartialAction.PartialResult;
+import com.prealpha.xylophone.server.ThreadAction.ThreadHandler;
+import com.prealpha.xylophone.server.ThreadAction.ThreadResult;
+import com.prealpha.xylophone.shared.ActionException;
+import com.prealpha.xylophone.shared.Dispatcher;
+
+@RunWith(MycilaJunitRunner.class)
+public final class VirtualThreadTest {
+	@SuppressWarnings("unused")
+	@ModuleProvider
+	private Module getModule() {
+		return new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+				bindVirtualThreads(4, 16);
+				bindAction(PartialAction.class).to(PartialHandler.class).in(
+						Singleton.class);
+				bindAction(CompleteAction.class).to(CompleteHandler.class);
+				bindAction(ThreadAction.class).to(ThreadHandler.class);
+			}
+		};
+	}
+
+	@Inject
+	private Dispatcher dispatcher;
+
+	@Bind
+	private HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+
+	@Before
+	public void replayRequest() {
+		replay(request);
+	}
+
+	@Test
+	public void testPartialAction() throws ActionException {
+		PartialAction action = new PartialAction();
+		PartialResult result = dispatcher.execute(action);
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+	}
+
+	@Test
+	public void testCompleteAction() throws ActionException {
+		CompleteAction action = new CompleteAction(false);
+		CompleteResult result = dispatcher.execute(action);
+		assertNotNull(result);
+		assertTrue(result.isComplete());
+	}
+
+	@Test(expected = ActionException.class)
+	public void testException() throws ActionException {
+		CompleteAction action = new CompleteAction(true);
+		dispatcher.execute(action);
+	}
+
+	@Test
+	public void testSuspendedAction() throws ActionException,
+			InterruptedException {
+		final Capture<Object> execution = new Capture<Object>();
+		final CountDownLatch dispatched = new CountDownLatch(1);
+		AsyncContext context = createNiceMock(AsyncContext.class);
+		context.dispatch();
+		expectLastCall().andAnswer(new IAnswer<Object>() {
+			@Override
+			public Object answer() {
+				dispatched.countDown();
+				return null;
+			}
+		});
+		reset(request);
+		expect(request.isAsyncSupported()).andReturn(true).anyTimes();
+		expect(request.startAsync()).andReturn(context).anyTimes();
+		request.setAttribute(anyObject(String.class), capture(execution));
+		expect(request.getAttribute(anyObject(String.class))).andAnswer(
+				new IAnswer<Object>() {
+					@Override
+					public Object answer() {
+						return (execution.hasCaptured() ? execution.getValue()
+								: null);
+					}
+				}).anyTimes();
+		replay(context, request);
+
+		assertNull(dispatcher.execute(new ThreadAction()));
+		assertTrue(dispatched.await(1, TimeUnit.SECONDS));
+		ThreadResult result = dispatcher.execute(new ThreadAction());
+		assertNotNull(result);
+		assertNotSame(Thread.currentThread(), result.getThread());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Meyer Kizner
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.prealpha.xylophone.server;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+import com.google.inject.Binder;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.servlet.ServletModule;
+import com.prealpha.xylophone.server.CachedAction.CachedHandler;
+import com.prealpha.xylophone.server.CompleteAction.CompleteHandler;
+
+public final class WarmUpTest {
+	@Test
+	public void testWarmUpAction() {
+		int executions = CachedHandler.executions.get();
+		Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindRequest(binder());
+				warmUpHandlers(new CachedAction(0));
+				bindAction(CachedAction.class).to(CachedHandler.class);
+			}
+		});
+		assertEquals(executions + 1, CachedHandler.executions.get());
+	}
+
+	@Test
+	public void testWarmUpWithoutRequest() {
+		int executions = CachedHandler.executions.get();
+		Guice.createInjector(new ServletModule(), new ActionModule() {
+			@Override
+			protected void configureActions() {
+				warmUpHandlers(new CachedAction(0));
+				bindAction(CachedAction.class).to(CachedHandler.class);
+			}
+		});
+		assertEquals(executions + 1, CachedHandler.executions.get());
+	}
+
+	@Test(expected = CreationException.class)
+	public void testMismatchedHandler() {
+		Guice.createInjector(new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindRequest(binder());
+				warmUpHandlers();
+				bindAction(CachedAction.class).to(CompleteHandler.class);
+			}
+		});
+	}
+
+	@Test
+	public void testLazyMismatchedHandler() {
+		Module module = new ActionModule() {
+			@Override
+			protected void configureActions() {
+				bindRequest(binder());
+				bindAction(CachedAction.class).to(CompleteHandler.class);
+			}
+		};
+		assertNotNull(Guice.createInjector(module));
+	}
+
+	private static void bindRequest(Binder binder) {
+		HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+		replay(request);
+		binder.bindScope(RequestScoped.class, Scopes.NO_SCOPE);
+		binder.bind(HttpServletRequest.class).toInstance(request);
+	}
+}